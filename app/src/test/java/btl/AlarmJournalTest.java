@@ -0,0 +1,309 @@
+// File: AlarmJournalTest.java
+package btl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Write-ahead log + snapshot của báo thức: đóng khung CRC, cắt đuôi hỏng, compact, cắt lại lô ghi lỗi. */
+class AlarmJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private static AlarmData alarm(String id, int hour, int minute, long version) {
+        return new AlarmData(id, LocalTime.of(hour, minute), "127.0.0.1", 40000 + minute, version);
+    }
+
+    /** Đóng journal (ghi nốt hàng đợi) rồi mở lại từ đĩa. */
+    private Map<String, AlarmData> reopen(AlarmJournal journal) throws IOException {
+        journal.close();
+        AlarmJournal again = new AlarmJournal(dir);
+        Map<String, AlarmData> restored = new HashMap<>(again.open());
+        again.close();
+        return restored;
+    }
+
+    private static void assertSameAlarm(AlarmData expected, AlarmData actual) {
+        assertNotNull(actual, "thiếu báo thức " + expected.id);
+        assertEquals(expected.alarmTime, actual.alarmTime);
+        assertEquals(expected.clientAddress, actual.clientAddress);
+        assertEquals(expected.clientPort, actual.clientPort);
+        assertEquals(expected.version, actual.version);
+    }
+
+    private Path wal() {
+        return dir.resolve(AlarmJournal.WAL_FILE);
+    }
+
+    @Test
+    void roundTripReplaysEveryOperation() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        assertTrue(journal.open().isEmpty());
+        journal.put(alarm("a", 6, 30, 0));
+        journal.put(alarm("gone", 7, 0, 0));
+        journal.clear();
+        AlarmData b = alarm("b", 7, 15, 0);
+        AlarmData c = alarm("c", 23, 59, 123_456_789L);
+        journal.put(b);
+        journal.put(c);
+        journal.put(alarm("d", 8, 0, 0));
+        journal.remove("d");
+        AlarmData fired = alarm("e", 9, 5, 0);
+        journal.put(fired);
+        journal.remove(fired);
+        journal.remove(alarm("c", 1, 1, 1)); // không còn trỏ tới đúng báo thức này: bỏ qua
+
+        Map<String, AlarmData> restored = reopen(journal);
+        assertEquals(2, restored.size());
+        assertSameAlarm(b, restored.get("b"));
+        assertSameAlarm(c, restored.get("c"));
+    }
+
+    @Test
+    void truncatedLastRecordIsCutAndLogKeepsAppending() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.open();
+        journal.put(alarm("a", 6, 0, 0));
+        journal.put(alarm("b", 6, 1, 0));
+        journal.close();
+        long full = Files.size(wal());
+        try (FileChannel ch = FileChannel.open(wal(), StandardOpenOption.WRITE)) {
+            ch.truncate(full - 3); // sập giữa lúc ghi bản ghi cuối
+        }
+
+        AlarmJournal recovered = new AlarmJournal(dir);
+        Map<String, AlarmData> restored = recovered.open();
+        assertEquals(1, restored.size());
+        assertTrue(restored.containsKey("a"));
+        assertTrue(Files.size(wal()) < full - 3, "đuôi ghi dở chưa bị cắt khỏi log");
+        recovered.put(alarm("c", 6, 2, 0));
+
+        Map<String, AlarmData> again = reopen(recovered);
+        assertEquals(2, again.size());
+        assertTrue(again.containsKey("a") && again.containsKey("c"));
+    }
+
+    @Test
+    void recordWithBadCrcEndsReplay() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.open();
+        journal.put(alarm("a", 6, 0, 0));
+        journal.put(alarm("b", 6, 1, 0));
+        journal.close();
+        long size = Files.size(wal());
+        try (FileChannel ch = FileChannel.open(wal(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            ch.read(last, size - 1);
+            last.put(0, (byte) (last.get(0) ^ 0x5A)).rewind();
+            ch.write(last, size - 1); // đúng độ dài, sai nội dung
+        }
+
+        AlarmJournal recovered = new AlarmJournal(dir);
+        Map<String, AlarmData> restored = new HashMap<>(recovered.open());
+        recovered.close();
+        assertEquals(1, restored.size());
+        assertTrue(restored.containsKey("a"));
+        assertTrue(Files.size(wal()) < size, "bản ghi sai CRC chưa bị cắt khỏi log");
+    }
+
+    @Test
+    void compactionWritesSnapshotAndReplayMatches() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.open();
+        Map<String, AlarmData> expected = new HashMap<>();
+        // Ghi đè vài báo thức nhiều lần: log vượt ngưỡng compact và dài gấp nhiều lần số báo thức còn sống
+        for (int i = 0; i < 12_000; i++) {
+            AlarmData a = alarm("id-" + (i % 50), (i / 60) % 24, i % 60, i % 3 == 0 ? 0 : i);
+            journal.put(a);
+            expected.put(a.id, a);
+        }
+        journal.remove("id-7");
+        expected.remove("id-7");
+        journal.close();
+
+        assertTrue(Files.exists(dir.resolve(AlarmJournal.SNAPSHOT_FILE)), "chưa có snapshot");
+        assertFalse(Files.exists(dir.resolve(AlarmJournal.SNAPSHOT_FILE + ".tmp")));
+        assertTrue(Files.size(wal()) < 12_000L * 20, "log chưa được làm rỗng sau compact: " + Files.size(wal()));
+
+        AlarmJournal recovered = new AlarmJournal(dir);
+        Map<String, AlarmData> restored = new HashMap<>(recovered.open());
+        assertEquals(expected.size(), restored.size());
+        for (AlarmData a : expected.values()) {
+            assertSameAlarm(a, restored.get(a.id));
+        }
+        // Ghi tiếp sau compact: phát lại log mới trên snapshot
+        AlarmData later = alarm("later", 12, 0, 0);
+        recovered.put(later);
+        recovered.remove("id-8");
+        Map<String, AlarmData> again = reopen(recovered);
+        assertEquals(expected.size(), again.size());
+        assertSameAlarm(later, again.get("later"));
+        assertFalse(again.containsKey("id-8"));
+    }
+
+    @Test
+    void failedBatchIsRolledBackAndRetried() throws Exception {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.open();
+        journal.put(alarm("before", 5, 0, 0));
+        Field walField = AlarmJournal.class.getDeclaredField("wal");
+        walField.setAccessible(true);
+        synchronized (journal) {
+            walField.set(journal, new FailingChannel((FileChannel) walField.get(journal), 2));
+        }
+        for (int i = 0; i < 20; i++) {
+            journal.put(alarm("a" + i, 6, i, 0));
+        }
+
+        Map<String, AlarmData> restored = reopen(journal);
+        assertEquals(2, journal.writeErrors());
+        assertEquals(0, journal.lostCount());
+        assertEquals(21, restored.size(), "lô ghi lại không khớp: " + restored.keySet());
+    }
+
+    @Test
+    void batchThatKeepsFailingIsCountedAndLeavesNoTornRecord() throws Exception {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.open();
+        journal.put(alarm("before", 5, 0, 0));
+        journal.close();
+        journal = new AlarmJournal(dir);
+        journal.open();
+        Field walField = AlarmJournal.class.getDeclaredField("wal");
+        walField.setAccessible(true);
+        synchronized (journal) {
+            walField.set(journal, new FailingChannel((FileChannel) walField.get(journal), Integer.MAX_VALUE));
+        }
+        journal.put(alarm("lost", 6, 0, 0));
+
+        Map<String, AlarmData> restored = reopen(journal);
+        assertEquals(1, journal.lostCount());
+        assertEquals(1, restored.size());
+        assertTrue(restored.containsKey("before"));
+    }
+
+    /** Kênh ghi một nửa dữ liệu rồi báo lỗi trong failures lần write đầu tiên (giả lập đĩa đầy). */
+    private static final class FailingChannel extends FileChannel {
+        private final FileChannel delegate;
+        private int failures;
+
+        FailingChannel(FileChannel delegate, int failures) {
+            this.delegate = delegate;
+            this.failures = failures;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failures > 0) {
+                failures--;
+                ByteBuffer half = src.duplicate();
+                half.limit(src.position() + src.remaining() / 2);
+                src.position(src.position() + delegate.write(half));
+                throw new IOException("giả lập đĩa đầy");
+            }
+            return delegate.write(src);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
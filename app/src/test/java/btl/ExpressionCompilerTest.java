@@ -0,0 +1,26 @@
+// File: ExpressionCompilerTest.java
+package btl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** round làm tròn nửa lên như Math.round, cả khi hằng được tính sẵn lẫn khi tham số là biến. */
+class ExpressionCompilerTest {
+
+    private final ExpressionCompiler compiler = new ExpressionCompiler(16);
+
+    @Test
+    void roundHalfGoesUpLikeMathRound() throws ExpressionCompiler.ExpressionException {
+        assertEquals(3.0, compiler.evaluate("round(2.5)"));
+        assertEquals(-2.0, compiler.evaluate("round(-2.5)"));
+        assertEquals(1.0, compiler.evaluate("round(0.5)"));
+        assertEquals(-3.0, compiler.evaluate("round(-2.6)"));
+        assertEquals(3.0, compiler.evaluate("round(x);x=2.5"));
+        assertEquals(-2.0, compiler.evaluate("round(x);x=-2.5"));
+        assertEquals(1e300, compiler.evaluate("round(x);x=1e300"));
+        assertTrue(Double.isNaN(compiler.evaluate("round(sqrt(x));x=-1")));
+        assertEquals(Double.POSITIVE_INFINITY, compiler.evaluate("round(x);x=Infinity"));
+    }
+}
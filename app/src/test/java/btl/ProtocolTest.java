@@ -0,0 +1,28 @@
+// File: ProtocolTest.java
+package btl;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Cắt phản hồi UTF-8 theo số byte mà không làm vỡ ký tự nhiều byte. */
+class ProtocolTest {
+
+    @Test
+    void utf8PrefixNeverSplitsACharacter() {
+        String text = "Báo thức: 3 đang chờ, trễ p99 12 ms — ổn định 🕐";
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        for (int max = 0; max <= utf8.length + 2; max++) {
+            int n = Protocol.utf8Prefix(utf8, max);
+            assertTrue(n <= Math.min(max, utf8.length), "vượt giới hạn tại max = " + max);
+            String prefix = new String(utf8, 0, n, StandardCharsets.UTF_8);
+            assertTrue(text.startsWith(prefix), "ký tự bị cắt đôi tại max = " + max + ": " + prefix);
+            // Chỉ lùi tối đa phần của một ký tự (<= 3 byte)
+            assertTrue(Math.min(max, utf8.length) - n <= 3, "lùi quá xa tại max = " + max);
+        }
+        assertEquals(utf8.length, Protocol.utf8Prefix(utf8, utf8.length));
+    }
+}
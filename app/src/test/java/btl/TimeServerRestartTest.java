@@ -0,0 +1,74 @@
+// File: TimeServerRestartTest.java
+package btl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Khởi động lại trong nhóm nhân bản với nhật ký ghi lúc còn chạy một server: báo thức không thuộc node này
+ * được chuyển giao (xóa khỏi nhật ký) trong lúc nạp, server vẫn phải khởi động bình thường.
+ */
+class TimeServerRestartTest {
+
+    private static final int ALARMS = 60;
+
+    @TempDir
+    Path dir;
+
+    private static int freePort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Test
+    void restartInReplicaGroupHandsOffForeignAlarms() throws IOException {
+        AlarmJournal single = new AlarmJournal(dir);
+        single.open();
+        for (int i = 0; i < ALARMS; i++) {
+            single.put(new AlarmData("alarm-" + i, LocalTime.of(7, i % 60), "127.0.0.1", 20000 + i));
+        }
+        single.close();
+
+        int port = freePort();
+        List<InetSocketAddress> group = new ArrayList<>();
+        group.add(new InetSocketAddress("127.0.0.1", port));
+        group.add(new InetSocketAddress("127.0.0.1", freePort()));
+        group.add(new InetSocketAddress("127.0.0.1", freePort()));
+
+        TimeServer server = new TimeServer(port, 2, ZoneId.systemDefault());
+        server.setAlarmStorage(dir);
+        server.setReplicaGroup(group);
+        server.setMetricsPort(-1);
+        server.start();
+        try {
+            assertTrue(server.isRunning());
+            assertEquals(port, server.getLocalPort());
+        } finally {
+            server.stop();
+        }
+
+        // Mỗi báo thức được giữ trên 2 trong 3 node: phần không thuộc node này đã rời khỏi nhật ký
+        AlarmJournal reopened = new AlarmJournal(dir);
+        Map<String, AlarmData> kept = reopened.open();
+        int count = kept.size();
+        for (AlarmData alarm : kept.values()) {
+            assertTrue(alarm.version != 0, "báo thức giữ lại chưa được gắn phiên bản: " + alarm.id);
+        }
+        reopened.close();
+        assertTrue(count > 0 && count < ALARMS, "số báo thức giữ lại: " + count);
+    }
+}
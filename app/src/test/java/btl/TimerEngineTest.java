@@ -0,0 +1,203 @@
+// File: TimerEngineTest.java
+package btl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Độ chính xác của TimerEngine trên scheduler 2 luồng đang bận (tải giả như các tác vụ khác của ClientGUI):
+ * trễ kết thúc bị chặn và không tăng theo số bước, tạm dừng / chạy tiếp không mất thời gian.
+ */
+class TimerEngineTest {
+
+    private static final long STEP = TimeUnit.MILLISECONDS.toNanos(1);
+    /** Trễ kết thúc tối đa cho phép (rộng cho máy CI chậm; trễ cộng dồn theo bước sẽ vượt xa). */
+    private static final long MAX_LATENESS = TimeUnit.MILLISECONDS.toNanos(40);
+    private static final int LOAD_TASKS = 2;
+    private static final int ATTEMPTS = 3;
+    private static final long BUSY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private ScheduledExecutorService scheduler;
+    private TimerEngine engine;
+
+    @BeforeEach
+    void start() {
+        scheduler = Executors.newScheduledThreadPool(2);
+        engine = new TimerEngine(scheduler);
+        for (int i = 0; i < LOAD_TASKS; i++) {
+            scheduler.scheduleAtFixedRate(() -> {
+                long until = System.nanoTime() + BUSY_NANOS;
+                while (System.nanoTime() - until < 0) {
+                    // chiếm luồng của scheduler
+                }
+            }, 0, 1, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @AfterEach
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /** Listener ghi lại thời điểm kết thúc và các giá trị hiển thị. */
+    private static final class Recorder implements TimerEngine.Listener {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicLong finishedMono = new AtomicLong();
+        final List<Long> ticks = new ArrayList<>();
+
+        @Override
+        public synchronized void onTick(TimerEngine.Timer timer, long displayNanos) {
+            ticks.add(displayNanos);
+        }
+
+        @Override
+        public void onFinished(TimerEngine.Timer timer) {
+            finishedMono.set(System.nanoTime());
+            finished.countDown();
+        }
+
+        synchronized List<Long> ticks() {
+            return new ArrayList<>(ticks);
+        }
+    }
+
+    /** Chạy đồng thời runs đếm ngược steps bước 1 ms, trả về trễ kết thúc (nano giây) đã sắp xếp. */
+    private long[] countdownLateness(int steps, int runs) throws InterruptedException {
+        long duration = steps * STEP;
+        Recorder[] recorders = new Recorder[runs];
+        long[] started = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            recorders[i] = new Recorder();
+            started[i] = System.nanoTime();
+            engine.startCountdown("cd-" + steps + "-" + i, duration, STEP, recorders[i]);
+        }
+        long[] lateness = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            assertTrue(recorders[i].finished.await(duration / 1_000_000 + 2_000, TimeUnit.MILLISECONDS),
+                    "đếm ngược " + steps + " bước không kết thúc");
+            lateness[i] = recorders[i].finishedMono.get() - started[i] - duration;
+            assertTrue(lateness[i] >= 0, "kết thúc sớm " + -lateness[i] + " ns");
+            assertDisplayMonotonic(recorders[i].ticks(), false);
+        }
+        Arrays.sort(lateness);
+        return lateness;
+    }
+
+    private static void assertDisplayMonotonic(List<Long> ticks, boolean increasing) {
+        for (int i = 0; i < ticks.size(); i++) {
+            assertEquals(0, ticks.get(i) % STEP, "giá trị hiển thị không nằm trên ranh giới bước");
+            if (i > 0) {
+                assertTrue(increasing ? ticks.get(i) > ticks.get(i - 1) : ticks.get(i) < ticks.get(i - 1),
+                        "giá trị hiển thị không đơn điệu: " + ticks);
+            }
+        }
+    }
+
+    @Test
+    void countdownLatenessIsBoundedAndDoesNotGrowWithSteps() throws InterruptedException {
+        countdownLateness(5, 4); // khởi động JIT
+        // Các lần chạy song song cùng chịu một lần máy bị treo (GC, tiến trình khác trên máy CI một CPU), nên đo lại
+        // tối đa ATTEMPTS lần; trôi cộng dồn thì lần nào cũng trượt
+        String failure = null;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            long[] shortRuns = countdownLateness(10, 4);
+            long[] longRuns = countdownLateness(500, 4);
+            long shortMax = shortRuns[shortRuns.length - 1];
+            long longMax = longRuns[longRuns.length - 1];
+            // Trôi cộng dồn (dù chỉ 0,1 ms mỗi bước) làm 500 bước trễ thêm cỡ 50 ms; theo hạn chót thì hai trung vị
+            // chỉ khác nhau bằng nhiễu đánh thức
+            long shortMedian = shortRuns[shortRuns.length / 2];
+            long longMedian = longRuns[longRuns.length / 2];
+            if (shortMax >= MAX_LATENESS || longMax >= MAX_LATENESS) {
+                failure = "trễ tối đa: 10 bước " + shortMax / 1e6 + " ms, 500 bước " + longMax / 1e6 + " ms";
+            } else if (longMedian > shortMedian + TimeUnit.MILLISECONDS.toNanos(10)) {
+                failure = "trễ tăng theo số bước: " + shortMedian / 1e6 + " ms -> " + longMedian / 1e6 + " ms";
+            } else {
+                return;
+            }
+        }
+        fail(failure);
+    }
+
+    @Test
+    void stopwatchTicksOnStepBoundariesAndLapsAddUp() throws InterruptedException {
+        Recorder recorder = new Recorder();
+        TimerEngine.Timer watch = engine.startStopwatch("sw", STEP, recorder);
+        long total = 0;
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(20);
+            total += watch.lap();
+        }
+        long elapsed = watch.elapsedNanos();
+        watch.stop();
+
+        List<Long> laps = watch.laps();
+        assertEquals(5, laps.size());
+        assertEquals(total, laps.stream().mapToLong(Long::longValue).sum());
+        assertTrue(elapsed >= total, "tổng các vòng vượt thời gian đã chạy");
+        for (long lap : laps) {
+            assertTrue(lap >= TimeUnit.MILLISECONDS.toNanos(20), "vòng ngắn hơn thời gian ngủ: " + lap);
+        }
+        List<Long> ticks = recorder.ticks();
+        assertFalse(ticks.isEmpty(), "bấm giờ không báo bước nào");
+        assertDisplayMonotonic(ticks, true);
+        assertTrue(ticks.get(ticks.size() - 1) <= elapsed);
+    }
+
+    @Test
+    void pauseAndResumeLoseNoTime() throws InterruptedException {
+        long duration = TimeUnit.MILLISECONDS.toNanos(150);
+        Recorder countdownRecorder = new Recorder();
+        long started = System.nanoTime();
+        TimerEngine.Timer countdown = engine.startCountdown("cd", duration, STEP, countdownRecorder);
+        TimerEngine.Timer watch = engine.startStopwatch("sw", STEP, new Recorder());
+
+        Thread.sleep(50);
+        long pausedAt = System.nanoTime();
+        countdown.pause();
+        watch.pause();
+        long remaining = countdown.remainingNanos();
+        long elapsed = watch.elapsedNanos();
+        assertFalse(countdown.isRunning());
+
+        Thread.sleep(100);
+        // Trong lúc tạm dừng không giá trị nào thay đổi và đếm ngược không kết thúc
+        assertEquals(remaining, countdown.remainingNanos());
+        assertEquals(elapsed, watch.elapsedNanos());
+        assertEquals(1, countdownRecorder.finished.getCount());
+
+        long resumedAt = System.nanoTime();
+        countdown.resume();
+        watch.resume();
+        Thread.sleep(30);
+        long watchElapsed = watch.elapsedNanos(); // đọc trước mốc so sánh: bị ngắt giữa hai lệnh không làm sai
+        long runningSinceResume = System.nanoTime() - resumedAt;
+        assertTrue(watchElapsed >= elapsed && watchElapsed - elapsed <= runningSinceResume,
+                "bấm giờ sau khi chạy tiếp: " + (watchElapsed - elapsed) / 1e6 + " ms, thực tế "
+                        + runningSinceResume / 1e6 + " ms");
+
+        assertTrue(countdownRecorder.finished.await(2, TimeUnit.SECONDS));
+        long paused = resumedAt - pausedAt;
+        long lateness = countdownRecorder.finishedMono.get() - started - duration - paused;
+        // Kết thúc sau đúng duration + thời gian tạm dừng (sai số: trễ đánh thức và khoảng giữa các lệnh gọi)
+        assertTrue(lateness > -TimeUnit.MILLISECONDS.toNanos(2) && lateness < MAX_LATENESS,
+                "lệch khi kết thúc sau tạm dừng: " + lateness / 1e6 + " ms");
+        assertTrue(countdown.isDone());
+        assertEquals(0, countdown.remainingNanos());
+    }
+}
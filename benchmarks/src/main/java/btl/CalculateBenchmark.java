@@ -0,0 +1,87 @@
+// File: CalculateBenchmark.java
+package btl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TimeServer.calculate() và phần tách chuỗi tham số CALC_REQUEST đi kèm,
+ * so với CalcBatch.evaluate() trên một lô vừa một datagram (cùng phép toán và trộn phép toán).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CalculateBenchmark {
+
+    @Param({"+", "/"})
+    public String operator;
+
+    public double a = 12.5;
+    public double b = 4;
+
+    private final int n = CalcBatch.MAX_ITEMS_PER_DATAGRAM;
+    private final double[] as = new double[n];
+    private final double[] bs = new double[n];
+    private final byte[] uniformOps = new byte[n];
+    private final byte[] mixedOps = new byte[n];
+    private final double[] results = new double[n];
+    private final byte[] status = new byte[n];
+
+    @Setup
+    public void setup() {
+        Random r = new Random(42);
+        byte[] all = {'+', '-', '*', '/'};
+        for (int i = 0; i < n; i++) {
+            as[i] = r.nextDouble() * 1000;
+            bs[i] = r.nextDouble() * 100 + 1;
+            uniformOps[i] = (byte) operator.charAt(0);
+            mixedOps[i] = all[r.nextInt(all.length)];
+        }
+    }
+
+    /** Cả lô bằng từng lệnh văn bản: chuỗi kết quả cho mỗi phép tính. */
+    @Benchmark
+    public int scalarTextLoop() {
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            length += TimeServer.calculate(as[i], operator, bs[i]).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int batchUniform() {
+        return CalcBatch.evaluate(as, uniformOps, bs, n, results, status);
+    }
+
+    @Benchmark
+    public int batchMixed() {
+        return CalcBatch.evaluate(as, mixedOps, bs, n, results, status);
+    }
+
+    @Benchmark
+    public String calculate() {
+        return TimeServer.calculate(a, operator, b);
+    }
+
+    @Benchmark
+    public String parseAndCalculate() {
+        String[] parts = ("12.5," + operator + ",4").split(",");
+        return TimeServer.calculate(Double.parseDouble(parts[0]), parts[1], Double.parseDouble(parts[2]));
+    }
+}
@@ -0,0 +1,106 @@
+// File: DispatchBenchmark.java
+package btl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chi phí xử lý một gói tin (không tính socket):
+ * - legacyStringDispatch: cách cũ của ServerGUI.run() - new String + trim + startsWith/split, định dạng giờ mỗi lần
+ * - byteMatch: chỉ nhận diện lệnh bằng so khớp byte (Protocol)
+ * - handle: TimeServer.handle() đầy đủ (nhận diện + phản hồi vào ByteBuffer trực tiếp)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    @Param({"TIME_REQUEST", "PING", "CALC_REQUEST:12.5,*,4", "ALARM_CANCEL:khong-co", "XYZ"})
+    public String command;
+
+    private final ZoneId zone = ZoneId.of("Asia/Ho_Chi_Minh");
+    private final InetSocketAddress client = new InetSocketAddress("127.0.0.1", 40000);
+    private final Map<String, Object> legacyAlarms = new HashMap<>();
+    private byte[] packet;
+    private ByteBuffer in;
+    private ByteBuffer out;
+    private TimeServer server;
+
+    @Setup
+    public void setup() {
+        packet = command.getBytes(StandardCharsets.UTF_8);
+        in = ByteBuffer.allocateDirect(4096);
+        in.put(packet).flip();
+        out = ByteBuffer.allocateDirect(4096);
+        server = new TimeServer(0, 1, zone); // không start(): chỉ dùng handle()
+    }
+
+    @Benchmark
+    public byte[] legacyStringDispatch() {
+        String req = new String(packet, 0, packet.length, StandardCharsets.UTF_8).trim();
+        String response;
+        if (req.startsWith("TIME_REQUEST")) {
+            response = ZonedDateTime.now(zone).format(DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy"))
+                    + " (" + zone.getId() + ")";
+        } else if (req.startsWith("ALARM_SET:")) {
+            String[] parts = req.split(":");
+            response = parts.length == 4 ? "Đã cài báo thức" : "Lỗi: Định dạng yêu cầu không hợp lệ.";
+        } else if (req.startsWith("ALARM_CANCEL:")) {
+            String[] parts = req.split(":");
+            response = parts.length == 2 && legacyAlarms.remove(parts[1]) != null
+                    ? "Đã hủy báo thức thành công." : "Không tìm thấy báo thức cần hủy.";
+        } else if ("ALARM_CANCEL_ALL".equalsIgnoreCase(req)) {
+            response = "Đã hủy tất cả báo thức thành công.";
+        } else if (req.startsWith("CALC_REQUEST:")) {
+            String[] parts = req.split(":", 2)[1].split(",");
+            response = TimeServer.calculate(Double.parseDouble(parts[0]), parts[1], Double.parseDouble(parts[2]));
+        } else if ("PING".equalsIgnoreCase(req)) {
+            response = "PONG";
+        } else {
+            response = "Yêu cầu không xác định.";
+        }
+        return response.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int byteMatch() {
+        int start = Protocol.trimStart(in, 0, in.limit());
+        int end = Protocol.trimEnd(in, start, in.limit());
+        if (Protocol.startsWith(in, start, end, Protocol.TIME_REQUEST)) return 1;
+        if (Protocol.equalsIgnoreCase(in, start, end, Protocol.PING)) return 2;
+        if (Protocol.startsWith(in, start, end, Protocol.ALARM_SET)) return 3;
+        if (Protocol.startsWith(in, start, end, Protocol.ALARM_CANCEL)) return 4;
+        if (Protocol.equalsIgnoreCase(in, start, end, Protocol.ALARM_CANCEL_ALL)) return 5;
+        if (Protocol.startsWith(in, start, end, Protocol.CALC_REQUEST)) return 6;
+        return 0;
+    }
+
+    @Benchmark
+    public ServerMetrics.Command handle() {
+        in.position(0);
+        out.clear();
+        return server.handle(in, client, out, 0L);
+    }
+}
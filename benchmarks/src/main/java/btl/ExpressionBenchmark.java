@@ -0,0 +1,55 @@
+// File: ExpressionBenchmark.java
+package btl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lệnh CALC_EXPR: phân tích lại biểu thức mỗi lần (bộ đệm dung lượng 0) so với lấy từ bộ đệm,
+ * và chỉ phần tính trên cây đã biên dịch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpressionBenchmark {
+
+    public String request = "sqrt(x^2 + y^2) * sin(pi / 6) + max(x, y) % 7;x=3,y=4";
+    public double[] values = {3, 4};
+
+    private final ExpressionCompiler uncached = new ExpressionCompiler(0);
+    private final ExpressionCompiler cached = new ExpressionCompiler(1024);
+    private ExpressionCompiler.Compiled compiled;
+
+    @Setup
+    public void setup() throws ExpressionCompiler.ExpressionException {
+        compiled = cached.compile(request.substring(0, request.indexOf(';')));
+    }
+
+    @Benchmark
+    public double parseEachTime() throws ExpressionCompiler.ExpressionException {
+        return uncached.evaluate(request);
+    }
+
+    @Benchmark
+    public double cachedRequest() throws ExpressionCompiler.ExpressionException {
+        return cached.evaluate(request);
+    }
+
+    @Benchmark
+    public double compiledOnly() {
+        return compiled.evaluate(values);
+    }
+}
@@ -0,0 +1,147 @@
+// File: LoopbackBenchmark.java
+package btl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vòng gửi - nhận qua loopback với TimeServer thật (cổng ngẫu nhiên).
+ * Mỗi luồng benchmark là một client với socket riêng; chạy với 1/4/16 luồng để xem
+ * thông lượng khi tăng số client, chế độ SampleTime cho phân bố độ trễ (p50/p99/p99.9).
+ * Gói bị mất (hết thời gian chờ) được tính vào thời gian đo, không bị bỏ qua.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"2"})
+        public int workers;
+
+        TimeServer server;
+        InetAddress address;
+        int port;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            server = new TimeServer(0, workers, ZoneId.of("Asia/Ho_Chi_Minh"));
+            server.start();
+            address = InetAddress.getLoopbackAddress();
+            port = server.getLocalPort();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            server.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        DatagramSocket socket;
+        DatagramPacket ping;
+        DatagramPacket time;
+        DatagramPacket sync;
+        DatagramPacket reply;
+
+        @Setup(Level.Trial)
+        public void open(Server server) throws IOException {
+            socket = new DatagramSocket();
+            socket.setSoTimeout(200);
+            ping = packet("PING".getBytes(StandardCharsets.UTF_8), server);
+            time = packet("TIME_REQUEST".getBytes(StandardCharsets.UTF_8), server);
+            ByteBuffer req = ByteBuffer.allocate(SyncPacket.SIZE);
+            SyncPacket.writeRequest(req, 1);
+            sync = packet(req.array(), server);
+            reply = new DatagramPacket(new byte[1024], 1024);
+        }
+
+        private static DatagramPacket packet(byte[] data, Server server) {
+            return new DatagramPacket(data, data.length, server.address, server.port);
+        }
+
+        int roundTrip(DatagramPacket request) throws IOException {
+            socket.send(request);
+            reply.setLength(reply.getData().length);
+            try {
+                socket.receive(reply);
+                return reply.getLength();
+            } catch (SocketTimeoutException lost) {
+                return -1;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int ping1(Client c) throws IOException {
+        return c.roundTrip(c.ping);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int ping4(Client c) throws IOException {
+        return c.roundTrip(c.ping);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int ping16(Client c) throws IOException {
+        return c.roundTrip(c.ping);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int timeRequest1(Client c) throws IOException {
+        return c.roundTrip(c.time);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int timeRequest16(Client c) throws IOException {
+        return c.roundTrip(c.time);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int binarySync1(Client c) throws IOException {
+        return c.roundTrip(c.sync);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int binarySync16(Client c) throws IOException {
+        return c.roundTrip(c.sync);
+    }
+}
@@ -0,0 +1,117 @@
+// File: TimeFormatBenchmark.java
+package btl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Định dạng thời gian và mã hóa phản hồi giờ:
+ * Utils (bộ đệm theo giây, chỉ viết lại các chữ số đổi) so với SimpleDateFormat kiểu cũ,
+ * DateTimeFormatter dựng sẵn và TimeResponseCache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeFormatBenchmark {
+
+    private static final DateTimeFormatter FULL = DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy");
+
+    private final ZoneId zone = ZoneId.of("Asia/Ho_Chi_Minh");
+    private final TimeResponseCache cache = new TimeResponseCache();
+
+    @State(Scope.Thread)
+    public static class Out {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        final StringBuilder sb = new StringBuilder(64);
+        final byte[] bytes = new byte[64];
+        // Cách cũ của Utils (mỗi luồng một bản vì SimpleDateFormat không an toàn đa luồng)
+        final SimpleDateFormat legacy = new SimpleDateFormat("HH:mm:ss dd/MM/yyyy");
+    }
+
+    @Benchmark
+    public String legacySimpleDateFormat(Out out) {
+        return out.legacy.format(new Date(System.currentTimeMillis()));
+    }
+
+    @Benchmark
+    public String utilsFormatNowFull() {
+        return Utils.formatNowFull();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String utilsFormatNowFull4Threads() {
+        return Utils.formatNowFull();
+    }
+
+    @Benchmark
+    public StringBuilder utilsAppendFull(Out out) {
+        out.sb.setLength(0);
+        return Utils.appendFull(out.sb, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public int utilsWriteFull(Out out) {
+        return Utils.writeFull(out.bytes, 0, System.currentTimeMillis());
+    }
+
+    /** Mỗi lần một giây khác: đo đường tính lại (chỉ viết lại giờ/phút/giây). */
+    @Benchmark
+    public String utilsFormatNewSecond(Out out) {
+        return Utils.formatFull(System.currentTimeMillis() + (out.bytes[0]++ & 0x3F) * 1000L);
+    }
+
+    @Benchmark
+    public String formatterPerCall() {
+        return ZonedDateTime.now(zone).format(DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy"));
+    }
+
+    @Benchmark
+    public String sharedFormatter() {
+        return ZonedDateTime.now(zone).format(FULL);
+    }
+
+    /** Mã hóa phản hồi TIME_REQUEST như cách cũ: định dạng + ghép chuỗi + getBytes. */
+    @Benchmark
+    public int encodeResponseUncached(Out out) {
+        out.buffer.clear();
+        String text = ZonedDateTime.now(zone).format(FULL) + " (" + zone.getId() + ")";
+        out.buffer.put(text.getBytes(StandardCharsets.UTF_8));
+        return out.buffer.position();
+    }
+
+    @Benchmark
+    public int encodeResponseCached(Out out) {
+        out.buffer.clear();
+        out.buffer.put(cache.get(zone).payload);
+        return out.buffer.position();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int encodeResponseCached4Threads(Out out) {
+        out.buffer.clear();
+        out.buffer.put(cache.get(zone).payload);
+        return out.buffer.position();
+    }
+}
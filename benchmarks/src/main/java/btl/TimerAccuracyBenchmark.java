@@ -0,0 +1,90 @@
+// File: TimerAccuracyBenchmark.java
+package btl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Độ chính xác của TimerEngine: mỗi phép đo chạy một đếm ngược durationMillis với bước 1 ms và chờ onFinished,
+ * nên thời gian đo = durationMillis + độ trễ đánh thức lần cuối.
+ * Tải giả: loadTasks tác vụ định kỳ mỗi 1 ms chiếm busyMicros trên cùng scheduler 2 luồng (như ClientGUI);
+ * giữ tổng tải dưới số CPU, nếu không hàng đợi của scheduler dồn ứ và đo tải chứ không đo bộ đếm.
+ * Không trôi nghĩa là p50/p99 của đếm ngược 50 ms (50 bước) chỉ hơn 50 ms cỡ độ trễ của một lần đánh thức,
+ * không phải 50 lần; so với đếm ngược 5 ms ở cùng mức tải.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimerAccuracyBenchmark {
+
+    @Param({"5", "50"})
+    public int durationMillis;
+
+    @Param({"0", "2"})
+    public int loadTasks;
+
+    @Param({"100"})
+    public int busyMicros;
+
+    ScheduledExecutorService scheduler;
+    TimerEngine engine;
+    int sequence;
+
+    @Setup(Level.Trial)
+    public void start() {
+        scheduler = Executors.newScheduledThreadPool(2);
+        engine = new TimerEngine(scheduler);
+        for (int i = 0; i < loadTasks; i++) {
+            scheduler.scheduleAtFixedRate(() -> {
+                long until = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(busyMicros);
+                while (System.nanoTime() - until < 0) {
+                    // chiếm luồng của scheduler
+                }
+            }, 0, 1, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public long countdown() throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        long[] lastDisplay = new long[1];
+        engine.startCountdown("bench-" + (sequence++ & 7), TimeUnit.MILLISECONDS.toNanos(durationMillis),
+                TimeUnit.MILLISECONDS.toNanos(1), new TimerEngine.Listener() {
+                    @Override
+                    public void onTick(TimerEngine.Timer timer, long displayNanos) {
+                        lastDisplay[0] = displayNanos;
+                    }
+
+                    @Override
+                    public void onFinished(TimerEngine.Timer timer) {
+                        finished.countDown();
+                    }
+                });
+        finished.await();
+        return lastDisplay[0];
+    }
+}
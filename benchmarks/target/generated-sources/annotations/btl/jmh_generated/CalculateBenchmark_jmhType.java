@@ -0,0 +1,4 @@
+package btl.jmh_generated;
+public class CalculateBenchmark_jmhType extends CalculateBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package btl.jmh_generated;
+public class ExpressionBenchmark_jmhType extends ExpressionBenchmark_jmhType_B3 {
+}
+
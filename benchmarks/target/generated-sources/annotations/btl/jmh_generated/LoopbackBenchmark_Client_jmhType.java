@@ -0,0 +1,4 @@
+package btl.jmh_generated;
+public class LoopbackBenchmark_Client_jmhType extends LoopbackBenchmark_Client_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package btl.jmh_generated;
+public class LoopbackBenchmark_Server_jmhType extends LoopbackBenchmark_Server_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package btl.jmh_generated;
+public class LoopbackBenchmark_jmhType extends LoopbackBenchmark_jmhType_B3 {
+}
+
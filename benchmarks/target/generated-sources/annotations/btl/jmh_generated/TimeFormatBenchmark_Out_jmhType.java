@@ -0,0 +1,4 @@
+package btl.jmh_generated;
+public class TimeFormatBenchmark_Out_jmhType extends TimeFormatBenchmark_Out_jmhType_B3 {
+}
+
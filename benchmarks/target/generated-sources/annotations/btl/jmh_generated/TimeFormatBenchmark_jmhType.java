@@ -0,0 +1,4 @@
+package btl.jmh_generated;
+public class TimeFormatBenchmark_jmhType extends TimeFormatBenchmark_jmhType_B3 {
+}
+
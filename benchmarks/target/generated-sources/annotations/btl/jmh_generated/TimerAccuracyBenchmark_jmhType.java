@@ -0,0 +1,4 @@
+package btl.jmh_generated;
+public class TimerAccuracyBenchmark_jmhType extends TimerAccuracyBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,252 @@
+// File: AdmissionControl.java
+package btl;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kiểm soát nhận gói trước khi phân tích lệnh (chống flood và khuếch đại phản xạ).
+ * - Mỗi địa chỉ nguồn một token bucket, cài đặt bằng GCRA: chỉ cần một số long (thời điểm đến lý thuyết - TAT)
+ * - Bảng nguồn có kích thước cố định, chia nhiều dải (stripe) khóa riêng; mỗi dải là bảng băm trên mảng
+ *   nguyên thủy với danh sách LRU nội tại - không cấp phát khi chạy, nguồn cũ nhất bị loại khi đầy
+ * - Giới hạn toàn cục: tốc độ gói tổng (GCRA trên AtomicLong) và số lệnh "nặng" (báo thức, tính toán, STATS)
+ *   được xử lý đồng thời, để các lệnh rẻ (giờ, PING, đồng bộ) luôn còn worker
+ * Gói bị từ chối không được trả lời và không được ghi nhật ký.
+ */
+final class AdmissionControl {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong globalTat = new AtomicLong(Long.MIN_VALUE);  // TAT của giới hạn toàn cục
+    private final AtomicInteger heavyInFlight = new AtomicInteger();
+
+    private volatile long clientInterval;   // nano giây giữa hai gói ở tốc độ cho phép, 0 = không giới hạn
+    private volatile long clientTolerance;  // = interval * (burst - 1)
+    private volatile long globalInterval;
+    private volatile long globalTolerance;
+    private volatile int heavyLimit;
+    private volatile boolean exemptLoopback = true;
+
+    /**
+     * @param maxClients số nguồn được theo dõi cùng lúc (làm tròn lên theo số dải)
+     * @param heavyLimit số lệnh nặng xử lý đồng thời tối đa
+     */
+    AdmissionControl(int maxClients, int heavyLimit) {
+        int perStripe = Math.max(16, (maxClients + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        this.heavyLimit = Math.max(1, heavyLimit);
+    }
+
+    /** @param perSecond gói/giây cho mỗi nguồn, <= 0 để tắt giới hạn */
+    void setClientLimit(double perSecond, int burst) {
+        long interval = perSecond <= 0 ? 0 : Math.max(1, (long) (1e9 / perSecond));
+        clientTolerance = interval * (Math.max(1, burst) - 1);
+        clientInterval = interval;
+    }
+
+    /** @param perSecond tổng số gói/giây của server, <= 0 để tắt giới hạn */
+    void setGlobalLimit(double perSecond, int burst) {
+        long interval = perSecond <= 0 ? 0 : Math.max(1, (long) (1e9 / perSecond));
+        globalTolerance = interval * (Math.max(1, burst) - 1);
+        globalInterval = interval;
+    }
+
+    void setHeavyLimit(int limit) {
+        heavyLimit = Math.max(1, limit);
+    }
+
+    /** Lưu lượng từ loopback (LoadGenerator, công cụ quản trị) không bị giới hạn theo nguồn. */
+    void setExemptLoopback(boolean exempt) {
+        exemptLoopback = exempt;
+    }
+
+    double clientRate() {
+        long interval = clientInterval;
+        return interval == 0 ? 0 : 1e9 / interval;
+    }
+
+    int trackedClients() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.size;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Quyết định nhận gói từ address tại thời điểm nowNanos (System.nanoTime()).
+     * @return null nếu nhận, ngược lại là lý do bỏ gói
+     */
+    ServerMetrics.Drop admit(InetAddress address, long nowNanos) {
+        long interval = clientInterval;
+        if (interval != 0 && !(exemptLoopback && address.isLoopbackAddress())) {
+            long key = key(address);
+            Stripe stripe = stripes[(int) (mix(key) >>> 60) & (STRIPES - 1)];
+            if (!stripe.conform(key, nowNanos, interval, clientTolerance)) {
+                return ServerMetrics.Drop.RATE_LIMITED;
+            }
+        }
+        interval = globalInterval;
+        if (interval != 0 && !conformGlobal(nowNanos, interval, globalTolerance)) {
+            return ServerMetrics.Drop.GLOBAL_LIMIT;
+        }
+        return null;
+    }
+
+    private boolean conformGlobal(long now, long interval, long tolerance) {
+        while (true) {
+            long tat = globalTat.get();
+            long base = tat < now ? now : tat;
+            if (base - now > tolerance) return false;
+            if (globalTat.compareAndSet(tat, base + interval)) return true;
+        }
+    }
+
+    /** Giữ một suất xử lý lệnh nặng; false nếu đã đủ số lệnh nặng đang chạy. */
+    boolean enterHeavy() {
+        int limit = heavyLimit;
+        while (true) {
+            int n = heavyInFlight.get();
+            if (n >= limit) return false;
+            if (heavyInFlight.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    void exitHeavy() {
+        heavyInFlight.decrementAndGet();
+    }
+
+    /**
+     * Khóa 64 bit của nguồn, không cấp phát với IPv4 (Inet4Address.hashCode() chính là địa chỉ).
+     * IPv6 được gộp theo tiền tố /64 - một máy thường có cả một /64, đổi địa chỉ trong đó không lách được giới hạn.
+     */
+    static long key(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            return 0x1_0000_0000L | (address.hashCode() & 0xFFFF_FFFFL);
+        }
+        byte[] b = address.getAddress();
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (b[i] & 0xFF);
+        }
+        return prefix; // ::/8 (dải trùng với khóa IPv4) là dải dành riêng, không định tuyến được
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * Một dải của bảng nguồn: băm theo chuỗi (heads/chain) và danh sách LRU hai chiều (prev/next),
+     * tất cả là chỉ số int vào các mảng có kích thước cố định.
+     */
+    private static final class Stripe {
+        private static final int NONE = -1;
+
+        private final long[] keys;
+        private final long[] tats;
+        private final int[] chain;
+        private final int[] prev;
+        private final int[] next;
+        private final int[] heads;
+        private final int mask;
+        private int head = NONE; // dùng gần nhất
+        private int tail = NONE; // lâu nhất - bị loại khi đầy
+        private int size;
+
+        Stripe(int capacity) {
+            keys = new long[capacity];
+            tats = new long[capacity];
+            chain = new int[capacity];
+            prev = new int[capacity];
+            next = new int[capacity];
+            int buckets = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            heads = new int[buckets];
+            Arrays.fill(heads, NONE);
+            mask = buckets - 1;
+        }
+
+        synchronized boolean conform(long key, long now, long interval, long tolerance) {
+            int bucket = (int) mix(key) & mask;
+            int slot = heads[bucket];
+            while (slot != NONE && keys[slot] != key) {
+                slot = chain[slot];
+            }
+            if (slot == NONE) {
+                slot = insert(key, bucket);
+                tats[slot] = now;
+            } else {
+                touch(slot);
+            }
+            long tat = tats[slot];
+            long base = tat < now ? now : tat;
+            if (base - now > tolerance) {
+                return false;
+            }
+            tats[slot] = base + interval;
+            return true;
+        }
+
+        private int insert(long key, int bucket) {
+            int slot;
+            if (size < keys.length) {
+                slot = size++;
+            } else {
+                slot = tail;
+                unlinkLru(slot);
+                unlinkChain(slot);
+            }
+            keys[slot] = key;
+            chain[slot] = heads[bucket];
+            heads[bucket] = slot;
+            linkFront(slot);
+            return slot;
+        }
+
+        private void touch(int slot) {
+            if (slot != head) {
+                unlinkLru(slot);
+                linkFront(slot);
+            }
+        }
+
+        private void linkFront(int slot) {
+            prev[slot] = NONE;
+            next[slot] = head;
+            if (head != NONE) prev[head] = slot;
+            head = slot;
+            if (tail == NONE) tail = slot;
+        }
+
+        private void unlinkLru(int slot) {
+            int p = prev[slot], n = next[slot];
+            if (p != NONE) next[p] = n; else head = n;
+            if (n != NONE) prev[n] = p; else tail = p;
+        }
+
+        private void unlinkChain(int slot) {
+            int bucket = (int) mix(keys[slot]) & mask;
+            int s = heads[bucket];
+            if (s == slot) {
+                heads[bucket] = chain[slot];
+                return;
+            }
+            while (chain[s] != slot) {
+                s = chain[s];
+            }
+            chain[s] = chain[slot];
+        }
+    }
+}
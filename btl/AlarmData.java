@@ -0,0 +1,29 @@
+// File: AlarmData.java
+package btl;
+
+import java.time.LocalTime;
+
+/** Một báo thức do client đăng ký với server (bất biến). */
+final class AlarmData {
+    final String id;
+    final LocalTime alarmTime;
+    final String clientAddress;
+    final int clientPort;
+    final long version; // phiên bản bản sao (AlarmReplicator); 0 khi chạy một server
+
+    AlarmData(String id, LocalTime time, String addr, int port) {
+        this(id, time, addr, port, 0);
+    }
+
+    AlarmData(String id, LocalTime time, String addr, int port, long version) {
+        this.id = id;
+        this.alarmTime = time;
+        this.clientAddress = addr;
+        this.clientPort = port;
+        this.version = version;
+    }
+
+    AlarmData withVersion(long newVersion) {
+        return new AlarmData(id, alarmTime, clientAddress, clientPort, newVersion);
+    }
+}
@@ -0,0 +1,436 @@
+// File: AlarmJournal.java
+package btl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Lưu bền các báo thức của server: write-ahead log + snapshot.
+ * - Mỗi thao tác (SET / CANCEL / CANCEL_ALL) được đưa vào hàng đợi, luồng nền ghi theo lô
+ *   và fsync một lần cho cả lô (group commit) - luồng trả lời UDP không bao giờ chờ đĩa
+ * - Bản ghi: [độ dài][CRC32][nội dung]; khi khôi phục, đuôi ghi dở (sai CRC) bị cắt bỏ
+ * - Khi log dài gấp đôi số báo thức còn sống: ghi snapshot mới (đổi tên nguyên tử) rồi làm rỗng log
+ * - Khôi phục đọc nguyên snapshot rồi log vào bộ nhớ một lần và phát lại trên buffer
+ * - Ghi lô lỗi: log được cắt về vị trí trước lô (không để lại bản ghi dở) rồi ghi lại cả lô; hết số lần thử
+ *   thì thao tác bị mất được đếm (lostCount) và báo ra stderr, STATS và /metrics
+ */
+final class AlarmJournal {
+
+    static final String WAL_FILE = "alarms.wal";
+    static final String SNAPSHOT_FILE = "alarms.snapshot";
+
+    private static final int SNAPSHOT_MAGIC = 0x414C4D53; // "ALMS"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final byte OP_SET = 1;
+    private static final byte OP_CANCEL = 2;
+    private static final byte OP_CANCEL_ALL = 3;
+    private static final byte OP_SET_VERSIONED = 4; // OP_SET + phiên bản bản sao (chế độ nhân bản)
+    private static final byte OP_CLOSE = -1; // chỉ dùng trong hàng đợi, không ghi ra đĩa
+    private static final int MAX_RECORD = 32 * 1024;
+    private static final int MIN_COMPACT_RECORDS = 10_000;
+    private static final int WRITE_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MILLIS = 200;
+
+    private static final class Op {
+        final byte type;
+        final String id;
+        final AlarmData alarm;
+
+        Op(byte type, String id, AlarmData alarm) {
+            this.type = type;
+            this.id = id;
+            this.alarm = alarm;
+        }
+    }
+
+    private final Path walPath;
+    private final Path snapshotPath;
+    private static final LocalTime[] MINUTES = new LocalTime[24 * 60]; // dùng chung khi khôi phục
+
+    static {
+        for (int i = 0; i < MINUTES.length; i++) {
+            MINUTES[i] = LocalTime.of(i / 60, i % 60);
+        }
+    }
+
+    private Map<String, AlarmData> alarms = new HashMap<>(); // trạng thái hiện tại, khóa bằng this
+    private final LinkedBlockingQueue<Op> queue = new LinkedBlockingQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+    private final CRC32 crc = new CRC32();
+    private FileChannel wal;
+    private long walRecords;
+    private Thread writer;
+    private volatile IOException lastError;
+    private volatile long writeErrors;
+    private volatile long lost;
+
+    AlarmJournal(Path directory) {
+        this.walPath = directory.resolve(WAL_FILE);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+    }
+
+    /**
+     * Đọc snapshot + log, cắt đuôi hỏng, mở log để ghi tiếp và khởi động luồng ghi.
+     * @return các báo thức còn hiệu lực (id -> báo thức); chỉ đọc, dùng ngay trước thao tác ghi đầu tiên
+     */
+    synchronized Map<String, AlarmData> open() throws IOException {
+        Files.createDirectories(walPath.toAbsolutePath().getParent());
+        alarms = new HashMap<>();
+        if (Files.exists(snapshotPath)) {
+            readSnapshot();
+        }
+        wal = FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long validEnd = replay(wal);
+        if (validEnd < wal.size()) {
+            wal.truncate(validEnd);
+            wal.force(true);
+        }
+        wal.position(validEnd);
+
+        writer = new Thread(this::writeLoop, "Alarm-Journal");
+        writer.setDaemon(true);
+        writer.start();
+        return Collections.unmodifiableMap(alarms);
+    }
+
+    /** Ghi lại việc đặt (hoặc thay thế) báo thức. Không chờ đĩa. */
+    synchronized void put(AlarmData alarm) {
+        alarms.put(alarm.id, alarm);
+        queue.add(new Op(setOp(alarm), alarm.id, alarm));
+    }
+
+    /** Ghi lại việc hủy báo thức id. Không chờ đĩa. */
+    synchronized void remove(String id) {
+        if (alarms.remove(id) != null) {
+            queue.add(new Op(OP_CANCEL, id, null));
+        }
+    }
+
+    /** Như remove(id) nhưng chỉ khi id vẫn trỏ tới đúng báo thức này (báo thức đã kêu). */
+    synchronized void remove(AlarmData alarm) {
+        if (alarms.remove(alarm.id, alarm)) {
+            queue.add(new Op(OP_CANCEL, alarm.id, null));
+        }
+    }
+
+    synchronized void clear() {
+        alarms.clear();
+        queue.add(new Op(OP_CANCEL_ALL, null, null));
+    }
+
+    /** Lỗi ghi gần nhất của luồng nền (null nếu chưa có). */
+    IOException lastError() {
+        return lastError;
+    }
+
+    /** Số lần ghi lô thất bại (kể cả các lần thử lại sau đó thành công). */
+    long writeErrors() {
+        return writeErrors;
+    }
+
+    /** Số thao tác không ghi được xuống đĩa sau mọi lần thử: còn trong bộ nhớ nhưng mất khi khởi động lại. */
+    long lostCount() {
+        return lost;
+    }
+
+    /** Ghi nốt các thao tác đang chờ, fsync và đóng file. */
+    void close() {
+        Thread w;
+        synchronized (this) {
+            w = writer;
+            writer = null;
+        }
+        if (w == null) return;
+        queue.add(new Op(OP_CLOSE, null, null));
+        try {
+            w.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            wal.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ============================
+    // Luồng ghi nền
+    // ============================
+    private void writeLoop() {
+        List<Op> batch = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+            } catch (InterruptedException e) {
+                closing = true;
+            }
+            commit(batch);
+            for (Op op : batch) {
+                if (op.type == OP_CLOSE) closing = true;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Ghi và fsync một lô (compact có thể thêm vào lô các thao tác nó lấy khỏi hàng đợi).
+     * Lỗi thì cắt log về vị trí trước lô và thử lại cả lô; hết số lần thử thì ghi nhận thao tác bị mất.
+     */
+    private void commit(List<Op> batch) {
+        for (int attempt = 1; ; attempt++) {
+            long mark = -1;
+            long markRecords = walRecords;
+            try {
+                mark = wal.position();
+                for (Op op : batch) {
+                    if (op.type != OP_CLOSE) encode(op);
+                }
+                flushBuffer();
+                wal.force(false);
+                if (walRecords > MIN_COMPACT_RECORDS && walRecords > 2L * liveCount()) {
+                    compact(batch);
+                }
+                return;
+            } catch (IOException e) {
+                lastError = e;
+                writeErrors++;
+                buffer.clear();
+                rollback(mark, markRecords);
+                if (attempt >= WRITE_ATTEMPTS) {
+                    int count = 0;
+                    for (Op op : batch) {
+                        if (op.type != OP_CLOSE) count++;
+                    }
+                    lost += count;
+                    System.err.println("Mất " + count + " thao tác báo thức (không ghi được " + walPath + "): "
+                            + e.getMessage());
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // vẫn thử nốt; cờ ngắt được giữ cho vòng ghi
+            }
+        }
+    }
+
+    /** Cắt bỏ phần lô đã ghi dở; compact đã làm rỗng log thì chỉ về đầu log (không tạo lỗ trống). */
+    private void rollback(long mark, long markRecords) {
+        if (mark < 0) return;
+        try {
+            long size = wal.size();
+            if (size > mark) wal.truncate(mark);
+            wal.position(Math.min(mark, size));
+            walRecords = size >= mark ? markRecords : 0;
+        } catch (IOException e) {
+            lastError = e;
+        }
+    }
+
+    private synchronized int liveCount() {
+        return alarms.size();
+    }
+
+    /**
+     * Ghi snapshot từ trạng thái hiện tại rồi làm rỗng log.
+     * Các thao tác còn trong hàng đợi lúc chụp được ghi hết vào log cũ trước khi chụp, nên nếu
+     * sập giữa chừng thì phát lại log cũ lên snapshot mới vẫn cho đúng trạng thái.
+     * Các thao tác đó được thêm vào batch để lần ghi lại sau lỗi không làm mất chúng.
+     */
+    private void compact(List<Op> batch) throws IOException {
+        int from = batch.size();
+        List<AlarmData> live;
+        synchronized (this) {
+            queue.drainTo(batch);
+            live = new ArrayList<>(alarms.values());
+        }
+        for (Op op : batch.subList(from, batch.size())) {
+            if (op.type != OP_CLOSE) encode(op);
+        }
+        flushBuffer();
+        wal.force(false);
+
+        Path tmp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.clear();
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(live.size());
+            for (AlarmData alarm : live) {
+                encodeInto(new Op(setOp(alarm), alarm.id, alarm), out);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) out.write(buffer);
+            buffer.clear();
+            out.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        wal.truncate(0);
+        wal.position(0);
+        wal.force(true);
+        walRecords = 0;
+    }
+
+    /** Báo thức không có phiên bản (một server) giữ định dạng bản ghi cũ. */
+    private static byte setOp(AlarmData alarm) {
+        return alarm.version == 0 ? OP_SET : OP_SET_VERSIONED;
+    }
+
+    private void encode(Op op) throws IOException {
+        encodeInto(op, wal);
+        walRecords++;
+    }
+
+    /** Đóng khung một bản ghi vào buffer; buffer đầy thì xả xuống target. */
+    private void encodeInto(Op op, FileChannel target) throws IOException {
+        byte[] id = op.id == null ? null : op.id.getBytes(StandardCharsets.UTF_8);
+        byte[] host = op.alarm == null ? null : op.alarm.clientAddress.getBytes(StandardCharsets.UTF_8);
+        int bodyLen = 1;
+        if (op.type == OP_SET) bodyLen += 2 + id.length + 2 + 2 + host.length + 4;
+        else if (op.type == OP_SET_VERSIONED) bodyLen += 2 + id.length + 2 + 2 + host.length + 4 + 8;
+        else if (op.type == OP_CANCEL) bodyLen += 2 + id.length;
+        if (bodyLen > MAX_RECORD) throw new IOException("Bản ghi báo thức quá lớn: " + bodyLen);
+
+        if (buffer.remaining() < 8 + bodyLen) {
+            buffer.flip();
+            while (buffer.hasRemaining()) target.write(buffer);
+            buffer.clear();
+        }
+        int start = buffer.position();
+        buffer.position(start + 8);
+        buffer.put(op.type);
+        if (op.type == OP_SET || op.type == OP_SET_VERSIONED) {
+            buffer.putShort((short) id.length).put(id);
+            buffer.put((byte) op.alarm.alarmTime.getHour()).put((byte) op.alarm.alarmTime.getMinute());
+            buffer.putShort((short) host.length).put(host);
+            buffer.putInt(op.alarm.clientPort);
+            if (op.type == OP_SET_VERSIONED) buffer.putLong(op.alarm.version);
+        } else if (op.type == OP_CANCEL) {
+            buffer.putShort((short) id.length).put(id);
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + 8).limit(start + 8 + bodyLen);
+        crc.reset();
+        crc.update(body);
+        buffer.putInt(start, bodyLen).putInt(start + 4, (int) crc.getValue());
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) wal.write(buffer);
+        buffer.clear();
+    }
+
+    // ============================
+    // Khôi phục
+    // ============================
+    private void readSnapshot() throws IOException {
+        try (FileChannel ch = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer map = readFully(ch);
+            if (map.remaining() < 12 || map.getInt() != SNAPSHOT_MAGIC || map.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Snapshot báo thức không hợp lệ: " + snapshotPath);
+            }
+            int count = map.getInt();
+            alarms = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                if (!readRecord(map)) {
+                    throw new IOException("Snapshot báo thức bị hỏng tại bản ghi " + i);
+                }
+            }
+        }
+    }
+
+    /** Phát lại log; trả về vị trí kết thúc của bản ghi hợp lệ cuối cùng. */
+    private long replay(FileChannel ch) throws IOException {
+        walRecords = 0;
+        if (ch.size() == 0) return 0;
+        ByteBuffer map = readFully(ch);
+        while (readRecord(map)) {
+            walRecords++;
+        }
+        return map.position();
+    }
+
+    /** Đọc và áp dụng một bản ghi; false (giữ nguyên vị trí) nếu hết dữ liệu hoặc bản ghi hỏng. */
+    private boolean readRecord(ByteBuffer map) {
+        int start = map.position();
+        if (map.remaining() < 8) return false;
+        int len = map.getInt();
+        int sum = map.getInt();
+        if (len <= 0 || len > MAX_RECORD || len > map.remaining()) {
+            map.position(start);
+            return false;
+        }
+        ByteBuffer body = map.duplicate();
+        body.limit(map.position() + len);
+        crc.reset();
+        crc.update(body);
+        if ((int) crc.getValue() != sum) {
+            map.position(start);
+            return false;
+        }
+        try {
+            byte type = map.get();
+            if (type == OP_SET || type == OP_SET_VERSIONED) {
+                String id = readString(map);
+                int hour = map.get();
+                int minute = map.get();
+                LocalTime time = hour >= 0 && hour < 24 && minute >= 0 && minute < 60
+                        ? MINUTES[hour * 60 + minute] : LocalTime.of(hour, minute);
+                String host = readString(map);
+                int port = map.getInt();
+                long version = type == OP_SET_VERSIONED ? map.getLong() : 0;
+                alarms.put(id, new AlarmData(id, time, host, port, version));
+            } else if (type == OP_CANCEL) {
+                alarms.remove(readString(map));
+            } else if (type == OP_CANCEL_ALL) {
+                alarms.clear();
+            } else {
+                map.position(start);
+                return false;
+            }
+        } catch (RuntimeException e) {
+            map.position(start);
+            return false;
+        }
+        map.position(start + 8 + len);
+        return true;
+    }
+
+    /**
+     * Đọc cả file vào bộ nhớ heap. Không dùng mmap: trên Windows file đang được ánh xạ
+     * không thể bị cắt ngắn hoặc thay thế cho tới khi GC giải phóng vùng ánh xạ.
+     */
+    private static ByteBuffer readFully(FileChannel ch) throws IOException {
+        if (ch.size() > Integer.MAX_VALUE) throw new IOException("File báo thức quá lớn");
+        ByteBuffer data = ByteBuffer.allocate((int) ch.size());
+        while (data.hasRemaining() && ch.read(data, data.position()) > 0) {
+        }
+        data.flip();
+        return data;
+    }
+
+    private static String readString(ByteBuffer map) {
+        int len = map.getShort() & 0xFFFF;
+        int pos = map.position();
+        map.position(pos + len);
+        return new String(map.array(), map.arrayOffset() + pos, len, StandardCharsets.UTF_8);
+    }
+}
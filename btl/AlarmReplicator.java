@@ -0,0 +1,569 @@
+// File: AlarmReplicator.java
+package btl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Nhân bản báo thức giữa một nhóm server cố định (cùng danh sách --peers trên mọi node).
+ * - Phân vùng bằng băm nhất quán: mỗi node có VNODES điểm trên vòng băm; báo thức thuộc về REPLICAS node
+ *   khác nhau đầu tiên tính từ băm của id - node đầu là chính, các node sau là dự phòng
+ * - Node nhận lệnh của client làm điều phối: ghi bản cục bộ (nếu là bản sao) và gửi REPL_SET / REPL_DEL
+ *   tới các bản sao còn lại qua cùng socket UDP, gửi lại tới khi nhận REPL_ACK
+ * - Mỗi bản ghi mang phiên bản (thời gian micro giây * 16 + chỉ số node): bản mới hơn thắng; chỉ số node là
+ *   vị trí trong danh sách địa chỉ đã sắp xếp, nên mọi node thống nhất dù liệt kê peer theo thứ tự khác;
+ *   nhóm tối đa MAX_NODES node
+ *   hủy và đã kêu để lại "bia mộ" (giữ TOMBSTONE_TTL_MS) để không hồi sinh báo thức
+ * - Bắt kịp sau khi khởi động lại: nhịp tim REPL_HB mang digest (XOR băm các bản ghi hai node cùng giữ,
+ *   cập nhật tăng dần ở mỗi thay đổi); lệch thì so digest theo BUCKETS nhóm và chỉ gửi lại các nhóm khác nhau
+ * - Đúng một node kêu: tới hạn, node chỉ kêu khi mọi node đứng trước nó trong danh sách bản sao đã im lặng quá
+ *   DEAD_AFTER_MS; node dự phòng hoãn, kiểm tra lại sau FAILOVER_DELAY_MS và bỏ khi nhận REPL_DEL của node đã kêu.
+ *   Khi mạng bị chia cắt, mỗi phía có thể kêu một lần (ít nhất một lần thay vì đúng một lần)
+ */
+final class AlarmReplicator {
+
+    /** Bộ lưu cục bộ của server (bộ lập lịch + nhật ký); được gọi khi đang giữ khóa của replicator. */
+    interface Store {
+        void put(AlarmData alarm);
+
+        void remove(String id);
+    }
+
+    /** Gửi một gói văn bản tới peer (qua socket của server để peer nhận ra địa chỉ nguồn). */
+    interface Sender {
+        void send(String message, InetSocketAddress to);
+    }
+
+    /** Quyết định khi báo thức tới hạn trên node này. */
+    enum Due {
+        FIRE, DEFER, DROP
+    }
+
+    static final int DEFAULT_REPLICAS = 2;
+    /** Phiên bản dành NODE_BITS bit thấp cho chỉ số node. */
+    private static final int NODE_BITS = 4;
+    static final int MAX_NODES = 1 << NODE_BITS;
+    static final long FAILOVER_DELAY_MS = 4000; // > DEAD_AFTER_MS: lần kiểm tra lại thấy được node chính đã chết
+    private static final int VNODES = 64;
+    private static final int BUCKETS = 64;
+    private static final long TICK_MS = 500; // gửi lại; nhịp tim mỗi 2 tick
+    private static final long DEAD_AFTER_MS = 3500;
+    private static final int MAX_RETRIES = 30;
+    private static final long MAX_DEFER_MS = 60_000; // node chính vẫn sống mà không báo đã kêu: coi như đã kêu
+    private static final long TOMBSTONE_TTL_MS = 48 * 3600_000L;
+
+    static final String HB = "REPL_HB:";
+    static final String DIGESTS = "REPL_DIGESTS:";
+    static final String PULL = "REPL_PULL:";
+    static final String SET = "REPL_SET:";
+    static final String DEL = "REPL_DEL:";
+    static final String CLEAR = "REPL_CLEAR:";
+    static final String ACK = "REPL_ACK:";
+
+    /** Một phiên bản của báo thức; alarm == null là bia mộ. */
+    private static final class Record {
+        final String id;
+        final long version;
+        final AlarmData alarm;
+        final long hash;
+
+        Record(String id, long version, AlarmData alarm) {
+            this.id = id;
+            this.version = version;
+            this.alarm = alarm;
+            this.hash = mix(mix(id.hashCode()) ^ version ^ (alarm == null ? 0x5DEECE66DL : 0));
+        }
+    }
+
+    /** Thông điệp chờ peer xác nhận. */
+    private static final class Pending {
+        final String message;
+        final long version;
+        int attempts;
+
+        Pending(String message, long version) {
+            this.message = message;
+            this.version = version;
+        }
+    }
+
+    private final InetSocketAddress[] nodes;
+    private final int self;
+    private final int replicas;
+    private final long[] ringPoints;
+    private final int[] ringOwners;
+    private final Store store;
+    private final Sender sender;
+    private final Consumer<String> log;
+
+    // Mọi trạng thái dưới đây chỉ đọc/ghi khi giữ khóa this
+    private final long[] lastHeard; // System.nanoTime() của gói gần nhất từ mỗi node
+    private final boolean[] alive;
+    private final long[][] digests; // [node][bucket]: XOR băm các bản ghi cùng giữ với node đó
+    private final Map<String, Record> records = new HashMap<>();
+    private final Map<String, Pending> pending = new LinkedHashMap<>(); // khóa "node|id", "node|*" cho CLEAR
+    private final Map<String, Long> deferredSince = new HashMap<>();
+    private long clock; // micro giây, không lùi
+    private long ticks;
+    private ScheduledExecutorService timer;
+
+    /** @param self vị trí của server này trong group (như findSelf); group có thể liệt kê theo thứ tự bất kỳ */
+    AlarmReplicator(List<InetSocketAddress> group, int self, int replicas, Store store, Sender sender,
+                    Consumer<String> log) {
+        if (group.size() > MAX_NODES) {
+            throw new IllegalArgumentException("Nhóm nhân bản tối đa " + MAX_NODES + " node (có " + group.size() + ")");
+        }
+        this.nodes = group.toArray(new InetSocketAddress[0]);
+        Arrays.sort(nodes, Comparator.comparing(AlarmReplicator::nodeName));
+        this.self = Arrays.asList(nodes).indexOf(group.get(self));
+        this.replicas = Math.max(1, Math.min(replicas, nodes.length));
+        this.store = store;
+        this.sender = sender;
+        this.log = log;
+        this.lastHeard = new long[nodes.length];
+        this.alive = new boolean[nodes.length];
+        this.digests = new long[nodes.length][BUCKETS];
+
+        // Điểm trên vòng băm chỉ phụ thuộc địa chỉ: mọi node dựng cùng một vòng dù liệt kê peer theo thứ tự khác
+        long[][] points = new long[nodes.length * VNODES][];
+        for (int n = 0; n < nodes.length; n++) {
+            String name = nodeName(nodes[n]);
+            for (int v = 0; v < VNODES; v++) {
+                points[n * VNODES + v] = new long[] {mix((name + "#" + v).hashCode()), n};
+            }
+        }
+        Arrays.sort(points, (a, b) -> Long.compare(a[0], b[0]));
+        ringPoints = new long[points.length];
+        ringOwners = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            ringPoints[i] = points[i][0];
+            ringOwners[i] = (int) points[i][1];
+        }
+    }
+
+    private static String nodeName(InetSocketAddress node) {
+        return node.getAddress().getHostAddress() + ":" + node.getPort();
+    }
+
+    /**
+     * Vị trí của server này trong nhóm: mục có cùng cổng và địa chỉ thuộc máy này.
+     * @return -1 nếu không có
+     */
+    static int findSelf(List<InetSocketAddress> group, int port) {
+        for (int i = 0; i < group.size(); i++) {
+            InetSocketAddress a = group.get(i);
+            if (a.getPort() == port && isLocal(a.getAddress())) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isLocal(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress()) return true;
+        try {
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    /** Gói đến từ một node trong nhóm (không qua giới hạn theo nguồn, được phép gửi REPL_*). */
+    boolean isPeer(InetSocketAddress from) {
+        return indexOf(from) >= 0;
+    }
+
+    synchronized void start() {
+        if (timer != null) return;
+        // Coi peer là còn sống lúc khởi động: node vừa chạy lại hoãn báo thức thay vì kêu trùng
+        long now = System.nanoTime();
+        Arrays.fill(lastHeard, now);
+        Arrays.fill(alive, true);
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Alarm-Replication");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (timer == null) return;
+        timer.shutdownNow();
+        timer = null;
+    }
+
+    /**
+     * Nạp các báo thức đọc từ nhật ký khi khởi động. Báo thức chưa có phiên bản (ghi ở chế độ một server)
+     * hoặc không còn thuộc node này (nhóm đã đổi) được chuyển tới đúng các bản sao.
+     */
+    synchronized void load(Collection<AlarmData> alarms) {
+        int handedOff = 0;
+        for (AlarmData alarm : alarms) {
+            int[] pref = preference(alarm.id);
+            boolean mine = isReplica(pref, self);
+            observe(alarm.version);
+            if (alarm.version != 0 && mine) {
+                Record r = new Record(alarm.id, alarm.version, alarm);
+                records.put(r.id, r);
+                updateDigests(null, r);
+                continue;
+            }
+            if (!mine) {
+                store.remove(alarm.id);
+                handedOff++;
+            }
+            long version = alarm.version != 0 ? alarm.version : nextVersion();
+            replicate(new Record(alarm.id, version, alarm.withVersion(version)), pref);
+        }
+        if (handedOff > 0) {
+            log.accept("Đã chuyển " + handedOff + " báo thức không thuộc node này tới các bản sao");
+        }
+    }
+
+    // ============================
+    // Lệnh của client (node nhận lệnh làm điều phối)
+    // ============================
+    synchronized void set(AlarmData alarm) {
+        long version = nextVersion();
+        replicate(new Record(alarm.id, version, alarm.withVersion(version)), preference(alarm.id));
+    }
+
+    /** @return false nếu node này là bản sao mà không có báo thức; node khác chỉ chuyển tiếp nên luôn true */
+    synchronized boolean cancel(String id) {
+        int[] pref = preference(id);
+        Record old = records.get(id);
+        replicate(new Record(id, nextVersion(), null), pref);
+        return !isReplica(pref, self) || (old != null && old.alarm != null);
+    }
+
+    synchronized void cancelAll() {
+        long version = nextVersion();
+        clear(version);
+        for (int n = 0; n < nodes.length; n++) {
+            if (n != self) enqueue(n, "*", CLEAR + version, version);
+        }
+    }
+
+    // ============================
+    // Kích hoạt
+    // ============================
+    /** Gọi trên luồng kích hoạt khi báo thức tới hạn ở node này. */
+    synchronized Due onDue(AlarmData alarm) {
+        Record r = records.get(alarm.id);
+        if (r == null || r.alarm == null || r.version != alarm.version) {
+            if (r == null) store.remove(alarm.id);
+            deferredSince.remove(alarm.id);
+            return Due.DROP;
+        }
+        long now = System.nanoTime();
+        for (int n : preference(alarm.id)) {
+            if (n == self) {
+                deferredSince.remove(alarm.id);
+                return Due.FIRE;
+            }
+            if (isAlive(n, now)) break;
+        }
+        // Một node đứng trước còn sống: nó sẽ kêu và gửi REPL_DEL; hoãn để kiểm tra lại
+        Long since = deferredSince.putIfAbsent(alarm.id, now);
+        if (since != null && now - since > TimeUnit.MILLISECONDS.toNanos(MAX_DEFER_MS)) {
+            deferredSince.remove(alarm.id);
+            apply(new Record(alarm.id, nextVersion(), null));
+            return Due.DROP;
+        }
+        return Due.DEFER;
+    }
+
+    /** Báo thức đã kêu ở node này: để lại bia mộ và báo cho các bản sao còn lại. */
+    synchronized void fired(AlarmData alarm) {
+        replicate(new Record(alarm.id, nextVersion(), null), preference(alarm.id));
+    }
+
+    // ============================
+    // Gói từ peer (luồng worker)
+    // ============================
+    /** @return phản hồi gửi lại cho peer, hoặc null */
+    String onMessage(String message, InetSocketAddress from) {
+        int peer = indexOf(from);
+        if (peer < 0) return null;
+        try {
+            synchronized (this) {
+                lastHeard[peer] = System.nanoTime();
+                if (message.startsWith(HB)) {
+                    long theirs = Long.parseUnsignedLong(message.substring(HB.length()), 16);
+                    return theirs == combinedDigest(peer) ? null : DIGESTS + bucketDigests(peer);
+                } else if (message.startsWith(DIGESTS)) {
+                    return pullMismatched(peer, message.substring(DIGESTS.length()).split(","));
+                } else if (message.startsWith(PULL)) {
+                    for (String b : message.substring(PULL.length()).split(",")) {
+                        sendBucket(peer, Integer.parseInt(b));
+                    }
+                    return null;
+                } else if (message.startsWith(SET)) {
+                    // REPL_SET:<phiên bản>:<giờ>:<phút>:<cổng client>:<id>:<địa chỉ client> (IPv6 chứa ':' nên để cuối)
+                    String[] p = message.substring(SET.length()).split(":", 6);
+                    long version = Long.parseLong(p[0]);
+                    AlarmData alarm = new AlarmData(p[4], LocalTime.of(Integer.parseInt(p[1]), Integer.parseInt(p[2])),
+                            p[5], Integer.parseInt(p[3]), version);
+                    receive(new Record(alarm.id, version, alarm));
+                    return ACK + version + ":" + alarm.id;
+                } else if (message.startsWith(DEL)) {
+                    String[] p = message.substring(DEL.length()).split(":", 2);
+                    long version = Long.parseLong(p[0]);
+                    receive(new Record(p[1], version, null));
+                    return ACK + version + ":" + p[1];
+                } else if (message.startsWith(CLEAR)) {
+                    long version = Long.parseLong(message.substring(CLEAR.length()));
+                    observe(version);
+                    clear(version);
+                    return ACK + version + ":*";
+                } else if (message.startsWith(ACK)) {
+                    String[] p = message.substring(ACK.length()).split(":", 2);
+                    String key = peer + "|" + p[1];
+                    Pending waiting = pending.get(key);
+                    if (waiting != null && waiting.version <= Long.parseLong(p[0])) pending.remove(key);
+                    return null;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.accept("Gói nhân bản không hợp lệ từ " + from + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    synchronized String summary() {
+        int liveRecords = 0;
+        for (Record r : records.values()) {
+            if (r.alarm != null) liveRecords++;
+        }
+        int livePeers = 0;
+        for (int n = 0; n < nodes.length; n++) {
+            if (n != self && alive[n]) livePeers++;
+        }
+        return "node " + (self + 1) + "/" + nodes.length + ", " + replicas + " bản sao, peer sống "
+                + livePeers + "/" + (nodes.length - 1) + ", " + liveRecords + " báo thức, "
+                + (records.size() - liveRecords) + " bia mộ, " + pending.size() + " chờ xác nhận";
+    }
+
+    // ============================
+    // Nội bộ (gọi khi đang giữ khóa)
+    // ============================
+    private void tick() {
+        synchronized (this) {
+            long now = System.nanoTime();
+            ticks++;
+            for (int n = 0; n < nodes.length; n++) {
+                if (n == self) continue;
+                boolean up = isAlive(n, now);
+                if (up != alive[n]) {
+                    alive[n] = up;
+                    log.accept("Node " + nodes[n] + (up ? " đã hoạt động trở lại" : " không phản hồi"));
+                }
+                if (ticks % 2 == 0) {
+                    sender.send(HB + Long.toHexString(combinedDigest(n)), nodes[n]);
+                }
+            }
+            for (Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Pending> e = it.next();
+                Pending p = e.getValue();
+                int node = Integer.parseInt(e.getKey().substring(0, e.getKey().indexOf('|')));
+                if (p.attempts >= MAX_RETRIES) {
+                    // Đồng bộ digest sẽ sửa khi node quay lại (nếu nó là bản sao)
+                    it.remove();
+                    continue;
+                }
+                p.attempts++;
+                sender.send(p.message, nodes[node]);
+            }
+            if (ticks % 120 == 0) collectTombstones();
+        }
+    }
+
+    private void replicate(Record r, int[] pref) {
+        String message = encode(r);
+        for (int n : pref) {
+            if (n == self) apply(r);
+            else enqueue(n, r.id, message, r.version);
+        }
+    }
+
+    private void enqueue(int node, String id, String message, long version) {
+        Pending p = new Pending(message, version);
+        pending.put(node + "|" + id, p);
+        p.attempts++;
+        sender.send(message, nodes[node]);
+    }
+
+    /** Bản ghi từ peer: chỉ giữ nếu node này là bản sao của id. */
+    private void receive(Record r) {
+        observe(r.version);
+        if (r.alarm == null && isExpired(r.version, wallMicros())) return;
+        if (isReplica(preference(r.id), self)) apply(r);
+    }
+
+    /** Áp dụng nếu mới hơn bản đang có; cập nhật bộ lưu cục bộ và digest. */
+    private boolean apply(Record r) {
+        Record old = records.get(r.id);
+        if (old != null && old.version >= r.version) return false;
+        records.put(r.id, r);
+        updateDigests(old, r);
+        if (r.alarm != null) {
+            store.put(r.alarm);
+        } else {
+            deferredSince.remove(r.id);
+            if (old != null && old.alarm != null) store.remove(r.id);
+        }
+        return true;
+    }
+
+    private void clear(long version) {
+        List<String> live = new ArrayList<>();
+        for (Record r : records.values()) {
+            if (r.alarm != null && r.version < version) live.add(r.id);
+        }
+        for (String id : live) {
+            apply(new Record(id, version, null));
+        }
+    }
+
+    private void updateDigests(Record old, Record now) {
+        long delta = (old == null ? 0 : old.hash) ^ (now == null ? 0 : now.hash);
+        String id = now != null ? now.id : old.id;
+        int bucket = bucket(id);
+        for (int n : preference(id)) {
+            if (n != self) digests[n][bucket] ^= delta;
+        }
+    }
+
+    private long combinedDigest(int peer) {
+        long d = 0;
+        for (long b : digests[peer]) d ^= b;
+        return d;
+    }
+
+    private String bucketDigests(int peer) {
+        StringBuilder sb = new StringBuilder(BUCKETS * 17);
+        for (int b = 0; b < BUCKETS; b++) {
+            if (b > 0) sb.append(',');
+            sb.append(Long.toHexString(digests[peer][b]));
+        }
+        return sb.toString();
+    }
+
+    /** So digest từng nhóm: gửi phần của mình cho các nhóm lệch và xin phần của peer. */
+    private String pullMismatched(int peer, String[] theirs) {
+        StringBuilder pull = new StringBuilder();
+        for (int b = 0; b < BUCKETS && b < theirs.length; b++) {
+            if (Long.parseUnsignedLong(theirs[b], 16) == digests[peer][b]) continue;
+            sendBucket(peer, b);
+            if (pull.length() > 0) pull.append(',');
+            pull.append(b);
+        }
+        if (pull.length() == 0) return null;
+        log.accept("Đồng bộ báo thức với " + nodes[peer] + ": lệch nhóm " + pull);
+        return PULL + pull;
+    }
+
+    private void sendBucket(int peer, int bucket) {
+        for (Record r : records.values()) {
+            if (bucket(r.id) == bucket && isReplica(preference(r.id), peer)) {
+                sender.send(encode(r), nodes[peer]);
+            }
+        }
+    }
+
+    private void collectTombstones() {
+        long now = wallMicros();
+        for (Iterator<Record> it = records.values().iterator(); it.hasNext(); ) {
+            Record r = it.next();
+            if (r.alarm == null && isExpired(r.version, now)) {
+                it.remove();
+                updateDigests(r, null);
+            }
+        }
+    }
+
+    private static boolean isExpired(long version, long nowMicros) {
+        return nowMicros - (version >>> NODE_BITS) > TOMBSTONE_TTL_MS * 1000;
+    }
+
+    private static String encode(Record r) {
+        if (r.alarm == null) return DEL + r.version + ":" + r.id;
+        AlarmData a = r.alarm;
+        return SET + r.version + ":" + a.alarmTime.getHour() + ":" + a.alarmTime.getMinute() + ":"
+                + a.clientPort + ":" + a.id + ":" + a.clientAddress;
+    }
+
+    /** Danh sách bản sao của id: node chính trước, rồi các node dự phòng. */
+    int[] preference(String id) {
+        int i = Arrays.binarySearch(ringPoints, mix(id.hashCode()));
+        if (i < 0) i = -i - 1;
+        int[] result = new int[replicas];
+        int count = 0;
+        for (int k = 0; count < replicas && k < ringPoints.length; k++) {
+            int owner = ringOwners[(i + k) % ringPoints.length];
+            boolean taken = false;
+            for (int j = 0; j < count; j++) {
+                taken |= result[j] == owner;
+            }
+            if (!taken) result[count++] = owner;
+        }
+        return result;
+    }
+
+    private static boolean isReplica(int[] pref, int node) {
+        for (int n : pref) {
+            if (n == node) return true;
+        }
+        return false;
+    }
+
+    private boolean isAlive(int node, long now) {
+        return node == self || now - lastHeard[node] < TimeUnit.MILLISECONDS.toNanos(DEAD_AFTER_MS);
+    }
+
+    private int indexOf(InetSocketAddress from) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (i != self && nodes[i].equals(from)) return i;
+        }
+        return -1;
+    }
+
+    private long nextVersion() {
+        clock = Math.max(clock + 1, wallMicros());
+        return clock << NODE_BITS | self;
+    }
+
+    private void observe(long version) {
+        clock = Math.max(clock, version >>> NODE_BITS);
+    }
+
+    private static long wallMicros() {
+        return System.currentTimeMillis() * 1000;
+    }
+
+    private static int bucket(String id) {
+        return (int) (mix(id.hashCode()) >>> 58); // 6 bit cao: BUCKETS = 64
+    }
+
+    /** Trộn bit (SplitMix64): String.hashCode giống nhau trên mọi JVM nên vòng băm không phụ thuộc node. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
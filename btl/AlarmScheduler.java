@@ -0,0 +1,231 @@
+// File: AlarmScheduler.java
+package btl;
+
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bộ lập lịch báo thức theo hạn kích hoạt (deadline) thay cho việc quét toàn bộ danh sách.
+ * - Chỉ mục sắp theo thời điểm kích hoạt (min-heap): luồng kích hoạt ngủ tới đúng hạn gần nhất
+ * - Hủy là O(1): chỉ đánh dấu, phần tử bị bỏ qua khi tới hạn; dựng lại heap khi phần bị hủy chiếm quá nửa
+ * - Hạn tính theo epoch millis của đồng hồ truyền vào (mặc định giờ hệ thống, client dùng giờ đã đồng bộ);
+ *   luồng thức dậy tối đa mỗi MAX_WAIT_MS để bắt kịp khi đồng hồ bị chỉnh
+ */
+final class AlarmScheduler<T> {
+
+    private static final long MAX_WAIT_MS = 1000;
+
+    /** Được gọi trên luồng kích hoạt khi một báo thức tới hạn. */
+    interface FireHandler<T> {
+        void onFire(String id, T payload, long deadlineMillis);
+    }
+
+    private static final class Entry<T> implements Comparable<Entry<T>> {
+        final String id;
+        final long deadlineMillis;
+        final T payload;
+        boolean cancelled; // chỉ đọc/ghi khi giữ lock
+
+        Entry(String id, long deadlineMillis, T payload) {
+            this.id = id;
+            this.deadlineMillis = deadlineMillis;
+            this.payload = payload;
+        }
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            return Long.compare(deadlineMillis, other.deadlineMillis);
+        }
+    }
+
+    private final String threadName;
+    private final LongSupplier clockMillis;
+    private final FireHandler<T> onFire;
+    private volatile ConcurrentHashMap<String, Entry<T>> entries = new ConcurrentHashMap<>(); // chỉ thay khi giữ lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private PriorityQueue<Entry<T>> queue = new PriorityQueue<>();
+    private int cancelledInQueue = 0;
+    private volatile Thread thread;
+
+    AlarmScheduler(String threadName, FireHandler<T> onFire) {
+        this(threadName, System::currentTimeMillis, onFire);
+    }
+
+    AlarmScheduler(String threadName, LongSupplier clockMillis, FireHandler<T> onFire) {
+        this.threadName = threadName;
+        this.clockMillis = clockMillis;
+        this.onFire = onFire;
+    }
+
+    /**
+     * Thời điểm (epoch millis) kích hoạt tiếp theo của báo thức HH:mm theo múi giờ của now.
+     * Báo thức đặt trong đúng phút hiện tại kêu ngay; giờ đã qua thì kêu vào ngày hôm sau.
+     */
+    static long nextFireMillis(LocalTime alarmTime, ZonedDateTime now) {
+        ZonedDateTime fire = now.with(alarmTime).truncatedTo(ChronoUnit.MINUTES);
+        if (!now.isBefore(fire.plusMinutes(1))) {
+            fire = now.toLocalDate().plusDays(1).atTime(alarmTime).atZone(now.getZone());
+        }
+        return fire.toInstant().toEpochMilli();
+    }
+
+    synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this::fireLoop, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * Đặt (hoặc thay thế) báo thức có id cho thời điểm deadlineMillis.
+     * @return payload cũ nếu id đã tồn tại, ngược lại null
+     */
+    T schedule(String id, long deadlineMillis, T payload) {
+        Entry<T> entry = new Entry<>(id, deadlineMillis, payload);
+        lock.lock();
+        try {
+            Entry<T> old = entries.put(id, entry);
+            queue.add(entry);
+            if (queue.peek() == entry) {
+                changed.signal();
+            }
+            if (old != null) {
+                markCancelled(old);
+                return old.payload;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Đặt nhiều báo thức cùng lúc (khi khôi phục): dựng heap một lần O(n) thay vì n lần chèn.
+     */
+    void scheduleAll(Map<String, T> alarms, ToLongFunction<T> deadlineMillis) {
+        lock.lock();
+        try {
+            if (entries.isEmpty()) {
+                // Cấp sẵn dung lượng: tránh hàng chục lần mở rộng bảng khi nạp hàng triệu báo thức
+                entries = new ConcurrentHashMap<>(Math.max(16, (int) (alarms.size() / 0.75f) + 1));
+            }
+            List<Entry<T>> all = new ArrayList<>(queue.size() + alarms.size());
+            all.addAll(queue);
+            for (Map.Entry<String, T> a : alarms.entrySet()) {
+                Entry<T> entry = new Entry<>(a.getKey(), deadlineMillis.applyAsLong(a.getValue()), a.getValue());
+                Entry<T> old = entries.put(entry.id, entry);
+                if (old != null) {
+                    old.cancelled = true;
+                    cancelledInQueue++;
+                }
+                all.add(entry);
+            }
+            queue = new PriorityQueue<>(all);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return payload của báo thức đã hủy, hoặc null nếu không tìm thấy */
+    T cancel(String id) {
+        lock.lock();
+        try {
+            Entry<T> old = entries.remove(id);
+            if (old == null) return null;
+            markCancelled(old);
+            return old.payload;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void cancelAll() {
+        lock.lock();
+        try {
+            entries.clear();
+            queue = new PriorityQueue<>();
+            cancelledInQueue = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /** Duyệt các báo thức đang chờ: (id, payload). Không theo thứ tự thời gian. */
+    void forEach(BiConsumer<String, T> action) {
+        for (Map.Entry<String, Entry<T>> e : entries.entrySet()) {
+            action.accept(e.getKey(), e.getValue().payload);
+        }
+    }
+
+    private void markCancelled(Entry<T> entry) {
+        entry.cancelled = true;
+        cancelledInQueue++;
+        // Dựng lại heap khi phần tử đã hủy chiếm quá nửa (O(n), chia đều cho n lần hủy)
+        if (cancelledInQueue > 64 && cancelledInQueue > queue.size() / 2) {
+            List<Entry<T>> live = new ArrayList<>(queue.size() - cancelledInQueue);
+            for (Entry<T> e : queue) {
+                if (!e.cancelled) live.add(e);
+            }
+            queue = new PriorityQueue<>(live);
+            cancelledInQueue = 0;
+        }
+    }
+
+    private void fireLoop() {
+        Thread self = Thread.currentThread();
+        lock.lock();
+        try {
+            while (thread == self) {
+                Entry<T> head = queue.peek();
+                if (head != null && head.cancelled) {
+                    queue.poll();
+                    cancelledInQueue--;
+                    continue;
+                }
+                long delay = head == null ? MAX_WAIT_MS : head.deadlineMillis - clockMillis.getAsLong();
+                if (delay > 0) {
+                    changed.await(Math.min(delay, MAX_WAIT_MS), TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                queue.poll();
+                if (!entries.remove(head.id, head)) continue;
+                lock.unlock();
+                try {
+                    onFire.onFire(head.id, head.payload, head.deadlineMillis);
+                } catch (RuntimeException ex) {
+                    // Một báo thức lỗi không được làm dừng luồng kích hoạt
+                } finally {
+                    lock.lock();
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop()
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -2,108 +2,253 @@ package btl;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.time.ZonedDateTime;
 
+/**
+ * Đồng hồ kim.
+ * - Mặt số (viền, vạch, chữ số) được vẽ sẵn vào ảnh tương thích theo độ phân giải thiết bị,
+ *   chỉ vẽ lại khi đổi kích thước hoặc DPI; mỗi lần vẽ chỉ còn chép ảnh và vẽ ba kim
+ * - Nét và màu của kim dùng chung (hằng số), không tạo mới mỗi lần vẽ
+ * - Chỉ repaint vùng chữ nhật bao quanh các kim vừa đổi vị trí
+ * - Chế độ kim trôi (setSmoothSweep): vẽ lại theo tần số quét màn hình, thời gian nội suy từ lần setTime()
+ *   gần nhất theo System.nanoTime()
+ */
 public class AnalogClockPanel extends JPanel {
 
+    private static final Stroke RIM_STROKE = new BasicStroke(2);
+    private static final Stroke HOUR_TICK_STROKE = new BasicStroke(4);
+    private static final Font NUMERAL_FONT = new Font("Arial", Font.BOLD, 14);
+
+    private static final Stroke HOUR_STROKE = new BasicStroke(6, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final Stroke MINUTE_STROKE = new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final Stroke SECOND_STROKE = new BasicStroke(2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final Color HOUR_COLOR = new Color(25, 25, 112);
+    private static final Color MINUTE_COLOR = new Color(65, 105, 225);
+    private static final Color SECOND_COLOR = new Color(220, 20, 60);
+    private static final int[] HAND_WIDTHS = {6, 4, 2};
+    private static final int[] HAND_INSETS = {70, 40, 30}; // chiều dài kim = bán kính - inset
+
+    private static final int DEFAULT_REFRESH_HZ = 60;
+
     private ZonedDateTime time;
+    private long timeSetNanos; // System.nanoTime() lúc setTime, để nội suy ở chế độ kim trôi
+
+    // Mặt số đã vẽ sẵn và khóa hợp lệ của nó
+    private BufferedImage dial;
+    private int dialWidth;
+    private int dialHeight;
+    private double dialScaleX;
+    private double dialScaleY;
+
+    private final Rectangle[] paintedHands = new Rectangle[3]; // vùng các kim ở lần vẽ trước
+    private boolean smoothSweep;
+    private Timer sweepTimer;
 
     public AnalogClockPanel() {
         this.time = ZonedDateTime.now();
+        this.timeSetNanos = System.nanoTime();
         setPreferredSize(new Dimension(200, 200));
     }
 
     public void setTime(ZonedDateTime time) {
         this.time = time;
-        repaint();
+        this.timeSetNanos = System.nanoTime();
+        if (!smoothSweep) {
+            repaintHands();
+        }
+    }
+
+    /** Bật/tắt kim trôi liên tục (mặc định: kim nhảy mỗi giây theo setTime). Gọi trên EDT. */
+    public void setSmoothSweep(boolean smooth) {
+        if (smooth == smoothSweep) return;
+        smoothSweep = smooth;
+        if (smooth) {
+            sweepTimer = new Timer(1000 / refreshRate(), e -> repaintHands());
+            sweepTimer.start();
+        } else {
+            sweepTimer.stop();
+            sweepTimer = null;
+            repaintHands();
+        }
+    }
+
+    public boolean isSmoothSweep() {
+        return smoothSweep;
     }
 
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.translate(getWidth() / 2, getHeight() / 2);
+    public void removeNotify() {
+        super.removeNotify();
+        if (sweepTimer != null) sweepTimer.stop(); // panel bị gỡ khỏi cửa sổ: không chạy timer vô ích
+    }
 
-        int r = Math.min(getWidth(), getHeight()) / 2 - 10;
-        int cx = 0;
-        int cy = 0;
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (sweepTimer != null) sweepTimer.start();
+    }
 
-        // Vòng tròn
-        g2.setColor(Color.BLACK);
-        g2.setStroke(new BasicStroke(2));
-        g2.drawOval(-r, -r, 2 * r, 2 * r);
-
-        // Đánh dấu phút
-        g2.setColor(Color.GRAY);
-        for (int i = 0; i < 60; i++) {
-            double angle = Math.toRadians(i * 6);
-            int x1 = (int) (cx + (r - 5) * Math.sin(angle));
-            int y1 = (int) (cy - (r - 5) * Math.cos(angle));
-            int x2 = (int) (cx + r * Math.sin(angle));
-            int y2 = (int) (cy - r * Math.cos(angle));
-            g2.drawLine(x1, y1, x2, y2);
+    /** Tần số quét của màn hình chứa panel (60 Hz nếu không xác định được). */
+    private int refreshRate() {
+        if (GraphicsEnvironment.isHeadless()) return DEFAULT_REFRESH_HZ;
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        GraphicsDevice device = gc != null ? gc.getDevice()
+                : GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+        int hz = device.getDisplayMode().getRefreshRate();
+        return hz == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_HZ : Math.min(hz, 240);
+    }
+
+    /** Thời gian đang hiển thị: nội suy từ lần setTime() gần nhất khi kim trôi. */
+    private ZonedDateTime displayedTime() {
+        return smoothSweep ? time.plusNanos(System.nanoTime() - timeSetNanos) : time;
+    }
+
+    /** Góc (radian) của kim giờ, phút, giây. */
+    private double[] handAngles(ZonedDateTime t) {
+        double second = t.getSecond();
+        double minute = t.getMinute();
+        if (smoothSweep) {
+            second += t.getNano() / 1e9;
+            minute += second / 60.0;
         }
+        return new double[] {
+                Math.toRadians((t.getHour() % 12 + minute / 60.0) * 30),
+                Math.toRadians(minute * 6),
+                Math.toRadians(second * 6)
+        };
+    }
 
-        // Đánh dấu giờ
-        g2.setColor(Color.BLACK);
-        g2.setStroke(new BasicStroke(4));
-        for (int i = 0; i < 12; i++) {
-            double angle = Math.toRadians(i * 30);
-            int x1 = (int) (cx + (r - 15) * Math.sin(angle));
-            int y1 = (int) (cy - (r - 15) * Math.cos(angle));
-            int x2 = (int) (cx + r * Math.sin(angle));
-            int y2 = (int) (cy - r * Math.cos(angle));
-            g2.drawLine(x1, y1, x2, y2);
+    private int radius() {
+        return Math.min(getWidth(), getHeight()) / 2 - 10;
+    }
+
+    /** Vùng bao một kim (tính cả nét và khử răng cưa) theo tọa độ panel. */
+    private Rectangle handBounds(int hand, double angle, int r) {
+        int cx = getWidth() / 2;
+        int cy = getHeight() / 2;
+        int length = r - HAND_INSETS[hand];
+        int x = (int) (cx + length * Math.sin(angle));
+        int y = (int) (cy - length * Math.cos(angle));
+        Rectangle bounds = new Rectangle(Math.min(cx, x), Math.min(cy, y), Math.abs(x - cx), Math.abs(y - cy));
+        int pad = HAND_WIDTHS[hand] / 2 + 2;
+        bounds.grow(pad, pad);
+        return bounds;
+    }
+
+    /** Repaint phần hợp của vị trí cũ và mới của các kim đã dời chỗ. */
+    private void repaintHands() {
+        double[] angles = handAngles(displayedTime());
+        int r = radius();
+        Rectangle dirty = null;
+        for (int hand = 0; hand < 3; hand++) {
+            Rectangle now = handBounds(hand, angles[hand], r);
+            Rectangle before = paintedHands[hand];
+            if (now.equals(before)) continue;
+            Rectangle union = before == null ? now : before.union(now);
+            dirty = dirty == null ? union : dirty.union(union);
         }
-        
-        // Vẽ số giờ
-        g2.setFont(new Font("Arial", Font.BOLD, 14));
-        for (int i = 1; i <= 12; i++) {
-            String hourText = String.valueOf(i);
-            FontMetrics fm = g2.getFontMetrics();
-            int stringWidth = fm.stringWidth(hourText);
-            int stringHeight = fm.getAscent();
+        if (dirty != null) repaint(dirty);
+    }
 
-            double angle = Math.toRadians(i * 30);
-            int numberX = (int) (cx + (r - 40) * Math.sin(angle)) - stringWidth / 2;
-            int numberY = (int) (cy - (r - 40) * Math.cos(angle)) + stringHeight / 2;
-            g2.drawString(hourText, numberX, numberY);
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+        AffineTransform tx = g2.getTransform();
+        int w = getWidth();
+        int h = getHeight();
+        if (dial == null || w != dialWidth || h != dialHeight
+                || tx.getScaleX() != dialScaleX || tx.getScaleY() != dialScaleY) {
+            dial = renderDial(w, h, tx.getScaleX(), tx.getScaleY());
+            dialWidth = w;
+            dialHeight = h;
+            dialScaleX = tx.getScaleX();
+            dialScaleY = tx.getScaleY();
         }
+        // Ảnh đã ở độ phân giải thiết bị: vẽ vào w x h logic là chép 1:1 điểm ảnh
+        g2.drawImage(dial, 0, 0, w, h, null);
 
-        int hour = time.getHour();
-        int minute = time.getMinute();
-        int second = time.getSecond();
-
-        double angleHour = Math.toRadians((hour % 12 + minute / 60.0) * 30);
-        double angleMinute = Math.toRadians(minute * 6);
-        double angleSecond = Math.toRadians(second * 6);
-
-        // Kim giờ
-        g2.setStroke(new BasicStroke(6, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g2.setColor(new Color(25, 25, 112));
-        g2.drawLine(cx, cy,
-                (int) (cx + (r - 70) * Math.sin(angleHour)),
-                (int) (cy - (r - 70) * Math.cos(angleHour)));
-
-        // Kim phút
-        g2.setStroke(new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g2.setColor(new Color(65, 105, 225));
-        g2.drawLine(cx, cy,
-                (int) (cx + (r - 40) * Math.sin(angleMinute)),
-                (int) (cy - (r - 40) * Math.cos(angleMinute)));
-
-        // Kim giây
-        g2.setStroke(new BasicStroke(2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g2.setColor(new Color(220, 20, 60));
-        g2.drawLine(cx, cy,
-                (int) (cx + (r - 30) * Math.sin(angleSecond)),
-                (int) (cy - (r - 30) * Math.cos(angleSecond)));
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        int r = radius();
+        double[] angles = handAngles(displayedTime());
+        drawHand(g2, angles[0], r - HAND_INSETS[0], HOUR_STROKE, HOUR_COLOR);
+        drawHand(g2, angles[1], r - HAND_INSETS[1], MINUTE_STROKE, MINUTE_COLOR);
+        drawHand(g2, angles[2], r - HAND_INSETS[2], SECOND_STROKE, SECOND_COLOR);
+        for (int hand = 0; hand < 3; hand++) {
+            paintedHands[hand] = handBounds(hand, angles[hand], r);
+        }
 
         // Tâm đồng hồ
+        int cx = w / 2;
+        int cy = h / 2;
+        g2.setStroke(SECOND_STROKE);
         g2.setColor(Color.WHITE);
-        g2.fillOval(-5, -5, 10, 10);
+        g2.fillOval(cx - 5, cy - 5, 10, 10);
         g2.setColor(Color.BLACK);
-        g2.drawOval(-5, -5, 10, 10);
+        g2.drawOval(cx - 5, cy - 5, 10, 10);
+    }
+
+    private void drawHand(Graphics2D g2, double angle, int length, Stroke stroke, Color color) {
+        int cx = getWidth() / 2;
+        int cy = getHeight() / 2;
+        g2.setStroke(stroke);
+        g2.setColor(color);
+        g2.drawLine(cx, cy, (int) (cx + length * Math.sin(angle)), (int) (cy - length * Math.cos(angle)));
+    }
+
+    /** Vẽ mặt số (nền trong suốt) vào ảnh tương thích kích thước w x h nhân hệ số DPI. */
+    private BufferedImage renderDial(int w, int h, double scaleX, double scaleY) {
+        int pw = Math.max(1, (int) Math.ceil(w * scaleX));
+        int ph = Math.max(1, (int) Math.ceil(h * scaleY));
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        BufferedImage image = gc != null ? gc.createCompatibleImage(pw, ph, Transparency.TRANSLUCENT)
+                : new BufferedImage(pw, ph, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.scale(scaleX, scaleY);
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.translate(w / 2, h / 2);
+            int r = Math.min(w, h) / 2 - 10;
+
+            // Vòng tròn
+            g2.setColor(Color.BLACK);
+            g2.setStroke(RIM_STROKE);
+            g2.drawOval(-r, -r, 2 * r, 2 * r);
+
+            // Đánh dấu phút (cùng nét với vòng tròn)
+            g2.setColor(Color.GRAY);
+            for (int i = 0; i < 60; i++) {
+                double angle = Math.toRadians(i * 6);
+                g2.drawLine((int) ((r - 5) * Math.sin(angle)), (int) (-(r - 5) * Math.cos(angle)),
+                        (int) (r * Math.sin(angle)), (int) (-r * Math.cos(angle)));
+            }
+
+            // Đánh dấu giờ
+            g2.setColor(Color.BLACK);
+            g2.setStroke(HOUR_TICK_STROKE);
+            for (int i = 0; i < 12; i++) {
+                double angle = Math.toRadians(i * 30);
+                g2.drawLine((int) ((r - 15) * Math.sin(angle)), (int) (-(r - 15) * Math.cos(angle)),
+                        (int) (r * Math.sin(angle)), (int) (-r * Math.cos(angle)));
+            }
+
+            // Vẽ số giờ
+            g2.setFont(NUMERAL_FONT);
+            FontMetrics fm = g2.getFontMetrics();
+            int stringHeight = fm.getAscent();
+            for (int i = 1; i <= 12; i++) {
+                String hourText = String.valueOf(i);
+                double angle = Math.toRadians(i * 30);
+                int numberX = (int) ((r - 40) * Math.sin(angle)) - fm.stringWidth(hourText) / 2;
+                int numberY = (int) (-(r - 40) * Math.cos(angle)) + stringHeight / 2;
+                g2.drawString(hourText, numberX, numberY);
+            }
+        } finally {
+            g2.dispose();
+        }
+        return image;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,376 @@
+// File: AsyncFileLogger.java
+package btl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ghi nhật ký ra file bất đồng bộ.
+ * - Luồng gọi chỉ đặt sự kiện vào ring buffer không khóa (nhiều producer, một consumer) và trả về ngay;
+ *   buffer đầy thì sự kiện bị bỏ và được đếm, không bao giờ chặn luồng gọi
+ * - Một luồng ghi duy nhất rút theo lô và ghi vào các FileChannel mở lâu dài (mỗi file một kênh)
+ * - Chính sách flush (độ trễ tối đa trước khi ghi xuống OS) và fsync cấu hình được
+ * - Xoay vòng file theo dung lượng và/hoặc thời gian: name -> name.1 -> name.2 ...
+ */
+final class AsyncFileLogger {
+
+    /** Khi nào gọi fsync (FileChannel.force) sau khi ghi. */
+    enum FsyncPolicy {
+        /** Để hệ điều hành tự ghi xuống đĩa (giống FileWriter cũ). */
+        NEVER,
+        /** Chỉ fsync trước khi xoay vòng và khi đóng. */
+        ON_ROTATE,
+        /** fsync sau mỗi lần ghi lô. */
+        EVERY_FLUSH
+    }
+
+    private static final Utils.SecondFormat STAMP = new Utils.SecondFormat("[yyyy-MM-dd HH:mm:ss] ");
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final int SINK_BUFFER = 64 * 1024;
+
+    private static final class Event {
+        final String file;
+        final long timeMillis;
+        final String message;
+
+        Event(String file, long timeMillis, String message) {
+            this.file = file;
+            this.timeMillis = timeMillis;
+            this.message = message;
+        }
+    }
+
+    /** Một file đang mở của luồng ghi. */
+    private static final class Sink {
+        final Path path;
+        final ByteBuffer buffer = ByteBuffer.allocate(SINK_BUFFER);
+        FileChannel channel;
+        long size;
+        long openedAt;
+        long dirtySince; // thời điểm byte đầu tiên chưa ghi vào buffer, 0 nếu buffer rỗng
+
+        Sink(Path path) {
+            this.path = path;
+        }
+    }
+
+    // Ring buffer kiểu Vyukov: sequences[i] cho biết ô i đang chờ producer (== vị trí) hay consumer (== vị trí + 1)
+    private final int mask;
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // chỉ luồng ghi dùng
+    private final AtomicLong dropped = new AtomicLong();
+    private long droppedReported;
+
+    private volatile long flushIntervalMillis = 0;
+    private volatile FsyncPolicy fsyncPolicy = FsyncPolicy.NEVER;
+    private volatile long maxFileBytes = 10L * 1024 * 1024;
+    private volatile long rotateIntervalMillis = 0;
+    private volatile int maxBackups = 3;
+
+    private final Map<String, Sink> sinks = new HashMap<>();
+    private final Thread writer;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    /** @param capacity số sự kiện tối đa đang chờ ghi (làm tròn lên lũy thừa của 2) */
+    AsyncFileLogger(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        slots = new Event[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        writer = new Thread(this::writeLoop, "File-Logger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Độ trễ tối đa (ms) một dòng nằm trong bộ đệm trước khi được ghi xuống OS; 0 = ghi sau mỗi lô. */
+    void setFlushInterval(long millis) {
+        this.flushIntervalMillis = Math.max(0, millis);
+    }
+
+    void setFsyncPolicy(FsyncPolicy policy) {
+        this.fsyncPolicy = policy;
+    }
+
+    /**
+     * Xoay vòng file khi vượt maxBytes hoặc đã mở quá intervalMillis (0 = tắt điều kiện đó),
+     * giữ lại tối đa backups file cũ.
+     */
+    void setRotation(long maxBytes, long intervalMillis, int backups) {
+        this.maxFileBytes = maxBytes;
+        this.rotateIntervalMillis = intervalMillis;
+        this.maxBackups = Math.max(0, backups);
+    }
+
+    /** Số dòng đã bị bỏ vì hàng đợi đầy. */
+    long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Đưa một dòng vào hàng đợi ghi. Không chặn.
+     * @return false nếu hàng đợi đầy hoặc logger đã đóng (dòng bị bỏ và được đếm)
+     */
+    boolean append(String file, String message) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        Event event = new Event(file, System.currentTimeMillis(), message);
+        long pos = tail.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[index] = event;
+                    sequences.set(index, pos + 1); // volatile: cặp với cờ sleeping bên dưới, không lỡ đánh thức
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /** Ghi nốt mọi dòng đang chờ, fsync (trừ khi chính sách là NEVER) và đóng các file. */
+    void close() {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ============================
+    // Luồng ghi
+    // ============================
+    private Event poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) return null;
+        Event event = slots[index];
+        slots[index] = null;
+        sequences.lazySet(index, head + mask + 1);
+        head++;
+        return event;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            boolean stopping = closed;
+            boolean any = false;
+            Event event;
+            while ((event = poll()) != null) {
+                any = true;
+                write(event);
+            }
+            reportDropped();
+            long now = System.currentTimeMillis();
+            flushDue(now, stopping);
+            if (stopping) {
+                closeSinks();
+                return;
+            }
+            if (!any) {
+                sleeping = true;
+                if (isEmpty() && !closed) {
+                    LockSupport.parkNanos(nextWakeNanos(now));
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /** Ngủ tới hạn flush gần nhất (hoặc tối đa 1 giây để kiểm tra xoay vòng theo thời gian). */
+    private long nextWakeNanos(long now) {
+        long wait = 1000;
+        long interval = flushIntervalMillis;
+        for (Sink sink : sinks.values()) {
+            if (sink.dirtySince != 0) {
+                wait = Math.min(wait, Math.max(1, sink.dirtySince + interval - now));
+            }
+        }
+        return wait * 1_000_000L;
+    }
+
+    private void reportDropped() {
+        long total = dropped.get();
+        if (total != droppedReported && !sinks.isEmpty()) {
+            String notice = "Bỏ qua " + (total - droppedReported) + " dòng nhật ký do hàng đợi đầy";
+            for (Sink sink : sinks.values()) {
+                encode(sink, System.currentTimeMillis(), notice);
+            }
+            droppedReported = total;
+        }
+    }
+
+    private void write(Event event) {
+        Sink sink = sinks.get(event.file);
+        if (sink == null) {
+            sink = new Sink(Paths.get(event.file));
+            sinks.put(event.file, sink);
+        }
+        encode(sink, event.timeMillis, event.message);
+    }
+
+    private void encode(Sink sink, long timeMillis, String message) {
+        // "[yyyy-MM-dd HH:mm:ss] " dùng chung mảng byte của giây hiện tại, ghép thẳng vào bộ đệm
+        byte[] stamp = STAMP.bytes(timeMillis);
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int length = stamp.length + text.length + NEWLINE.length;
+        if (sink.buffer.remaining() < length) {
+            flush(sink);
+        }
+        if (sink.dirtySince == 0) {
+            sink.dirtySince = System.currentTimeMillis();
+        }
+        if (length > sink.buffer.capacity()) {
+            ByteBuffer line = ByteBuffer.allocate(length);
+            line.put(stamp).put(text).put(NEWLINE).flip();
+            writeOut(sink, line);
+        } else {
+            sink.buffer.put(stamp).put(text).put(NEWLINE);
+        }
+    }
+
+    private void flushDue(long now, boolean force) {
+        long interval = flushIntervalMillis;
+        for (Sink sink : sinks.values()) {
+            if (sink.dirtySince != 0 && (force || now - sink.dirtySince >= interval)) {
+                flush(sink);
+            }
+        }
+    }
+
+    private void flush(Sink sink) {
+        if (sink.buffer.position() == 0) {
+            sink.dirtySince = 0;
+            return;
+        }
+        sink.buffer.flip();
+        writeOut(sink, sink.buffer);
+        sink.buffer.clear();
+        sink.dirtySince = 0;
+        if (fsyncPolicy == FsyncPolicy.EVERY_FLUSH && sink.channel != null) {
+            try {
+                sink.channel.force(false);
+            } catch (IOException e) {
+                System.err.println("Lỗi fsync " + sink.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void writeOut(Sink sink, ByteBuffer data) {
+        try {
+            rotateIfNeeded(sink, data.remaining());
+            if (sink.channel == null) {
+                open(sink);
+            }
+            while (data.hasRemaining()) {
+                sink.size += sink.channel.write(data);
+            }
+        } catch (IOException e) {
+            // Không ném ra ngoài: mất dòng nhật ký không được làm hỏng luồng ghi
+            System.err.println("Lỗi ghi nhật ký " + sink.path + ": " + e.getMessage());
+            data.position(data.limit());
+            closeQuietly(sink);
+        }
+    }
+
+    private void open(Sink sink) throws IOException {
+        Path parent = sink.path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        sink.channel = FileChannel.open(sink.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        sink.size = sink.channel.size();
+        sink.openedAt = System.currentTimeMillis();
+    }
+
+    private void rotateIfNeeded(Sink sink, int incoming) throws IOException {
+        if (sink.channel == null) {
+            open(sink);
+        }
+        long maxBytes = maxFileBytes;
+        long maxAge = rotateIntervalMillis;
+        boolean bySize = maxBytes > 0 && sink.size > 0 && sink.size + incoming > maxBytes;
+        boolean byTime = maxAge > 0 && System.currentTimeMillis() - sink.openedAt >= maxAge && sink.size > 0;
+        if (!bySize && !byTime) return;
+
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            sink.channel.force(false);
+        }
+        sink.channel.close();
+        sink.channel = null;
+        int keep = maxBackups;
+        String name = sink.path.getFileName().toString();
+        if (keep == 0) {
+            Files.deleteIfExists(sink.path);
+        } else {
+            Files.deleteIfExists(sink.path.resolveSibling(name + "." + keep));
+            for (int i = keep - 1; i >= 1; i--) {
+                Path from = sink.path.resolveSibling(name + "." + i);
+                if (Files.exists(from)) {
+                    Files.move(from, sink.path.resolveSibling(name + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(sink.path, sink.path.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open(sink);
+    }
+
+    private void closeSinks() {
+        for (Sink sink : sinks.values()) {
+            flush(sink);
+            if (sink.channel != null && fsyncPolicy != FsyncPolicy.NEVER) {
+                try {
+                    sink.channel.force(false);
+                } catch (IOException ignored) {
+                }
+            }
+            closeQuietly(sink);
+        }
+    }
+
+    private static void closeQuietly(Sink sink) {
+        if (sink.channel == null) return;
+        try {
+            sink.channel.close();
+        } catch (IOException ignored) {
+        }
+        sink.channel = null;
+    }
+}
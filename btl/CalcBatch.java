@@ -0,0 +1,281 @@
+// File: CalcBatch.java
+package btl;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * Gói tính toán theo lô: nhiều phép tính (a, phép toán, b) trong một datagram, kết quả trả về dạng nhị phân.
+ *
+ * Yêu cầu (big-endian), toán hạng xếp theo cột để đọc/tính trên mảng nguyên thủy:
+ * <pre>
+ *  0..1   magic 0xB7 0xCA
+ *  2      version
+ *  3      mode: 1 = yêu cầu, 2 = mảnh phản hồi
+ *  4..7   request id
+ *  8..9   n - số phép tính
+ *  10..11 dự phòng
+ *  12..   a[n] (double), b[n] (double), op[n] (byte '+', '-', '*', '/')
+ * </pre>
+ * Phản hồi chia thành các mảnh, mỗi mảnh vừa một datagram MAX_DATAGRAM byte:
+ * <pre>
+ *  0..7   như yêu cầu (mode = 2)
+ *  8..9   tổng số phép tính
+ *  10..11 chỉ số phép tính đầu tiên trong mảnh
+ *  12..13 k - số kết quả trong mảnh
+ *  14..15 độ dài mảnh (byte, gồm cả phần đầu)
+ *  16..   kết quả[k] (double, NaN nếu lỗi), trạng thái[k] (byte)
+ * </pre>
+ * Mỗi phép tính chiếm 17 byte ở yêu cầu nhưng chỉ 9 byte ở phản hồi: phản hồi không bao giờ lớn hơn yêu cầu.
+ */
+final class CalcBatch {
+    static final byte MAGIC_0 = (byte) 0xB7;
+    static final byte MAGIC_1 = (byte) 0xCA;
+    static final byte VERSION = 1;
+    static final byte MODE_REQUEST = 1;
+    static final byte MODE_RESPONSE = 2;
+
+    static final byte OK = 0;
+    static final byte DIV_ZERO = 1;
+    static final byte BAD_OPERATOR = 2;
+
+    /** Kích thước datagram an toàn (dưới MTU Ethernet sau khi trừ IP/UDP header). */
+    static final int MAX_DATAGRAM = 1400;
+    static final int REQUEST_HEADER = 12;
+    static final int RESPONSE_HEADER = 16;
+    /** Số phép tính tối đa trong một yêu cầu vừa một datagram MAX_DATAGRAM. */
+    static final int MAX_ITEMS_PER_DATAGRAM = (MAX_DATAGRAM - REQUEST_HEADER) / 17;
+    private static final int MAX_RESULTS_PER_FRAGMENT = (MAX_DATAGRAM - RESPONSE_HEADER) / 9;
+
+    private static final int OFF_VERSION = 2;
+    private static final int OFF_MODE = 3;
+    private static final int OFF_ID = 4;
+    private static final int OFF_COUNT = 8;
+    private static final int OFF_FIRST = 10;
+    private static final int OFF_FRAGMENT_COUNT = 12;
+    private static final int OFF_FRAGMENT_LENGTH = 14;
+
+    /** Bộ nhớ tạm của một luồng xử lý (dùng lại, không cấp phát mỗi gói). */
+    static final class Scratch {
+        final double[] a;
+        final double[] b;
+        final byte[] ops;
+        final double[] results;
+        final byte[] status;
+
+        Scratch(int capacity) {
+            a = new double[capacity];
+            b = new double[capacity];
+            ops = new byte[capacity];
+            results = new double[capacity];
+            status = new byte[capacity];
+        }
+    }
+
+    /** Kết quả của một lô (phía client). */
+    static final class Result {
+        final double[] values;
+        final byte[] status;
+        int received; // chỉ luồng nhận của client cập nhật
+        private final BitSet arrived = new BitSet(); // theo chỉ số phép tính đầu của mỗi mảnh đã nhận
+
+        Result(int count) {
+            values = new double[count];
+            status = new byte[count];
+        }
+
+        boolean isComplete() {
+            return received >= values.length;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(() -> new Scratch(256));
+
+    static boolean matches(ByteBuffer buf, int from, int to) {
+        return to - from >= REQUEST_HEADER && buf.get(from) == MAGIC_0 && buf.get(from + 1) == MAGIC_1;
+    }
+
+    static boolean isResponse(ByteBuffer buf, int from) {
+        return buf.get(from + OFF_MODE) == MODE_RESPONSE;
+    }
+
+    static int requestId(ByteBuffer buf, int from) {
+        return buf.getInt(from + OFF_ID);
+    }
+
+    // ============================
+    // Phía client
+    // ============================
+
+    /** Ghi yêu cầu cho các phép tính [offset, offset + n) vào out (từ vị trí hiện tại). */
+    static void writeRequest(ByteBuffer out, int requestId, double[] a, byte[] ops, double[] b, int offset, int n) {
+        out.put(MAGIC_0).put(MAGIC_1).put(VERSION).put(MODE_REQUEST);
+        out.putInt(requestId);
+        out.putShort((short) n);
+        out.putShort((short) 0);
+        for (int i = 0; i < n; i++) out.putDouble(a[offset + i]);
+        for (int i = 0; i < n; i++) out.putDouble(b[offset + i]);
+        out.put(ops, offset, n);
+    }
+
+    /**
+     * Đọc một mảnh phản hồi vào result (tạo mới nếu null). Mảnh trùng (gửi lại, nhân đôi trên mạng) bị bỏ qua.
+     * @return result đã cập nhật, null nếu mảnh không hợp lệ
+     */
+    static Result readFragment(ByteBuffer buf, int from, int to, Result result) {
+        if (to - from < RESPONSE_HEADER || buf.get(from + OFF_VERSION) < 1) return null;
+        int total = buf.getShort(from + OFF_COUNT) & 0xFFFF;
+        int first = buf.getShort(from + OFF_FIRST) & 0xFFFF;
+        int k = buf.getShort(from + OFF_FRAGMENT_COUNT) & 0xFFFF;
+        if (first + k > total || RESPONSE_HEADER + 9 * k > to - from) return null;
+        if (result == null) {
+            result = new Result(total);
+        } else if (result.values.length != total) {
+            return null;
+        }
+        if (result.arrived.get(first)) return result;
+        result.arrived.set(first);
+        int at = from + RESPONSE_HEADER;
+        for (int i = 0; i < k; i++) {
+            result.values[first + i] = buf.getDouble(at + 8 * i);
+        }
+        at += 8 * k;
+        for (int i = 0; i < k; i++) {
+            result.status[first + i] = buf.get(at + i);
+        }
+        result.received += k;
+        return result;
+    }
+
+    // ============================
+    // Phía server
+    // ============================
+
+    /**
+     * Tính lô trong [from, to) của req và ghi các mảnh phản hồi liên tiếp vào out.
+     * @return số phép tính, -1 nếu gói không hợp lệ (không trả lời)
+     */
+    static int handle(ByteBuffer req, int from, int to, ByteBuffer out) {
+        if (req.get(from + OFF_MODE) != MODE_REQUEST || req.get(from + OFF_VERSION) < 1) return -1;
+        int n = req.getShort(from + OFF_COUNT) & 0xFFFF;
+        if (n == 0 || REQUEST_HEADER + 17 * n > to - from) return -1;
+        int fragments = (n + MAX_RESULTS_PER_FRAGMENT - 1) / MAX_RESULTS_PER_FRAGMENT;
+        if (out.remaining() < fragments * RESPONSE_HEADER + 9 * n) return -1;
+
+        Scratch s = SCRATCH.get();
+        if (s.a.length < n) {
+            s = new Scratch(n);
+            SCRATCH.set(s);
+        }
+        int at = from + REQUEST_HEADER;
+        for (int i = 0; i < n; i++) s.a[i] = req.getDouble(at + 8 * i);
+        at += 8 * n;
+        for (int i = 0; i < n; i++) s.b[i] = req.getDouble(at + 8 * i);
+        at += 8 * n;
+        for (int i = 0; i < n; i++) s.ops[i] = req.get(at + i);
+
+        evaluate(s.a, s.ops, s.b, n, s.results, s.status);
+
+        int id = req.getInt(from + OFF_ID);
+        for (int first = 0; first < n; first += MAX_RESULTS_PER_FRAGMENT) {
+            int k = Math.min(MAX_RESULTS_PER_FRAGMENT, n - first);
+            out.put(MAGIC_0).put(MAGIC_1).put(VERSION).put(MODE_RESPONSE);
+            out.putInt(id);
+            out.putShort((short) n);
+            out.putShort((short) first);
+            out.putShort((short) k);
+            out.putShort((short) (RESPONSE_HEADER + 9 * k));
+            for (int i = 0; i < k; i++) out.putDouble(s.results[first + i]);
+            out.put(s.status, first, k);
+        }
+        return n;
+    }
+
+    /** Độ dài (byte) của mảnh phản hồi bắt đầu tại out[at]. */
+    static int fragmentLength(ByteBuffer out, int at) {
+        return out.getShort(at + OFF_FRAGMENT_LENGTH) & 0xFFFF;
+    }
+
+    /**
+     * Tính n phép tính trên mảng nguyên thủy.
+     * Lô chỉ có một loại phép toán (trường hợp phổ biến) chạy vòng lặp không rẽ nhánh để JIT tự vector hóa (SIMD);
+     * lô trộn nhiều phép toán chạy vòng lặp switch theo từng phần tử.
+     * @return số phép tính lỗi
+     */
+    static int evaluate(double[] a, byte[] ops, double[] b, int n, double[] results, byte[] status) {
+        byte op = ops[0];
+        boolean uniform = true;
+        for (int i = 1; i < n; i++) {
+            if (ops[i] != op) {
+                uniform = false;
+                break;
+            }
+        }
+        if (uniform) {
+            return evaluateUniform(op, a, b, n, results, status);
+        }
+        int errors = 0;
+        for (int i = 0; i < n; i++) {
+            double x = a[i], y = b[i];
+            byte st = OK;
+            double r;
+            switch (ops[i]) {
+                case '+': r = x + y; break;
+                case '-': r = x - y; break;
+                case '*': r = x * y; break;
+                case '/':
+                    if (y == 0) {
+                        r = Double.NaN;
+                        st = DIV_ZERO;
+                    } else {
+                        r = x / y;
+                    }
+                    break;
+                default:
+                    r = Double.NaN;
+                    st = BAD_OPERATOR;
+            }
+            results[i] = r;
+            status[i] = st;
+            if (st != OK) errors++;
+        }
+        return errors;
+    }
+
+    private static int evaluateUniform(byte op, double[] a, double[] b, int n, double[] results, byte[] status) {
+        switch (op) {
+            case '+':
+                for (int i = 0; i < n; i++) results[i] = a[i] + b[i];
+                break;
+            case '-':
+                for (int i = 0; i < n; i++) results[i] = a[i] - b[i];
+                break;
+            case '*':
+                for (int i = 0; i < n; i++) results[i] = a[i] * b[i];
+                break;
+            case '/': {
+                for (int i = 0; i < n; i++) results[i] = a[i] / b[i];
+                // Đánh dấu chia cho 0 ở vòng riêng để vòng chia vẫn vector hóa được
+                int errors = 0;
+                for (int i = 0; i < n; i++) {
+                    if (b[i] == 0) {
+                        results[i] = Double.NaN;
+                        status[i] = DIV_ZERO;
+                        errors++;
+                    } else {
+                        status[i] = OK;
+                    }
+                }
+                return errors;
+            }
+            default:
+                for (int i = 0; i < n; i++) {
+                    results[i] = Double.NaN;
+                    status[i] = BAD_OPERATOR;
+                }
+                return n;
+        }
+        for (int i = 0; i < n; i++) status[i] = OK;
+        return 0;
+    }
+}
@@ -3,32 +3,30 @@ package btl;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
+import java.util.Locale;
 import java.util.UUID;
 import java.util.concurrent.*;
 
 /**
  * UDP Time Client GUI (btl)
  * - Tab: Đồng bộ | Đếm ngược | Báo thức | Nhật ký
- * - Giải pháp: chỉ 1 luồng receive chung + BlockingQueue để phân phối phản hồi
+ * - Giải pháp: TimeClient với 1 luồng receive chung + bảng request id -> CompletableFuture để phân phối phản hồi
+ * - Ô "Máy chủ" nhận một hoặc nhiều server ("host[:port], host[:port]"): ServerPool hỏi song song,
+ *   loại server lệch bất thường và chuyển sang server khác khi server chính không phản hồi
  */
 public class ClientGUI extends JFrame {
-    private DatagramSocket socket = null;
-    private String serverHost = "localhost";
-    private int serverPort = 9876;
+    private ServerPool pool = null;
+    private volatile String serverHost = "localhost";
+    private volatile int serverPort = 9876;
     private final int SOCKET_TIMEOUT_MS = 3000;
 
-    // Incoming messages queue (listener nhận và push vào đây)
-    private final BlockingQueue<String> incomingMessages = new LinkedBlockingQueue<>();
+    // Giờ đồng bộ neo vào nanoTime; bên trong là ClockFilter (cửa sổ mẫu, loại nhiễu, ước lượng trôi, slew)
+    private final SyncedClock syncedClock = new SyncedClock();
+    private static final int SYNC_BURST = 4;
 
     // UI
     private final JLabel lblLocalClock = new JLabel("--:--:--", SwingConstants.CENTER);
@@ -36,30 +34,48 @@ public class ClientGUI extends JFrame {
     private final JLabel lblLocalZone = new JLabel("Múi giờ cục bộ: " + ZoneId.systemDefault().getId(), SwingConstants.CENTER);
 
     // Bảng nhật ký
-    private final DefaultTableModel activityModel = new DefaultTableModel(new String[]{"Thời gian", "Sự kiện"}, 0);
+    private final EventLogTableModel activityModel = new EventLogTableModel(5000);
 
-    // Scheduler
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+    // Scheduler: chỉ các nhịp định thời (đồng hồ, đếm ngược, hẹn tự động đồng bộ), không bao giờ chờ mạng
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    // Gửi yêu cầu / xử lý phản hồi: mỗi tác vụ một virtual thread khi có (RequestExecutors)
+    private final ExecutorService requestExecutor = RequestExecutors.newPerTaskExecutor("Client-Request-");
     private ScheduledFuture<?> autoSyncFuture;
 
-    // Đếm ngược
-    private ScheduledFuture<?> countdownFuture;
-    private volatile long countdownRemaining = 0;
+    // Nghe giờ quảng bá (thay cho hỏi định kỳ)
+    private volatile TimeBroadcastListener broadcastListener;
+    private int broadcastSamples;
+
+    // Đếm ngược và bấm giờ: hạn chót theo nanoTime (TimerEngine), không đếm nhịp
+    private final TimerEngine timerEngine = new TimerEngine(scheduler);
+    private static final String COUNTDOWN = "countdown";
+    private static final String STOPWATCH = "stopwatch";
     private final JLabel lblCountdownBig = new JLabel("00:00:00", SwingConstants.CENTER);
+    private final JButton btnCntPause = new JButton("Tạm dừng");
+    private final JLabel lblStopwatch = new JLabel("00:00:00.00", SwingConstants.CENTER);
+    private final JButton btnSwStart = new JButton("Bấm giờ");
+    private final DefaultListModel<String> lapListModel = new DefaultListModel<>();
 
     // Báo thức
     private final DefaultListModel<AlarmItem> alarmListModel = new DefaultListModel<>();
+    // Báo thức cục bộ: chỉ mục hạn kích hoạt theo giờ đã đồng bộ, server chỉ giữ bản sao lưu (nếu chọn)
+    private final AlarmScheduler<AlarmItem> localAlarms = new AlarmScheduler<>("Client-Alarm",
+            () -> Math.floorDiv(syncedClock.nowEpochNanos(), 1_000_000L), this::fireLocalAlarm);
+    // HH:mm -> nanoTime lúc báo thức cục bộ có sao lưu vừa kêu, để bỏ qua ALARM_RING trùng từ server
+    private final ConcurrentHashMap<String, Long> recentLocalRings = new ConcurrentHashMap<>();
+    private static final long DUPLICATE_RING_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private final JCheckBox chkLocalAlarm = new JCheckBox("Báo thức cục bộ");
+    private final JCheckBox chkAlarmBackup = new JCheckBox("Sao lưu lên server");
     private final JLabel lblAlarmClock = new JLabel("--:--:--", SwingConstants.CENTER);
 
     // Đồng hồ kim
     private AnalogClockPanel analogClock;
 
-    // Biến lưu trữ độ lệch thời gian và múi giờ đã đồng bộ
-    private volatile long timeOffsetMillis = 0;
+    // Múi giờ đã đồng bộ; định dạng riêng để không tranh bộ nhớ đệm với nhật ký (múi giờ hệ thống)
     private volatile ZoneId syncedZoneId = ZoneId.systemDefault();
-
-    // Listener thread reference (so we can interrupt/stop if needed)
-    private Thread listenerThread;
+    private final Utils.SecondFormat clockFormat = new Utils.SecondFormat("HH:mm:ss");
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long TICK_MARGIN_NANOS = 1_000_000L; // nhịp rơi ngay sau ranh giới giây
 
     public ClientGUI() {
         super("Ứng dụng đồng hồ (Client)");
@@ -67,13 +83,14 @@ public class ClientGUI extends JFrame {
         setSize(1300, 620);
         setLocationRelativeTo(null);
 
+        // Tạo socket và listener chung (luồng receive duy nhất nằm trong TimeClient)
         initSocket();
 
-        // Khởi động listener chung (luồng receive duy nhất)
-        startSocketListener();
-
         initUI();
         startLocalClock();
+        localAlarms.start();
+        logActivity("Yêu cầu mạng chạy trên " + (RequestExecutors.virtualThreadsAvailable()
+                ? "virtual thread (mỗi yêu cầu một luồng)" : "pool luồng daemon co giãn"));
 
         addWindowListener(new WindowAdapter() {
             @Override
@@ -84,13 +101,34 @@ public class ClientGUI extends JFrame {
     }
 
     private void initSocket() {
-        try {
-            socket = new DatagramSocket();
-            socket.setSoTimeout(SOCKET_TIMEOUT_MS);
-            logActivity("UDP socket tạo tại cổng " + socket.getLocalPort());
-        } catch (Exception e) {
-            logActivity("Lỗi khởi tạo socket: " + e.getMessage());
-            socket = null;
+        // Mỗi server trong nhóm có socket riêng, được tạo khi server được chọn lần đầu
+        pool = new ServerPool(new TimeClient.Listener() {
+            @Override
+            public void onAlarm(String message) {
+                handleAlarmNotification(message);
+            }
+
+            @Override
+            public void onLog(String message) {
+                logActivity(message);
+            }
+        }, SOCKET_TIMEOUT_MS);
+    }
+
+    /** Áp dụng danh sách serverHost (cổng mặc định serverPort); khi đổi server thì bộ lọc đồng hồ bắt đầu lại. */
+    private void selectServer() throws java.io.IOException {
+        if (pool.setServers(serverHost, serverPort)) {
+            syncedClock.reset();
+        }
+    }
+
+    /** Ghi nhật ký lỗi của một yêu cầu; hết hạn chờ giữ thông báo như trước. */
+    private void logRequestFailure(Throwable ex, String prefix) {
+        Throwable cause = TimeClient.unwrap(ex);
+        if (cause instanceof TimeoutException) {
+            logActivity("Hết thời gian chờ (không có phản hồi)");
+        } else {
+            logActivity(prefix + cause.getMessage());
         }
     }
 
@@ -125,6 +163,13 @@ public class ClientGUI extends JFrame {
 
         analogClock = new AnalogClockPanel();
         analogClock.setBackground(Color.WHITE);
+        analogClock.setToolTipText("Nhấp đúp để bật/tắt kim giây trôi liên tục");
+        analogClock.addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override
+            public void mouseClicked(java.awt.event.MouseEvent e) {
+                if (e.getClickCount() == 2) analogClock.setSmoothSweep(!analogClock.isSmoothSweep());
+            }
+        });
         lblLocalClock.setFont(new Font("Monospaced", Font.BOLD, 40));
         lblLocalClock.setForeground(new Color(34, 139, 34));
         lblLocalZone.setFont(new Font("Monospaced", Font.PLAIN, 12));
@@ -155,17 +200,22 @@ public class ClientGUI extends JFrame {
 
         JPanel syncControls = new JPanel(new FlowLayout(FlowLayout.CENTER, 8, 8));
         syncControls.setBackground(Color.WHITE);
-        final JTextField tfHost = new JTextField(serverHost, 14);
+        final JTextField tfHost = new JTextField(serverHost, 20);
+        tfHost.setToolTipText("Một hoặc nhiều server: localhost:9876, localhost:9878 (thiếu cổng thì dùng ô Cổng)");
         final JSpinner spnPort = new JSpinner(new SpinnerNumberModel(serverPort, 1024, 65535, 1));
         JButton btnSyncNow = new JButton("Đồng bộ ngay");
         JButton btnPing = new JButton("Ping");
         final JCheckBox chkAuto = new JCheckBox("Tự động đồng bộ mỗi");
         final JSpinner spnAutoSec = new JSpinner(new SpinnerNumberModel(10, 2, 3600, 1));
+        final JCheckBox chkBroadcast = new JCheckBox("Nghe quảng bá");
+        chkBroadcast.setToolTipText("Nhận giờ server phát tới " + TimeBroadcaster.DEFAULT_GROUP.getAddress().getHostAddress()
+                + ":" + TimeBroadcaster.DEFAULT_GROUP.getPort() + " thay cho hỏi định kỳ (server chạy với --broadcast)");
 
         syncControls.add(new JLabel("Máy chủ:")); syncControls.add(tfHost);
         syncControls.add(new JLabel("Cổng:")); syncControls.add(spnPort);
         syncControls.add(btnSyncNow); syncControls.add(btnPing);
         syncControls.add(chkAuto); syncControls.add(spnAutoSec); syncControls.add(new JLabel("giây"));
+        syncControls.add(chkBroadcast);
 
         serverCard.add(syncControls, BorderLayout.SOUTH);
         gbc.gridx = 1; gbc.gridy = 0; gbc.weightx = 0.6; gbc.weighty = 0.3;
@@ -191,12 +241,31 @@ public class ClientGUI extends JFrame {
         cntTop.add(new JLabel("Giờ:")); cntTop.add(spnCountdownHr);
         cntTop.add(new JLabel("Phút:")); cntTop.add(spnCountdownMin);
         cntTop.add(new JLabel("Giây:")); cntTop.add(spnCountdownSec);
-        cntTop.add(btnCntStart); cntTop.add(btnCntStop);
+        cntTop.add(btnCntStart); cntTop.add(btnCntPause); cntTop.add(btnCntStop);
 
         lblCountdownBig.setFont(new Font("Monospaced", Font.BOLD, 64));
         lblCountdownBig.setForeground(new Color(255, 140, 0));
         countdownPanel.add(cntTop, BorderLayout.NORTH);
         countdownPanel.add(lblCountdownBig, BorderLayout.CENTER);
+
+        // Bấm giờ (có ghi vòng)
+        JPanel stopwatchPanel = new JPanel(new BorderLayout(8, 8));
+        stopwatchPanel.setBackground(new Color(240, 248, 255));
+        stopwatchPanel.setBorder(BorderFactory.createTitledBorder("Bấm giờ"));
+        JPanel swButtons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        swButtons.setBackground(new Color(240, 248, 255));
+        JButton btnSwLap = new JButton("Vòng");
+        JButton btnSwReset = new JButton("Đặt lại");
+        swButtons.add(btnSwStart); swButtons.add(btnSwLap); swButtons.add(btnSwReset);
+        lblStopwatch.setFont(new Font("Monospaced", Font.BOLD, 32));
+        JList<String> lapList = new JList<>(lapListModel);
+        lapList.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        JScrollPane lapScroll = new JScrollPane(lapList);
+        lapScroll.setPreferredSize(new Dimension(260, 110));
+        stopwatchPanel.add(swButtons, BorderLayout.NORTH);
+        stopwatchPanel.add(lblStopwatch, BorderLayout.CENTER);
+        stopwatchPanel.add(lapScroll, BorderLayout.EAST);
+        countdownPanel.add(stopwatchPanel, BorderLayout.SOUTH);
         tabs.addTab("Đếm ngược", countdownPanel);
 
         // Tab báo thức
@@ -214,6 +283,14 @@ public class ClientGUI extends JFrame {
         alTop.add(new JLabel("Giờ:")); alTop.add(spnAlarmHour);
         alTop.add(new JLabel("Phút:")); alTop.add(spnAlarmMin);
         alTop.add(btnSetAlarm);
+        chkLocalAlarm.setOpaque(false);
+        chkLocalAlarm.setToolTipText("Client tự kêu theo đồng hồ đã đồng bộ, không cần server giữ báo thức");
+        chkAlarmBackup.setOpaque(false);
+        chkAlarmBackup.setEnabled(false);
+        chkAlarmBackup.setToolTipText("Đồng thời cài trên server; server chỉ kêu nếu client chưa kêu");
+        chkLocalAlarm.addActionListener(ae -> chkAlarmBackup.setEnabled(chkLocalAlarm.isSelected()));
+        alTop.add(chkLocalAlarm);
+        alTop.add(chkAlarmBackup);
 
         JPanel alarmListPanel = new JPanel(new BorderLayout(5, 5));
         alarmListPanel.setBackground(new Color(240, 248, 255));
@@ -244,11 +321,16 @@ public class ClientGUI extends JFrame {
         tabs.addTab("Báo thức", alarmPanel);
 
         // Tab nhật ký
-        JTable activityTable = new JTable(activityModel);
+        JTable activityTable = new JTable();
+        JLabel lblActivityStatus = new JLabel(" ");
+        activityModel.attach(activityTable, lblActivityStatus);
         activityTable.setFillsViewportHeight(true);
         JScrollPane spActivity = new JScrollPane(activityTable);
-        spActivity.setBorder(new TitledBorder("Nhật ký hoạt động"));
-        tabs.addTab("Nhật ký", spActivity);
+        JPanel activityPanel = new JPanel(new BorderLayout());
+        activityPanel.setBorder(new TitledBorder("Nhật ký hoạt động"));
+        activityPanel.add(spActivity, BorderLayout.CENTER);
+        activityPanel.add(lblActivityStatus, BorderLayout.SOUTH);
+        tabs.addTab("Nhật ký", activityPanel);
 
         main.add(tabs, BorderLayout.CENTER);
 
@@ -258,17 +340,19 @@ public class ClientGUI extends JFrame {
         btnSyncNow.addActionListener(ae -> {
             serverHost = tfHost.getText().trim();
             serverPort = ((Number) spnPort.getValue()).intValue();
-            syncOnce();
+            requestExecutor.execute(this::syncOnce);
         });
 
         btnPing.addActionListener(ae -> {
             serverHost = tfHost.getText().trim();
             serverPort = ((Number) spnPort.getValue()).intValue();
-            pingServer();
+            requestExecutor.execute(this::pingServer);
         });
 
         chkAuto.addActionListener(ae -> {
             if (chkAuto.isSelected()) {
+                chkBroadcast.setSelected(false);
+                stopBroadcastListening();
                 int sec = ((Number) spnAutoSec.getValue()).intValue();
                 scheduleAutoSync(sec);
             } else {
@@ -276,6 +360,16 @@ public class ClientGUI extends JFrame {
             }
         });
 
+        chkBroadcast.addActionListener(ae -> {
+            if (chkBroadcast.isSelected()) {
+                chkAuto.setSelected(false);
+                cancelAutoSync();
+                if (!startBroadcastListening()) chkBroadcast.setSelected(false);
+            } else {
+                stopBroadcastListening();
+            }
+        });
+
         btnCntStart.addActionListener(ae -> {
             try {
                 long h = (Integer) spnCountdownHr.getValue();
@@ -289,35 +383,38 @@ public class ClientGUI extends JFrame {
         });
 
         btnCntStop.addActionListener(ae -> stopCountdown());
+        btnCntPause.addActionListener(ae -> toggleCountdownPause());
+        btnSwStart.addActionListener(ae -> toggleStopwatch());
+        btnSwLap.addActionListener(ae -> lapStopwatch());
+        btnSwReset.addActionListener(ae -> resetStopwatch());
 
         btnSetAlarm.addActionListener(ae -> {
             int h = (Integer) spnAlarmHour.getValue();
             int m = (Integer) spnAlarmMin.getValue();
-            setServerAlarm(h, m);
+            if (chkLocalAlarm.isSelected()) {
+                setLocalAlarm(h, m, chkAlarmBackup.isSelected());
+            } else {
+                requestExecutor.execute(() -> setServerAlarm(h, m));
+            }
         });
 
         btnRemoveAlarm.addActionListener(ae -> {
             AlarmItem selectedItem = alarmList.getSelectedValue();
-            if (selectedItem != null) {
-                removeServerAlarm(selectedItem);
+            if (selectedItem != null && selectedItem.local) {
+                removeLocalAlarm(selectedItem);
+            } else if (selectedItem != null) {
+                requestExecutor.execute(() -> removeServerAlarm(selectedItem));
             } else {
                 JOptionPane.showMessageDialog(this, "Vui lòng chọn báo thức cần hủy.", "Thông báo", JOptionPane.INFORMATION_MESSAGE);
             }
         });
 
-        btnCancelAllAlarms.addActionListener(ae -> cancelAllServerAlarms());
+        btnCancelAllAlarms.addActionListener(ae -> cancelAllAlarms());
     }
 
     // --- Nhật ký ---
     private void logActivity(final String message) {
-        final String t = Utils.formatNowFull();
-        SwingUtilities.invokeLater(() -> {
-            try {
-                activityModel.addRow(new Object[]{t, message});
-            } catch (Exception ex) {
-                System.err.println("UI log error: " + ex.getMessage());
-            }
-        });
+        activityModel.append(message);
         try {
             FileUtils.append("client_activity.txt", message);
         } catch (Exception ex) {
@@ -327,60 +424,74 @@ public class ClientGUI extends JFrame {
 
     // --- Đồng hồ cục bộ ---
     private void startLocalClock() {
-        scheduler.scheduleAtFixedRate(() -> {
-            final ZonedDateTime nowWithOffset = ZonedDateTime.now(syncedZoneId)
-                    .plus(timeOffsetMillis, ChronoUnit.MILLIS);
-            final String t = nowWithOffset.toLocalTime()
-                    .withNano(0)
-                    .toString();
+        scheduler.execute(this::clockTick);
+    }
+
+    /** Hẹn nhịp kế tiếp ngay sau ranh giới giây của giờ đồng bộ (không phải theo pha lúc khởi động). */
+    private void scheduleClockTick() {
+        long intoSecond = Math.floorMod(syncedClock.nowEpochNanos(), NANOS_PER_SECOND);
+        try {
+            scheduler.schedule(this::clockTick, NANOS_PER_SECOND - intoSecond + TICK_MARGIN_NANOS,
+                    TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // client đang tắt
+        }
+    }
+
+    private void clockTick() {
+        try {
+            SyncedClock.Discontinuity jump = syncedClock.check();
+            if (jump != SyncedClock.Discontinuity.NONE) {
+                onClockDiscontinuity(jump);
+            }
+            long now = syncedClock.nowEpochNanos();
+            if (Math.floorMod(now, NANOS_PER_SECOND) > NANOS_PER_SECOND / 2) {
+                return; // đến sớm (giờ đồng bộ đang slew chậm lại): chờ nốt tới ranh giới giây
+            }
+            ZoneId zone = syncedZoneId;
+            final String t = clockFormat.format(Math.floorDiv(now, 1_000_000L), zone);
+            final ZonedDateTime time = Instant.ofEpochSecond(0, now).atZone(zone);
             SwingUtilities.invokeLater(() -> {
                 lblLocalClock.setText(t);
                 lblAlarmClock.setText(t);
-                analogClock.setTime(nowWithOffset); // Cập nhật đồng hồ kim
+                analogClock.setTime(time); // Cập nhật đồng hồ kim
             });
-        }, 0, 1, TimeUnit.SECONDS);
-    }
-
-    // ============================
-    // Central socket listener
-    // ============================
-    private void startSocketListener() {
-        if (socket == null) return;
-        listenerThread = new Thread(() -> {
-            byte[] buf = new byte[4096];
-            while (!socket.isClosed() && !Thread.currentThread().isInterrupted()) {
-                try {
-                    DatagramPacket p = new DatagramPacket(buf, buf.length);
-                    socket.receive(p);
-                    String msg = new String(p.getData(), 0, p.getLength(), "UTF-8").trim();
-
-                    // Nếu là alarm notification — xử lý ngay
-                    if (msg.startsWith("ALARM_RING:") || msg.startsWith("ALARM_TRIGGERED:") || msg.startsWith("ALARM_TRIGGER:")) {
-                        handleAlarmNotification(msg);
-                        // cũng thêm vào queue nếu bạn muốn ghi log hoặc cho các caller đọc (we will handle skipping ALARM in waitForResponse)
-                        incomingMessages.offer(msg);
-                    } else {
-                        // các phản hồi cho request (TIME, PONG, CALC result, ACKs...)
-                        incomingMessages.offer(msg);
-                    }
-                } catch (java.net.SocketTimeoutException ste) {
-                    // ignore: tiếp tục vòng lặp để chờ gói tiếp theo
-                } catch (Exception ex) {
-                    if (!socket.isClosed()) {
-                        logActivity("Lỗi listener socket: " + ex.getMessage());
-                    }
-                    break;
-                }
-            }
-        }, "Client-Socket-Listener");
-        listenerThread.setDaemon(true);
-        listenerThread.start();
-        logActivity("Đã khởi động luồng lắng nghe socket");
+        } finally {
+            scheduleClockTick();
+        }
+    }
+
+    /** Đồng hồ máy nhảy hoặc máy vừa ngủ: giờ hiển thị vẫn theo nanoTime, đồng bộ lại ngay để kiểm tra. */
+    private void onClockDiscontinuity(SyncedClock.Discontinuity jump) {
+        if (jump == SyncedClock.Discontinuity.SUSPEND) {
+            logActivity("Máy vừa ngủ/treo, cần đồng bộ lại");
+        } else {
+            logActivity(String.format("Đồng hồ hệ thống vừa nhảy %+.3f ms (chỉnh giờ hoặc máy vừa ngủ), giờ hiển thị không đổi",
+                    syncedClock.lastJumpNanos() / 1e6));
+        }
+        if (syncedClock.isSynced() && broadcastListener == null) {
+            requestExecutor.execute(this::syncOnce); // đang nghe quảng bá thì gói kế tiếp tự đồng bộ lại
+        }
     }
 
     private void handleAlarmNotification(String msg) {
         String timePart = msg.contains(":") ? msg.substring(msg.indexOf(':') + 1) : msg;
-        final String display = timePart;
+        Long rang = recentLocalRings.get(timePart);
+        if (rang != null && System.nanoTime() - rang < DUPLICATE_RING_WINDOW_NANOS) {
+            logActivity("Bỏ qua báo thức sao lưu từ server (" + timePart + "): client đã tự kêu");
+            return;
+        }
+        // Server kêu trước báo thức cục bộ có sao lưu (client bị treo, đồng hồ lệch): bản cục bộ không kêu nữa
+        localAlarms.forEach((id, item) -> {
+            if (item.backedUp && item.time.toString().equals(timePart) && localAlarms.cancel(id) != null) {
+                SwingUtilities.invokeLater(() -> alarmListModel.removeElement(item));
+            }
+        });
+        showAlarm(timePart);
+        logActivity("Nhận thông báo báo thức từ server: " + msg);
+    }
+
+    private void showAlarm(String display) {
         SwingUtilities.invokeLater(() -> {
             Toolkit.getDefaultToolkit().beep();
             JOptionPane.showMessageDialog(
@@ -390,117 +501,99 @@ public class ClientGUI extends JFrame {
                     JOptionPane.INFORMATION_MESSAGE
             );
         });
-        logActivity("Nhận thông báo báo thức từ server: " + msg);
+    }
+
+    // --- Đồng bộ ---
+    private void syncOnce() {
+        if (pool == null) {
+            logActivity("Socket chưa sẵn sàng");
+            return;
+        }
+        try {
+            selectServer();
+        } catch (Exception ex) {
+            logActivity("Lỗi đồng bộ: " + ex.getMessage());
+            return;
+        }
+        syncRound();
     }
 
     /**
-     * Poll incomingMessages queue for a non-alarm response until timeout.
-     * If an ALARM_* message appears, it's handled immediately and skipped.
-     * Returns null if timeout.
+     * Một vòng đồng bộ: SYNC_BURST gói nhị phân chia đều cho các server (server cũ dùng TIME_REQUEST),
+     * ServerPool chọn các server thống nhất và kết hợp offset; kết quả được đưa vào ClockFilter để slew.
      */
-    private String waitForResponse(long timeoutMs) {
-        long deadline = System.currentTimeMillis() + timeoutMs;
-        while (System.currentTimeMillis() < deadline) {
-            long wait = deadline - System.currentTimeMillis();
+    private void syncRound() {
+        logActivity("Đã gửi yêu cầu đồng bộ tới " + pool.describe());
+        pool.sync(SYNC_BURST).whenCompleteAsync((round, ex) -> {
+            if (ex != null) {
+                logRequestFailure(ex, "Lỗi đồng bộ: ");
+                return;
+            }
             try {
-                String msg = incomingMessages.poll(Math.max(1, wait), TimeUnit.MILLISECONDS);
-                if (msg == null) return null;
-                if (msg.startsWith("ALARM_RING:") || msg.startsWith("ALARM_TRIGGERED:") || msg.startsWith("ALARM_TRIGGER:")) {
-                    // đã tự động xử lý trong listener, tiếp tục chờ response khác
-                    continue;
-                }
-                return msg;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return null;
+                applyRound(round);
+            } catch (Exception e) {
+                logActivity("Lỗi đồng bộ: " + e.getMessage());
             }
-        }
-        return null;
+        }, requestExecutor);
     }
 
-    // --- Đồng bộ ---
-    private void syncOnce() {
-        if (socket == null) {
-            logActivity("Socket chưa sẵn sàng");
+    private void applyRound(ServerPool.Round round) {
+        if (pool.getMembers().size() > 1) {
+            for (String line : round.report) logActivity(line);
+        }
+        if (!round.ok) {
+            logActivity(round.candidates == 0
+                    ? "Hết thời gian chờ (không có phản hồi)"
+                    : "Các server không thống nhất về thời gian (" + round.candidates + " server trả lời), giữ nguyên độ lệch");
             return;
         }
-        scheduler.execute(() -> {
-            try {
-                long t0 = System.currentTimeMillis();
-                String requestString = "TIME_REQUEST";
-                byte[] req = requestString.getBytes("UTF-8");
-                InetAddress addr = InetAddress.getByName(serverHost);
-                DatagramPacket p = new DatagramPacket(req, req.length, addr, serverPort);
-                socket.send(p);
-                logActivity("Đã gửi TIME_REQUEST tới " + serverHost + ":" + serverPort);
-
-                String serverResponse = waitForResponse(SOCKET_TIMEOUT_MS);
-                if (serverResponse == null) {
-                    logActivity("Hết thời gian chờ (không có phản hồi)");
-                    return;
-                }
-
-                final String resp = serverResponse;
-                SwingUtilities.invokeLater(() -> lblServerTime.setText(resp));
-                logActivity("Nhận thời gian từ Server: " + resp);
-
-                // Phân tích chuỗi phản hồi để lấy thời gian và múi giờ
-                String[] parts = resp.split("\\(");
-                String serverTimeStr = parts[0].trim();
-                String serverZoneStr = parts.length > 1 ? parts[1].replace(")", "").trim() : "UTC";
-
-                // Lưu múi giờ mới và cập nhật nhãn trên UI
-                syncedZoneId = ZoneId.of(serverZoneStr);
-                SwingUtilities.invokeLater(() -> lblLocalZone.setText("Múi giờ đồng bộ: " + syncedZoneId.getId()));
-
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy");
-                ZonedDateTime serverTime = LocalDateTime.parse(serverTimeStr, formatter)
-                        .atZone(syncedZoneId);
-
-                long t1 = System.currentTimeMillis(); // nhận thời gian bây giờ
-                long rtt = t1 - t0;
-                long correctedClientTimeMillis = t1 - rtt / 2;
+        setSyncedZone(round.zone);
+        SwingUtilities.invokeLater(() -> {
+            lblLocalZone.setText("Múi giờ đồng bộ: " + round.zone.getId());
+            lblServerTime.setText(round.serverTime);
+        });
+        logActivity("Nhận thời gian từ Server: " + round.serverTime);
 
-                timeOffsetMillis = serverTime.toInstant().toEpochMilli() - correctedClientTimeMillis;
+        ClockFilter.Result result = syncedClock.addSample(round.offsetNanos, round.delayNanos, round.monoNanos);
+        long appliedMillis = Math.floorDiv(syncedClock.appliedOffsetNanos(), 1_000_000L);
 
-                logActivity(String.format("Đã đồng bộ. Độ lệch: %d ms", timeOffsetMillis));
-                FileUtils.append("client_log.txt", "Đồng bộ: " + resp);
-            } catch (Exception ex) {
-                logActivity("Lỗi đồng bộ: " + ex.getMessage());
-            }
-        });
+        logActivity(String.format(Locale.ROOT, "Đã đồng bộ (%d/%d server, nguồn chính %s). Lệch %.3f ms, trễ %.3f ms. "
+                        + "Đang áp dụng: %d ms%s, trôi %.1f ppm",
+                round.survivors, round.candidates, round.systemPeer.getName(), round.offsetNanos / 1e6,
+                round.delayNanos / 1e6, appliedMillis, result.stepped ? " (nhảy)" : "", syncedClock.frequencyPpm()));
+        FileUtils.append("client_log.txt", "Đồng bộ: " + round.serverTime);
     }
 
     private void pingServer() {
-        if (socket == null) {
+        if (pool == null) {
             logActivity("Socket chưa sẵn sàng");
             return;
         }
-        scheduler.execute(() -> {
-            try {
-                byte[] req = "PING".getBytes("UTF-8");
-                InetAddress addr = InetAddress.getByName(serverHost);
-                DatagramPacket p = new DatagramPacket(req, req.length, addr, serverPort);
-                long t0 = System.currentTimeMillis();
-                socket.send(p);
-                logActivity("Gửi PING tới " + serverHost + ":" + serverPort);
-
-                String r = waitForResponse(SOCKET_TIMEOUT_MS);
-                long t1 = System.currentTimeMillis();
-                if (r == null) {
-                    logActivity("Ping timeout");
-                } else {
-                    logActivity("Ping phản hồi: " + r + " RTT=" + (t1 - t0) + " ms");
-                }
-            } catch (Exception ex) {
-                logActivity("Lỗi Ping: " + ex.getMessage());
+        try {
+            selectServer();
+        } catch (Exception ex) {
+            logActivity("Lỗi Ping: " + ex.getMessage());
+            return;
+        }
+        final long t0 = System.currentTimeMillis();
+        logActivity("Gửi PING tới " + pool.describe());
+        pool.request("PING").whenCompleteAsync((r, ex) -> {
+            long t1 = System.currentTimeMillis();
+            if (ex == null) {
+                logActivity("Ping phản hồi: " + r + " RTT=" + (t1 - t0) + " ms");
+            } else if (TimeClient.unwrap(ex) instanceof TimeoutException) {
+                logActivity("Ping timeout");
+            } else {
+                logActivity("Lỗi Ping: " + TimeClient.unwrap(ex).getMessage());
             }
-        });
+        }, requestExecutor);
     }
 
     private void scheduleAutoSync(int seconds) {
         cancelAutoSync();
-        autoSyncFuture = scheduler.scheduleAtFixedRate(() -> syncOnce(), 0, Math.max(1, seconds), TimeUnit.SECONDS);
+        // Nhịp hẹn giờ chỉ chuyển việc sang requestExecutor: phân giải tên / chờ phản hồi không giữ luồng định thời
+        autoSyncFuture = scheduler.scheduleAtFixedRate(() -> requestExecutor.execute(this::syncOnce),
+                0, Math.max(1, seconds), TimeUnit.SECONDS);
         logActivity("Đã hẹn tự động đồng bộ mỗi " + seconds + " giây");
     }
 
@@ -512,28 +605,97 @@ public class ClientGUI extends JFrame {
         }
     }
 
+    /** Chuyển sang nghe giờ quảng bá: server chỉ phát một gói mỗi giây cho mọi client. */
+    private boolean startBroadcastListening() {
+        stopBroadcastListening();
+        try {
+            broadcastListener = new TimeBroadcastListener(TimeBroadcaster.DEFAULT_GROUP, new TimeBroadcastListener.Listener() {
+                @Override
+                public void onSample(TimeBroadcastListener.Sample sample) {
+                    applyBroadcast(sample);
+                }
+
+                @Override
+                public void onLog(String message) {
+                    logActivity(message);
+                }
+            }, SOCKET_TIMEOUT_MS);
+            broadcastSamples = 0;
+            syncedClock.reset();
+            logActivity("Đang nghe giờ quảng bá tại " + TimeBroadcaster.DEFAULT_GROUP);
+            return true;
+        } catch (Exception ex) {
+            logActivity("Không nghe được giờ quảng bá: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private void stopBroadcastListening() {
+        if (broadcastListener != null) {
+            broadcastListener.close();
+            broadcastListener = null;
+            logActivity("Đã dừng nghe giờ quảng bá");
+        }
+    }
+
+    private void applyBroadcast(TimeBroadcastListener.Sample sample) {
+        setSyncedZone(sample.zone);
+        ClockFilter.Result result = syncedClock.addSample(sample.offsetNanos, sample.delayNanos, sample.monoNanos);
+        SwingUtilities.invokeLater(() -> {
+            lblLocalZone.setText("Múi giờ đồng bộ: " + sample.zone.getId());
+            lblServerTime.setText(sample.serverTime);
+        });
+        // Một gói mỗi giây: chỉ ghi nhật ký mẫu đầu và mỗi phút một lần
+        if (broadcastSamples++ % 60 == 0) {
+            logActivity(String.format(Locale.ROOT, "Giờ quảng bá từ %s: %s. Lệch %.3f ms. Đang áp dụng: %d ms%s, trôi %.1f ppm",
+                    sample.server.getAddress().getHostAddress() + ":" + sample.server.getPort(), sample.serverTime,
+                    sample.offsetNanos / 1e6, Math.floorDiv(syncedClock.appliedOffsetNanos(), 1_000_000L),
+                    result.stepped ? " (nhảy)" : "", syncedClock.frequencyPpm()));
+        }
+    }
+
     // --- Đếm ngược ---
     private void startCountdown(long seconds) {
-        stopCountdown();
-        countdownRemaining = seconds;
-        updateCountdownLabel(countdownRemaining);
-        countdownFuture = scheduler.scheduleAtFixedRate(() -> {
-            countdownRemaining--;
-            SwingUtilities.invokeLater(() -> updateCountdownLabel(countdownRemaining));
-            if (countdownRemaining <= 0) {
-                stopCountdown();
-                SwingUtilities.invokeLater(() -> {
-                    Toolkit.getDefaultToolkit().beep();
-                    JOptionPane.showMessageDialog(ClientGUI.this, "Đếm ngược kết thúc!", "Đếm ngược", JOptionPane.INFORMATION_MESSAGE);
+        // Bộ đếm cũ cùng tên (nếu có) bị thay thế
+        timerEngine.startCountdown(COUNTDOWN, TimeUnit.SECONDS.toNanos(seconds), TimeUnit.SECONDS.toNanos(1),
+                new TimerEngine.Listener() {
+                    @Override
+                    public void onTick(TimerEngine.Timer timer, long remainingNanos) {
+                        SwingUtilities.invokeLater(() -> updateCountdownLabel(remainingNanos));
+                    }
+
+                    @Override
+                    public void onFinished(TimerEngine.Timer timer) {
+                        SwingUtilities.invokeLater(() -> {
+                            updateCountdownLabel(0);
+                            btnCntPause.setText("Tạm dừng");
+                            Toolkit.getDefaultToolkit().beep();
+                            JOptionPane.showMessageDialog(ClientGUI.this, "Đếm ngược kết thúc!", "Đếm ngược", JOptionPane.INFORMATION_MESSAGE);
+                        });
+                        logActivity("Đếm ngược kết thúc");
+                    }
                 });
-                logActivity("Đếm ngược kết thúc");
-            }
-        }, 1, 1, TimeUnit.SECONDS);
+        updateCountdownLabel(TimeUnit.SECONDS.toNanos(seconds));
+        btnCntPause.setText("Tạm dừng");
         logActivity("Bắt đầu đếm ngược: " + seconds + "s");
     }
 
-    private void updateCountdownLabel(long sec) {
-        if (sec < 0) sec = 0;
+    private void toggleCountdownPause() {
+        TimerEngine.Timer timer = timerEngine.get(COUNTDOWN);
+        if (timer == null) return;
+        if (timer.isRunning()) {
+            timer.pause();
+            btnCntPause.setText("Tiếp tục");
+            logActivity(String.format(Locale.ROOT, "Tạm dừng đếm ngược, còn %.3f s", timer.remainingNanos() / 1e9));
+        } else {
+            timer.resume();
+            btnCntPause.setText("Tạm dừng");
+            logActivity("Tiếp tục đếm ngược");
+        }
+    }
+
+    private void updateCountdownLabel(long remainingNanos) {
+        long sec = Math.max(0, TimeUnit.NANOSECONDS.toSeconds(remainingNanos));
         long h = sec / 3600;
         long m = (sec % 3600) / 60;
         long s = sec % 60;
@@ -541,113 +703,229 @@ public class ClientGUI extends JFrame {
     }
 
     private void stopCountdown() {
-        if (countdownFuture != null) {
-            countdownFuture.cancel(true);
-            countdownFuture = null;
-        }
-        countdownRemaining = 0;
+        TimerEngine.Timer timer = timerEngine.get(COUNTDOWN);
+        if (timer != null) timer.stop();
         updateCountdownLabel(0);
+        btnCntPause.setText("Tạm dừng");
         logActivity("Đã dừng đếm ngược");
     }
 
+    // --- Bấm giờ ---
+    private void toggleStopwatch() {
+        TimerEngine.Timer timer = timerEngine.get(STOPWATCH);
+        if (timer == null) {
+            lapListModel.clear();
+            timerEngine.startStopwatch(STOPWATCH, TimeUnit.MILLISECONDS.toNanos(10), new TimerEngine.Listener() {
+                @Override
+                public void onTick(TimerEngine.Timer t, long elapsedNanos) {
+                    SwingUtilities.invokeLater(() -> lblStopwatch.setText(formatStopwatch(elapsedNanos, 2)));
+                }
+
+                @Override
+                public void onFinished(TimerEngine.Timer t) {
+                    // bấm giờ không có hạn
+                }
+            });
+            btnSwStart.setText("Tạm dừng");
+        } else if (timer.isRunning()) {
+            timer.pause();
+            lblStopwatch.setText(formatStopwatch(timer.elapsedNanos(), 2));
+            btnSwStart.setText("Tiếp tục");
+        } else {
+            timer.resume();
+            btnSwStart.setText("Tạm dừng");
+        }
+    }
+
+    private void lapStopwatch() {
+        TimerEngine.Timer timer = timerEngine.get(STOPWATCH);
+        if (timer == null) return;
+        long split = timer.lap();
+        lapListModel.add(0, String.format("Vòng %d: %s (tổng %s)", lapListModel.size() + 1,
+                formatStopwatch(split, 3), formatStopwatch(timer.elapsedNanos(), 3)));
+    }
+
+    private void resetStopwatch() {
+        TimerEngine.Timer timer = timerEngine.get(STOPWATCH);
+        if (timer != null) {
+            logActivity("Bấm giờ: " + formatStopwatch(timer.elapsedNanos(), 3) + ", " + timer.laps().size() + " vòng");
+            timer.stop();
+        }
+        lapListModel.clear();
+        lblStopwatch.setText(formatStopwatch(0, 2));
+        btnSwStart.setText("Bấm giờ");
+    }
+
+    /** HH:mm:ss kèm digits chữ số thập phân của giây (cắt bớt, không làm tròn). */
+    private static String formatStopwatch(long nanos, int digits) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        long sec = millis / 1000;
+        String fraction = String.format("%03d", millis % 1000).substring(0, digits);
+        return String.format("%02d:%02d:%02d.%s", sec / 3600, (sec % 3600) / 60, sec % 60, fraction);
+    }
+
+    /** Giờ:phút của báo thức cục bộ theo múi giờ đồng bộ: đổi múi giờ thì tính lại hạn (như server). */
+    private void setSyncedZone(ZoneId zone) {
+        if (zone.equals(syncedZoneId)) return;
+        syncedZoneId = zone;
+        ZonedDateTime now = syncedNow();
+        localAlarms.forEach((id, item) -> localAlarms.schedule(id, AlarmScheduler.nextFireMillis(item.time, now), item));
+    }
+
+    private ZonedDateTime syncedNow() {
+        return Instant.ofEpochSecond(0, syncedClock.nowEpochNanos()).atZone(syncedZoneId);
+    }
+
+    // --- Báo thức cục bộ (kêu theo đồng hồ đã đồng bộ) ---
+    private void setLocalAlarm(int h, int m, boolean backup) {
+        String alarmId = UUID.randomUUID().toString();
+        AlarmItem item = new AlarmItem(alarmId, String.format("%02d:%02d (cục bộ)", h, m), LocalTime.of(h, m), true);
+        long deadline = AlarmScheduler.nextFireMillis(item.time, syncedNow());
+        localAlarms.schedule(alarmId, deadline, item);
+        alarmListModel.addElement(item);
+        logActivity("Đã cài báo thức cục bộ " + item.label + ", kêu lúc "
+                + Utils.FULL.format(deadline, syncedZoneId) + ". ID: " + alarmId);
+        if (backup) {
+            requestExecutor.execute(() -> registerServerAlarm(alarmId, h, m, () -> item.backedUp = true));
+        }
+    }
+
+    /** Chạy trên luồng Client-Alarm khi tới hạn theo giờ đã đồng bộ. */
+    private void fireLocalAlarm(String id, AlarmItem item, long deadlineMillis) {
+        long lateness = Math.floorDiv(syncedClock.nowEpochNanos(), 1_000_000L) - deadlineMillis;
+        SwingUtilities.invokeLater(() -> alarmListModel.removeElement(item));
+        String time = item.time.toString();
+        showAlarm(time);
+        logActivity("Báo thức cục bộ " + time + " kêu (trễ " + lateness + " ms so với giờ đồng bộ)");
+        if (item.backedUp) {
+            // Gỡ bản sao lưu để server không gửi ALARM_RING; nếu nó đã gửi thì bản trùng bị bỏ qua
+            recentLocalRings.put(time, System.nanoTime());
+            requestExecutor.execute(() -> removeServerAlarm(item));
+        }
+    }
+
+    private void removeLocalAlarm(AlarmItem item) {
+        localAlarms.cancel(item.id);
+        alarmListModel.removeElement(item);
+        logActivity("Đã hủy báo thức cục bộ " + item.label + ". ID: " + item.id);
+        if (item.backedUp) {
+            requestExecutor.execute(() -> removeServerAlarm(item));
+        }
+    }
+
+    private void cancelAllAlarms() {
+        boolean serverHasAlarms = false;
+        for (int i = alarmListModel.size() - 1; i >= 0; i--) {
+            AlarmItem item = alarmListModel.get(i);
+            if (item.local) {
+                serverHasAlarms |= item.backedUp;
+                alarmListModel.remove(i);
+            } else {
+                serverHasAlarms = true;
+            }
+        }
+        if (localAlarms.size() > 0) {
+            localAlarms.cancelAll();
+            logActivity("Đã hủy tất cả báo thức cục bộ");
+        }
+        if (serverHasAlarms) {
+            requestExecutor.execute(this::cancelAllServerAlarms);
+        }
+    }
+
     // --- Báo thức (Gửi yêu cầu đến Server) ---
     private void setServerAlarm(int h, int m) {
-        if (socket == null) {
+        String alarmId = UUID.randomUUID().toString();
+        registerServerAlarm(alarmId, h, m, () -> {
+            AlarmItem item = new AlarmItem(alarmId, String.format("%02d:%02d", h, m), LocalTime.of(h, m), false);
+            SwingUtilities.invokeLater(() -> alarmListModel.addElement(item));
+        });
+    }
+
+    /** Gửi ALARM_SET với id cho trước; onSuccess chạy khi server xác nhận. */
+    private void registerServerAlarm(String alarmId, int h, int m, Runnable onSuccess) {
+        if (pool == null) {
             logActivity("Socket chưa sẵn sàng");
             return;
         }
-        scheduler.execute(() -> {
-            try {
-                String alarmId = UUID.randomUUID().toString();
-                String requestString = String.format("ALARM_SET:%s:%02d:%02d", alarmId, h, m);
-                byte[] req = requestString.getBytes("UTF-8");
-                InetAddress addr = InetAddress.getByName(serverHost);
-                DatagramPacket p = new DatagramPacket(req, req.length, addr, serverPort);
-                socket.send(p);
-                logActivity("Đã gửi yêu cầu cài báo thức " + h + ":" + m + " đến server. ID: " + alarmId);
-
-                String response = waitForResponse(SOCKET_TIMEOUT_MS);
-                if (response == null) {
-                    logActivity("Hết thời gian chờ (không có phản hồi)");
-                    return;
-                }
-                logActivity("Phản hồi từ server: " + response);
-                if (response.contains("thành công")) {
-                    AlarmItem item = new AlarmItem(alarmId, String.format("%02d:%02d", h, m));
-                    SwingUtilities.invokeLater(() -> alarmListModel.addElement(item));
-                }
-            } catch (Exception ex) {
-                logActivity("Lỗi cài báo thức: " + ex.getMessage());
+        try {
+            selectServer();
+        } catch (Exception ex) {
+            logActivity("Lỗi cài báo thức: " + ex.getMessage());
+            return;
+        }
+        String requestString = String.format("ALARM_SET:%s:%02d:%02d", alarmId, h, m);
+        logActivity("Đã gửi yêu cầu cài báo thức " + h + ":" + m + " đến server. ID: " + alarmId);
+        pool.request(requestString).whenCompleteAsync((response, ex) -> {
+            if (ex != null) {
+                logRequestFailure(ex, "Lỗi cài báo thức: ");
+                return;
             }
-        });
+            logActivity("Phản hồi từ server: " + response);
+            if (response.contains("thành công")) {
+                onSuccess.run();
+            }
+        }, requestExecutor);
     }
 
     private void removeServerAlarm(AlarmItem item) {
-        if (socket == null) {
+        if (pool == null) {
             logActivity("Socket chưa sẵn sàng");
             return;
         }
-        scheduler.execute(() -> {
-            try {
-                String requestString = "ALARM_CANCEL:" + item.id;
-                byte[] req = requestString.getBytes("UTF-8");
-                InetAddress addr = InetAddress.getByName(serverHost);
-                DatagramPacket p = new DatagramPacket(req, req.length, addr, serverPort);
-                socket.send(p);
-                logActivity("Đã gửi yêu cầu hủy báo thức " + item.label + " đến server. ID: " + item.id);
-
-                String response = waitForResponse(SOCKET_TIMEOUT_MS);
-                if (response == null) {
-                    logActivity("Hết thời gian chờ (không có phản hồi)");
-                    return;
-                }
-                logActivity("Phản hồi từ server: " + response);
-                if (response.contains("thành công")) {
-                    SwingUtilities.invokeLater(() -> alarmListModel.removeElement(item));
-                }
-            } catch (Exception ex) {
-                logActivity("Lỗi hủy báo thức: " + ex.getMessage());
+        try {
+            selectServer();
+        } catch (Exception ex) {
+            logActivity("Lỗi hủy báo thức: " + ex.getMessage());
+            return;
+        }
+        logActivity("Đã gửi yêu cầu hủy báo thức " + item.label + " đến server. ID: " + item.id);
+        pool.request("ALARM_CANCEL:" + item.id).whenCompleteAsync((response, ex) -> {
+            if (ex != null) {
+                logRequestFailure(ex, "Lỗi hủy báo thức: ");
+                return;
             }
-        });
+            logActivity("Phản hồi từ server: " + response);
+            if (response.contains("thành công")) {
+                SwingUtilities.invokeLater(() -> alarmListModel.removeElement(item));
+            }
+        }, requestExecutor);
     }
 
     private void cancelAllServerAlarms() {
-        if (socket == null) {
+        if (pool == null) {
             logActivity("Socket chưa sẵn sàng");
             return;
         }
-        scheduler.execute(() -> {
-            try {
-                String requestString = "ALARM_CANCEL_ALL";
-                byte[] req = requestString.getBytes("UTF-8");
-                InetAddress addr = InetAddress.getByName(serverHost);
-                DatagramPacket p = new DatagramPacket(req, req.length, addr, serverPort);
-                socket.send(p);
-                logActivity("Đã gửi yêu cầu hủy tất cả báo thức đến server.");
-
-                String response = waitForResponse(SOCKET_TIMEOUT_MS);
-                if (response == null) {
-                    logActivity("Hết thời gian chờ (không có phản hồi)");
-                    return;
-                }
-                logActivity("Phản hồi từ server: " + response);
-                if (response.contains("thành công")) {
-                    SwingUtilities.invokeLater(alarmListModel::clear);
-                }
-            } catch (Exception ex) {
-                logActivity("Lỗi hủy tất cả báo thức: " + ex.getMessage());
+        try {
+            selectServer();
+        } catch (Exception ex) {
+            logActivity("Lỗi hủy tất cả báo thức: " + ex.getMessage());
+            return;
+        }
+        logActivity("Đã gửi yêu cầu hủy tất cả báo thức đến server.");
+        pool.request("ALARM_CANCEL_ALL").whenCompleteAsync((response, ex) -> {
+            if (ex != null) {
+                logRequestFailure(ex, "Lỗi hủy tất cả báo thức: ");
+                return;
             }
-        });
+            logActivity("Phản hồi từ server: " + response);
+            if (response.contains("thành công")) {
+                SwingUtilities.invokeLater(alarmListModel::clear);
+            }
+        }, requestExecutor);
     }
 
     // Shutdown
     private void shutdown() {
         try {
             cancelAutoSync();
+            stopBroadcastListening();
+            localAlarms.stop();
             stopCountdown();
-            if (listenerThread != null) listenerThread.interrupt();
-            if (socket != null && !socket.isClosed()) socket.close();
+            if (pool != null) pool.close();
             scheduler.shutdownNow();
+            requestExecutor.shutdownNow();
             logActivity("Client tắt");
         } catch (Exception e) {
             // ignore
@@ -655,6 +933,8 @@ public class ClientGUI extends JFrame {
     }
 
     public static void main(String[] args) {
+        // Nhật ký client ít quan trọng: gom ghi mỗi giây, không fsync, xoay theo 1 MB
+        FileUtils.configure(1000, AsyncFileLogger.FsyncPolicy.NEVER, 1024 * 1024, 0, 2);
         try {
             for (UIManager.LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
                 if ("Nimbus".equals(info.getName())) {
@@ -675,10 +955,15 @@ public class ClientGUI extends JFrame {
     private static class AlarmItem {
         private final String id;
         private final String label;
+        private final LocalTime time;
+        private final boolean local;
+        private volatile boolean backedUp; // báo thức cục bộ đã được server xác nhận sao lưu
 
-        public AlarmItem(String id, String label) {
+        public AlarmItem(String id, String label, LocalTime time, boolean local) {
             this.id = id;
             this.label = label;
+            this.time = time;
+            this.local = local;
         }
 
         @Override
@@ -0,0 +1,200 @@
+// File: ClockFilter.java
+package btl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Bộ lọc và điều chỉnh đồng hồ phía client (theo tinh thần clock filter của NTP).
+ * - Giữ cửa sổ trượt các mẫu (offset, delay); mẫu có delay nhỏ nhất được tin cậy nhất
+ * - Loại mẫu lệch bất thường bằng median/MAD trên nửa cửa sổ có delay thấp
+ * - Ước lượng tần số trôi (ppm) bằng hồi quy tuyến tính trên các offset đã chọn
+ * - Độ lệch được "slew" dần về giá trị mới thay vì nhảy, trừ khi chênh quá STEP_THRESHOLD_NANOS
+ * Mọi mốc thời gian nội bộ dùng System.nanoTime() nên không bị ảnh hưởng khi đồng hồ máy bị chỉnh.
+ */
+final class ClockFilter {
+    static final int DEFAULT_WINDOW = 8;
+
+    /** Chênh lệch lớn hơn ngưỡng này thì nhảy thẳng tới giá trị mới (ví dụ lần đồng bộ đầu tiên). */
+    static final long STEP_THRESHOLD_NANOS = 1_000_000_000L;
+    /** Tốc độ slew tối đa: 20 ms cho mỗi giây trôi qua. */
+    static final double MAX_SLEW_RATE = 0.020;
+    /** Giới hạn tần số trôi ước lượng (±500 ppm như NTP). */
+    static final double MAX_FREQUENCY = 500e-6;
+    private static final long MIN_OUTLIER_BOUND_NANOS = 1_000_000L;
+    private static final long MIN_FREQUENCY_SPAN_NANOS = 30_000_000_000L;
+    private static final int FREQUENCY_POINTS = 16;
+
+    /** Kết quả của một lần thêm mẫu. */
+    static final class Result {
+        final boolean accepted;
+        final boolean stepped;
+        final long offsetNanos;
+        final long delayNanos;
+        /** Thời điểm đơn điệu của mẫu (offsetNanos, delayNanos). */
+        final long monoNanos;
+
+        Result(boolean accepted, boolean stepped, long offsetNanos, long delayNanos, long monoNanos) {
+            this.accepted = accepted;
+            this.stepped = stepped;
+            this.offsetNanos = offsetNanos;
+            this.delayNanos = delayNanos;
+            this.monoNanos = monoNanos;
+        }
+    }
+
+    private static final class Sample {
+        final long offset;
+        final long delay;
+        final long mono;
+
+        Sample(long offset, long delay, long mono) {
+            this.offset = offset;
+            this.delay = delay;
+            this.mono = mono;
+        }
+    }
+
+    private final int window;
+    private final ArrayDeque<Sample> samples = new ArrayDeque<>();
+    private final ArrayDeque<Sample> chosen = new ArrayDeque<>();
+
+    private boolean initialized = false;
+    private long baseOffset;      // độ lệch tại baseMono
+    private long baseMono;
+    private long pending;         // phần còn phải slew kể từ baseMono
+    private double frequency;     // ns/ns
+    private Sample lastChosen;
+
+    ClockFilter() {
+        this(DEFAULT_WINDOW);
+    }
+
+    ClockFilter(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    synchronized boolean isInitialized() {
+        return initialized;
+    }
+
+    synchronized double frequencyPpm() {
+        return frequency * 1e6;
+    }
+
+    /** Độ lệch (server - client, nano giây) áp dụng tại thời điểm đơn điệu mono. */
+    synchronized long offsetNanos(long mono) {
+        if (!initialized) return 0;
+        long elapsed = mono - baseMono;
+        long drift = (long) (frequency * elapsed);
+        long maxSlew = (long) (MAX_SLEW_RATE * Math.max(0, elapsed));
+        long slewed = pending >= 0 ? Math.min(pending, maxSlew) : Math.max(pending, -maxSlew);
+        return baseOffset + drift + slewed;
+    }
+
+    /**
+     * Thêm một mẫu đo được lúc mono (System.nanoTime() khi nhận phản hồi).
+     */
+    synchronized Result addSample(long offsetNanos, long delayNanos, long mono) {
+        if (delayNanos < 0) delayNanos = 0;
+        samples.addLast(new Sample(offsetNanos, delayNanos, mono));
+        while (samples.size() > window) samples.removeFirst();
+
+        Sample best = selectBest();
+        if (best == null) {
+            return new Result(false, false, offsetNanos, delayNanos, mono);
+        }
+        if (best == lastChosen) {
+            // Mẫu mới không tốt hơn mẫu đã dùng - giữ nguyên hiệu chỉnh hiện tại
+            return new Result(false, false, best.offset, best.delay, best.mono);
+        }
+        lastChosen = best;
+        // Độ lệch đang áp dụng phải tính trước khi đổi tần số để đường cong liên tục
+        long current = offsetNanos(mono);
+        chosen.addLast(best);
+        while (chosen.size() > FREQUENCY_POINTS) chosen.removeFirst();
+        updateFrequency();
+
+        // Quy mẫu đã chọn về thời điểm hiện tại theo tần số trôi
+        long target = best.offset + (long) (frequency * (mono - best.mono));
+        boolean stepped;
+        if (!initialized) {
+            baseOffset = target;
+            pending = 0;
+            initialized = true;
+            stepped = true;
+        } else {
+            stepped = Math.abs(target - current) > STEP_THRESHOLD_NANOS;
+            baseOffset = stepped ? target : current;
+            pending = stepped ? 0 : target - current;
+        }
+        baseMono = mono;
+        return new Result(true, stepped, best.offset, best.delay, best.mono);
+    }
+
+    synchronized void reset() {
+        samples.clear();
+        chosen.clear();
+        initialized = false;
+        lastChosen = null;
+        frequency = 0;
+        pending = 0;
+    }
+
+    /** Chọn mẫu delay nhỏ nhất sau khi loại bỏ các offset bất thường. */
+    private Sample selectBest() {
+        Sample[] byDelay = samples.toArray(new Sample[0]);
+        Arrays.sort(byDelay, (a, b) -> Long.compare(a.delay, b.delay));
+        int n = Math.max(1, (byDelay.length + 1) / 2);
+
+        long[] offsets = new long[n];
+        for (int i = 0; i < n; i++) offsets[i] = byDelay[i].offset;
+        long median = median(offsets);
+        long[] deviations = new long[n];
+        for (int i = 0; i < n; i++) deviations[i] = Math.abs(offsets[i] - median);
+        long mad = median(deviations);
+        long bound = Math.max(MIN_OUTLIER_BOUND_NANOS, Math.max(3 * mad, byDelay[0].delay));
+
+        for (int i = 0; i < n; i++) {
+            if (Math.abs(byDelay[i].offset - median) <= bound) {
+                return byDelay[i];
+            }
+        }
+        return null;
+    }
+
+    private static long median(long[] values) {
+        long[] copy = values.clone();
+        Arrays.sort(copy);
+        int mid = copy.length / 2;
+        return copy.length % 2 == 1 ? copy[mid] : (copy[mid - 1] + copy[mid]) / 2;
+    }
+
+    /**
+     * Hồi quy tuyến tính có trọng số (1 / sai số^2, sai số tối đa của một mẫu là delay/2)
+     * offset theo thời gian đơn điệu trên các mẫu đã chọn.
+     */
+    private void updateFrequency() {
+        if (chosen.size() < 3) return;
+        long first = chosen.peekFirst().mono;
+        if (chosen.peekLast().mono - first < MIN_FREQUENCY_SPAN_NANOS) return;
+
+        double sumW = 0, sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        long offset0 = chosen.peekFirst().offset;
+        for (Sample s : chosen) {
+            double err = s.delay / 2.0 + MIN_OUTLIER_BOUND_NANOS;
+            double w = 1.0 / (err * err);
+            double x = s.mono - first;
+            double y = s.offset - offset0;
+            sumW += w;
+            sumX += w * x;
+            sumY += w * y;
+            sumXX += w * x * x;
+            sumXY += w * x * y;
+        }
+        double denom = sumW * sumXX - sumX * sumX;
+        if (denom <= 0) return;
+        double slope = (sumW * sumXY - sumX * sumY) / denom;
+        frequency = Math.max(-MAX_FREQUENCY, Math.min(MAX_FREQUENCY, slope));
+    }
+}
@@ -0,0 +1,135 @@
+// File: EventLogTableModel.java
+package btl;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayDeque;
+
+/**
+ * TableModel nhật ký có sức chứa cố định cho ServerGUI và ClientGUI.
+ * - Luồng bất kỳ gọi append(): chỉ thêm vào hộp chờ, không tạo Runnable cho EDT
+ * - Một Swing Timer (~20 Hz) chuyển cả lô vào ring buffer và phát một sự kiện chèn/xóa cho cả lô
+ * - Dòng cũ nhất bị đẩy ra khi đầy; nếu một lô vượt quá sức chứa, phần thừa bị bỏ và được đếm
+ * - Thời gian lưu dạng epoch millis, chỉ định dạng khi JTable vẽ dòng đó
+ */
+final class EventLogTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMNS = {"Thời gian", "Sự kiện"};
+    private static final int REFRESH_MS = 50;
+
+    private final int capacity;
+    private final long[] times;
+    private final String[] messages;
+    private int first; // chỉ số vật lý của dòng 0
+    private int size;
+
+    private final ArrayDeque<Object[]> inbox = new ArrayDeque<>(); // khóa bằng chính nó
+    private long dropped; // khóa bằng inbox
+    private long rateWindowStart = System.currentTimeMillis();
+    private int rateCount;
+    private int ratePerSecond;
+
+    private JTable table;
+    private JLabel status;
+
+    EventLogTableModel(int capacity) {
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.messages = new String[capacity];
+    }
+
+    /** Gắn model vào bảng (gọi trên EDT): tự cuộn khi đang ở cuối và cập nhật nhãn trạng thái (có thể null). */
+    void attach(JTable table, JLabel status) {
+        this.table = table;
+        this.status = status;
+        table.setModel(this);
+        new Timer(REFRESH_MS, e -> drain()).start();
+    }
+
+    /** Thêm một sự kiện với thời điểm hiện tại. An toàn với mọi luồng, không chặn. */
+    void append(String message) {
+        long now = System.currentTimeMillis();
+        synchronized (inbox) {
+            if (inbox.size() >= capacity) {
+                inbox.pollFirst(); // đằng nào cũng bị đẩy khỏi bảng ở lần làm mới tới
+                dropped++;
+            }
+            inbox.addLast(new Object[]{now, message});
+        }
+    }
+
+    private void drain() {
+        Object[][] batch;
+        long droppedNow;
+        synchronized (inbox) {
+            batch = inbox.toArray(new Object[0][]);
+            inbox.clear();
+            droppedNow = dropped;
+        }
+        long now = System.currentTimeMillis();
+        rateCount += batch.length;
+        if (now - rateWindowStart >= 1000) {
+            ratePerSecond = (int) (rateCount * 1000L / (now - rateWindowStart));
+            rateCount = 0;
+            rateWindowStart = now;
+        }
+        if (batch.length > 0) {
+            boolean atBottom = isAtBottom();
+            int oldSize = size;
+            for (Object[] event : batch) {
+                int slot = (first + size) % capacity;
+                if (size == capacity) {
+                    first = (first + 1) % capacity;
+                } else {
+                    size++;
+                }
+                times[slot] = (Long) event[0];
+                messages[slot] = (String) event[1];
+            }
+            int evicted = oldSize + batch.length - size;
+            if (evicted > 0) {
+                fireTableRowsDeleted(0, evicted - 1);
+            }
+            fireTableRowsInserted(size - batch.length, size - 1);
+            if (atBottom && table != null) {
+                table.scrollRectToVisible(table.getCellRect(size - 1, 0, true));
+            }
+        }
+        if (status != null) {
+            String text = size + "/" + capacity + " dòng, " + ratePerSecond + " sự kiện/giây";
+            if (droppedNow > 0) {
+                text += ", bỏ qua " + droppedNow + " (quá nhanh để hiển thị)";
+            }
+            if (!text.equals(status.getText())) {
+                status.setText(text);
+            }
+        }
+    }
+
+    private boolean isAtBottom() {
+        if (table == null || !(table.getParent() instanceof JViewport)) return true;
+        JViewport viewport = (JViewport) table.getParent();
+        return viewport.getViewRect().getMaxY() >= table.getHeight() - table.getRowHeight();
+    }
+
+    @Override
+    public int getRowCount() {
+        return size;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int slot = (first + row) % capacity;
+        return column == 0 ? Utils.formatFull(times[slot]) : messages[slot];
+    }
+}
@@ -0,0 +1,501 @@
+// File: ExpressionCompiler.java
+package btl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Biên dịch biểu thức số học thành cây closure, có bộ đệm LRU theo văn bản biểu thức.
+ * - Cú pháp: + - * / % ^ (lũy thừa, kết hợp phải), ngoặc, số thực, biến, hằng pi / e,
+ *   hàm sin cos tan asin acos atan sinh cosh tanh sqrt cbrt abs ln log log2 exp floor ceil round sign
+ *   và min max pow atan2 hypot (hai tham số); round làm tròn nửa lên như Math.round: round(2.5) = 3, round(-2.5) = -2
+ * - Mỗi biểu thức chỉ được phân tích một lần; biến được gán chỉ số ô lúc biên dịch nên lần tính sau
+ *   chỉ là duyệt cây trên mảng double (JIT nội tuyến được), nhánh toàn hằng được tính sẵn
+ * - Giới hạn độ dài và độ sâu để biểu thức từ mạng không làm tràn stack
+ */
+final class ExpressionCompiler {
+
+    static final int MAX_LENGTH = 512;
+    private static final int MAX_DEPTH = 64;
+
+    /** Lỗi cú pháp / thiếu biến: thông điệp hiển thị được cho client. */
+    static final class ExpressionException extends Exception {
+        ExpressionException(String message) {
+            super(message);
+        }
+    }
+
+    /** Một nút của cây biểu thức. */
+    interface Node {
+        double eval(double[] vars);
+    }
+
+    /** Biểu thức đã biên dịch (bất biến, dùng chung giữa các luồng). */
+    static final class Compiled {
+        final String source;
+        private final Node root;
+        private final String[] variables;
+
+        Compiled(String source, Node root, String[] variables) {
+            this.source = source;
+            this.root = root;
+            this.variables = variables;
+        }
+
+        /** Tên biến theo thứ tự ô trong mảng giá trị. */
+        String[] variables() {
+            return variables.clone();
+        }
+
+        int variableCount() {
+            return variables.length;
+        }
+
+        int slotOf(String name) {
+            for (int i = 0; i < variables.length; i++) {
+                if (variables[i].equals(name)) return i;
+            }
+            return -1;
+        }
+
+        double evaluate(double... values) {
+            return root.eval(values);
+        }
+    }
+
+    private final Map<String, Compiled> cache;
+    private long hits;
+    private long misses;
+
+    /** @param capacity số biểu thức đã biên dịch giữ trong bộ đệm */
+    ExpressionCompiler(final int capacity) {
+        this.cache = new LinkedHashMap<String, Compiled>(Math.min(capacity, 1024) * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Compiled> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Lấy từ bộ đệm hoặc biên dịch (phân tích nằm ngoài khóa, chỉ thao tác bộ đệm mới giữ khóa). */
+    Compiled compile(String source) throws ExpressionException {
+        synchronized (cache) {
+            Compiled c = cache.get(source);
+            if (c != null) {
+                hits++;
+                return c;
+            }
+            misses++;
+        }
+        Compiled compiled = new Parser(source).parse();
+        synchronized (cache) {
+            cache.put(source, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Tính "biểu thức[;tên=giá trị,...]", ví dụ "sqrt(x^2 + y^2);x=3,y=4".
+     * Biến thiếu giá trị là lỗi; giá trị thừa (không có trong biểu thức) bị bỏ qua.
+     */
+    double evaluate(String request) throws ExpressionException {
+        int semi = request.indexOf(';');
+        Compiled c = compile((semi < 0 ? request : request.substring(0, semi)).trim());
+        double[] values = new double[c.variableCount()];
+        boolean[] bound = new boolean[values.length];
+        if (semi >= 0) {
+            for (String binding : request.substring(semi + 1).split(",")) {
+                if (binding.trim().isEmpty()) continue;
+                int eq = binding.indexOf('=');
+                if (eq < 0) throw new ExpressionException("Gán biến không hợp lệ: " + binding.trim());
+                int slot = c.slotOf(binding.substring(0, eq).trim());
+                if (slot < 0) continue;
+                try {
+                    values[slot] = Double.parseDouble(binding.substring(eq + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new ExpressionException("Giá trị không phải là số: " + binding.trim());
+                }
+                bound[slot] = true;
+            }
+        }
+        for (int i = 0; i < bound.length; i++) {
+            if (!bound[i]) throw new ExpressionException("Thiếu giá trị biến " + c.variables[i]);
+        }
+        return c.evaluate(values);
+    }
+
+    String cacheStats() {
+        synchronized (cache) {
+            return String.format(Locale.ROOT, "%d biểu thức, %d lần trúng, %d lần biên dịch", cache.size(), hits, misses);
+        }
+    }
+
+    // ============================
+    // Phân tích cú pháp (đệ quy xuống)
+    // ============================
+
+    private static final class Parser {
+        private final String src;
+        private final List<String> variables = new ArrayList<>();
+        private int pos;
+        private int depth;
+
+        Parser(String src) {
+            this.src = src;
+        }
+
+        Compiled parse() throws ExpressionException {
+            if (src.isEmpty()) throw new ExpressionException("Biểu thức rỗng");
+            if (src.length() > MAX_LENGTH) throw new ExpressionException("Biểu thức quá dài (tối đa " + MAX_LENGTH + " ký tự)");
+            Node root = expression();
+            skipSpaces();
+            if (pos < src.length()) throw error("Ký tự không mong đợi '" + src.charAt(pos) + "'");
+            return new Compiled(src, root, variables.toArray(new String[0]));
+        }
+
+        // expression := term (('+' | '-') term)*
+        private Node expression() throws ExpressionException {
+            enter();
+            Node left = term();
+            while (true) {
+                if (eat('+')) left = add(left, term());
+                else if (eat('-')) left = subtract(left, term());
+                else break;
+            }
+            depth--;
+            return left;
+        }
+
+        // term := unary (('*' | '/' | '%') unary)*
+        private Node term() throws ExpressionException {
+            Node left = unary();
+            while (true) {
+                if (eat('*')) left = multiply(left, unary());
+                else if (eat('/')) left = divide(left, unary());
+                else if (eat('%')) left = remainder(left, unary());
+                else break;
+            }
+            return left;
+        }
+
+        // unary := ('-' | '+') unary | power      (-2^2 = -(2^2))
+        private Node unary() throws ExpressionException {
+            if (eat('-')) {
+                enter();
+                Node operand = unary();
+                depth--;
+                return negate(operand);
+            }
+            if (eat('+')) {
+                enter();
+                Node operand = unary();
+                depth--;
+                return operand;
+            }
+            return power();
+        }
+
+        // power := primary ('^' unary)?             (kết hợp phải: 2^3^2 = 2^9)
+        private Node power() throws ExpressionException {
+            Node base = primary();
+            if (eat('^')) {
+                enter();
+                Node exponent = unary();
+                depth--;
+                return fold(pow(base, exponent));
+            }
+            return base;
+        }
+
+        private Node primary() throws ExpressionException {
+            skipSpaces();
+            if (pos >= src.length()) throw error("Thiếu toán hạng");
+            char c = src.charAt(pos);
+            if (c == '(') {
+                pos++;
+                Node inner = expression();
+                expect(')');
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') return number();
+            if (Character.isLetter(c) || c == '_') {
+                String name = identifier();
+                if (eat('(')) return function(name);
+                switch (name) {
+                    case "pi": return constant(Math.PI);
+                    case "e": return constant(Math.E);
+                    default: return variable(name);
+                }
+            }
+            throw error("Ký tự không mong đợi '" + c + "'");
+        }
+
+        private Node number() throws ExpressionException {
+            int start = pos;
+            while (pos < src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.')) pos++;
+            if (pos < src.length() && (src.charAt(pos) == 'e' || src.charAt(pos) == 'E')) {
+                int mark = pos++;
+                if (pos < src.length() && (src.charAt(pos) == '+' || src.charAt(pos) == '-')) pos++;
+                if (pos < src.length() && Character.isDigit(src.charAt(pos))) {
+                    while (pos < src.length() && Character.isDigit(src.charAt(pos))) pos++;
+                } else {
+                    pos = mark; // "2e" không phải số mũ: để phần sau báo lỗi ký tự thừa
+                }
+            }
+            try {
+                return constant(Double.parseDouble(src.substring(start, pos)));
+            } catch (NumberFormatException e) {
+                throw error("Số không hợp lệ '" + src.substring(start, pos) + "'");
+            }
+        }
+
+        private String identifier() {
+            int start = pos;
+            while (pos < src.length() && (Character.isLetterOrDigit(src.charAt(pos)) || src.charAt(pos) == '_')) pos++;
+            return src.substring(start, pos);
+        }
+
+        private Node function(String name) throws ExpressionException {
+            List<Node> args = new ArrayList<>(2);
+            skipSpaces();
+            if (!eat(')')) {
+                do {
+                    args.add(expression());
+                } while (eat(','));
+                expect(')');
+            }
+            Node f = Functions.create(name.toLowerCase(Locale.ROOT), args);
+            if (f == null) throw error("Hàm không hỗ trợ hoặc sai số tham số: " + name + "/" + args.size());
+            return fold(f);
+        }
+
+        private Node variable(String name) {
+            int slot = variables.indexOf(name);
+            if (slot < 0) {
+                slot = variables.size();
+                variables.add(name);
+            }
+            final int index = slot;
+            return vars -> vars[index];
+        }
+
+        private void enter() throws ExpressionException {
+            if (++depth > MAX_DEPTH) throw error("Biểu thức lồng quá sâu");
+        }
+
+        private boolean eat(char c) {
+            skipSpaces();
+            if (pos < src.length() && src.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) throws ExpressionException {
+            if (!eat(c)) throw error("Thiếu '" + c + "'");
+        }
+
+        private void skipSpaces() {
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+        }
+
+        private ExpressionException error(String message) {
+            return new ExpressionException(message + " tại vị trí " + (pos + 1));
+        }
+    }
+
+    // ============================
+    // Nút cây (nhánh toàn hằng được tính sẵn lúc biên dịch)
+    // ============================
+
+    private static final class Constant implements Node {
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double eval(double[] vars) {
+            return value;
+        }
+    }
+
+    private static Node constant(double value) {
+        return new Constant(value);
+    }
+
+    private static boolean isConstant(Node n) {
+        return n instanceof Constant;
+    }
+
+    /** Nút có mọi con là hằng được thay bằng hằng (tính một lần lúc biên dịch). */
+    private static Node fold(Node n) {
+        return n instanceof Folding && ((Folding) n).constantChildren() ? constant(n.eval(null)) : n;
+    }
+
+    private interface Folding extends Node {
+        boolean constantChildren();
+    }
+
+    private abstract static class Binary implements Folding {
+        final Node l;
+        final Node r;
+
+        Binary(Node l, Node r) {
+            this.l = l;
+            this.r = r;
+        }
+
+        @Override
+        public boolean constantChildren() {
+            return isConstant(l) && isConstant(r);
+        }
+    }
+
+    private static Node add(Node l, Node r) {
+        return fold(new Binary(l, r) {
+            @Override
+            public double eval(double[] v) {
+                return l.eval(v) + r.eval(v);
+            }
+        });
+    }
+
+    private static Node subtract(Node l, Node r) {
+        return fold(new Binary(l, r) {
+            @Override
+            public double eval(double[] v) {
+                return l.eval(v) - r.eval(v);
+            }
+        });
+    }
+
+    private static Node multiply(Node l, Node r) {
+        return fold(new Binary(l, r) {
+            @Override
+            public double eval(double[] v) {
+                return l.eval(v) * r.eval(v);
+            }
+        });
+    }
+
+    private static Node divide(Node l, Node r) {
+        return fold(new Binary(l, r) {
+            @Override
+            public double eval(double[] v) {
+                return l.eval(v) / r.eval(v);
+            }
+        });
+    }
+
+    private static Node remainder(Node l, Node r) {
+        return fold(new Binary(l, r) {
+            @Override
+            public double eval(double[] v) {
+                return l.eval(v) % r.eval(v);
+            }
+        });
+    }
+
+    private static Node pow(Node l, Node r) {
+        if (isConstant(r) && !isConstant(l)) {
+            // Số mũ hằng nhỏ: nhân trực tiếp thay vì Math.pow
+            double e = ((Constant) r).value;
+            if (e == 2) return new Unary(l) {
+                @Override
+                public double eval(double[] v) {
+                    double x = a.eval(v);
+                    return x * x;
+                }
+            };
+            if (e == 0.5) return new Unary(l) {
+                @Override
+                public double eval(double[] v) {
+                    return Math.sqrt(a.eval(v));
+                }
+            };
+        }
+        return new Binary(l, r) {
+            @Override
+            public double eval(double[] v) {
+                return Math.pow(l.eval(v), r.eval(v));
+            }
+        };
+    }
+
+    private static Node negate(Node n) {
+        return fold(new Unary(n) {
+            @Override
+            public double eval(double[] v) {
+                return -a.eval(v);
+            }
+        });
+    }
+
+    private abstract static class Unary implements Folding {
+        final Node a;
+
+        Unary(Node a) {
+            this.a = a;
+        }
+
+        @Override
+        public boolean constantChildren() {
+            return isConstant(a);
+        }
+    }
+
+    /** Bảng hàm: tạo nút theo tên và số tham số, null nếu không hỗ trợ. */
+    private static final class Functions {
+        /** Làm tròn nửa lên như Math.round nhưng giữ kiểu double: NaN, vô cực và số quá lớn giữ nguyên. */
+        static double round(double x) {
+            return Math.abs(x) < 0x1p52 ? Math.round(x) : x;
+        }
+
+        static Node create(String name, List<Node> args) {
+            if (args.size() == 1) {
+                Node a = args.get(0);
+                switch (name) {
+                    case "sin": return new Unary(a) { @Override public double eval(double[] v) { return Math.sin(this.a.eval(v)); } };
+                    case "cos": return new Unary(a) { @Override public double eval(double[] v) { return Math.cos(this.a.eval(v)); } };
+                    case "tan": return new Unary(a) { @Override public double eval(double[] v) { return Math.tan(this.a.eval(v)); } };
+                    case "asin": return new Unary(a) { @Override public double eval(double[] v) { return Math.asin(this.a.eval(v)); } };
+                    case "acos": return new Unary(a) { @Override public double eval(double[] v) { return Math.acos(this.a.eval(v)); } };
+                    case "atan": return new Unary(a) { @Override public double eval(double[] v) { return Math.atan(this.a.eval(v)); } };
+                    case "sinh": return new Unary(a) { @Override public double eval(double[] v) { return Math.sinh(this.a.eval(v)); } };
+                    case "cosh": return new Unary(a) { @Override public double eval(double[] v) { return Math.cosh(this.a.eval(v)); } };
+                    case "tanh": return new Unary(a) { @Override public double eval(double[] v) { return Math.tanh(this.a.eval(v)); } };
+                    case "sqrt": return new Unary(a) { @Override public double eval(double[] v) { return Math.sqrt(this.a.eval(v)); } };
+                    case "cbrt": return new Unary(a) { @Override public double eval(double[] v) { return Math.cbrt(this.a.eval(v)); } };
+                    case "abs": return new Unary(a) { @Override public double eval(double[] v) { return Math.abs(this.a.eval(v)); } };
+                    case "ln": return new Unary(a) { @Override public double eval(double[] v) { return Math.log(this.a.eval(v)); } };
+                    case "log": return new Unary(a) { @Override public double eval(double[] v) { return Math.log10(this.a.eval(v)); } };
+                    case "log2": return new Unary(a) { @Override public double eval(double[] v) { return Math.log(this.a.eval(v)) / Math.log(2); } };
+                    case "exp": return new Unary(a) { @Override public double eval(double[] v) { return Math.exp(this.a.eval(v)); } };
+                    case "floor": return new Unary(a) { @Override public double eval(double[] v) { return Math.floor(this.a.eval(v)); } };
+                    case "ceil": return new Unary(a) { @Override public double eval(double[] v) { return Math.ceil(this.a.eval(v)); } };
+                    case "round": return new Unary(a) { @Override public double eval(double[] v) { return round(this.a.eval(v)); } };
+                    case "sign": return new Unary(a) { @Override public double eval(double[] v) { return Math.signum(this.a.eval(v)); } };
+                    default: return null;
+                }
+            }
+            if (args.size() == 2) {
+                Node a = args.get(0), b = args.get(1);
+                switch (name) {
+                    case "min": return new Binary(a, b) { @Override public double eval(double[] v) { return Math.min(l.eval(v), r.eval(v)); } };
+                    case "max": return new Binary(a, b) { @Override public double eval(double[] v) { return Math.max(l.eval(v), r.eval(v)); } };
+                    case "pow": return pow(a, b);
+                    case "atan2": return new Binary(a, b) { @Override public double eval(double[] v) { return Math.atan2(l.eval(v), r.eval(v)); } };
+                    case "hypot": return new Binary(a, b) { @Override public double eval(double[] v) { return Math.hypot(l.eval(v), r.eval(v)); } };
+                    default: return null;
+                }
+            }
+            return null;
+        }
+    }
+}
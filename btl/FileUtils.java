@@ -1,27 +1,52 @@
 package btl;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 /**
- * Simple append-only logger
+ * Simple append-only logger.
+ * Ghi bất đồng bộ qua AsyncFileLogger: luồng gọi không bao giờ chờ đĩa; nhật ký được ghi nốt khi JVM tắt.
+ * Cấu hình bằng configure(...) (mỗi chương trình chọn mặc định của mình); thuộc tính hệ thống
+ * -Dbtl.log.flushMillis, -Dbtl.log.fsync (NEVER / ON_ROTATE / EVERY_FLUSH), -Dbtl.log.maxBytes,
+ * -Dbtl.log.rotateMillis, -Dbtl.log.backups luôn được ưu tiên hơn giá trị truyền vào.
  */
 public class FileUtils {
-    private static final DateTimeFormatter DF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final AsyncFileLogger LOGGER = new AsyncFileLogger(8192);
 
-    public static synchronized void append(String filename, String message) {
-        String line = "[" + LocalDateTime.now().format(DF) + "] " + message;
-        PrintWriter pw = null;
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(LOGGER::close, "File-Logger-Shutdown"));
+        configure(0, AsyncFileLogger.FsyncPolicy.NEVER, 10L * 1024 * 1024, 0, 3);
+    }
+
+    public static void append(String filename, String message) {
+        LOGGER.append(filename, message);
+    }
+
+    /** Số dòng nhật ký đã bị bỏ vì hàng đợi ghi đầy. */
+    public static long droppedCount() {
+        return LOGGER.droppedCount();
+    }
+
+    /**
+     * Đặt chính sách ghi cho mọi file nhật ký (xem AsyncFileLogger.setFlushInterval / setFsyncPolicy / setRotation).
+     * @param maxBytes xoay vòng khi file vượt dung lượng này, 0 = không
+     * @param rotateMillis xoay vòng khi file đã mở quá khoảng này, 0 = không
+     */
+    static void configure(long flushMillis, AsyncFileLogger.FsyncPolicy fsync, long maxBytes, long rotateMillis,
+                          int backups) {
+        LOGGER.setFlushInterval(Long.getLong("btl.log.flushMillis", flushMillis));
+        LOGGER.setFsyncPolicy(fsyncProperty(fsync));
+        LOGGER.setRotation(Long.getLong("btl.log.maxBytes", maxBytes), Long.getLong("btl.log.rotateMillis", rotateMillis),
+                Integer.getInteger("btl.log.backups", backups));
+    }
+
+    private static AsyncFileLogger.FsyncPolicy fsyncProperty(AsyncFileLogger.FsyncPolicy fallback) {
+        String value = System.getProperty("btl.log.fsync");
+        if (value == null) return fallback;
         try {
-            pw = new PrintWriter(new FileWriter(filename, true));
-            pw.println(line);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (pw != null) pw.close();
+            return AsyncFileLogger.FsyncPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("btl.log.fsync không hợp lệ: " + value + ", dùng " + fallback);
+            return fallback;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+// File: LatencyHistogram.java
+package btl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram độ trễ kiểu HDR (log-tuyến tính), ghi nhận không cấp phát bộ nhớ.
+ * - Mỗi khoảng [2^k, 2^(k+1)) chia thành 32 ô bằng nhau: sai số tương đối tối đa ~3%
+ * - Giá trị (đơn vị tùy người dùng, thường là nano giây) tới 2^45; lớn hơn dồn vào ô cuối
+ * - record() chỉ gồm vài phép tăng nguyên tử, an toàn cho nhiều luồng ghi cùng lúc
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_SHIFT = 40;
+    private static final int BUCKETS = SUB_COUNT + (MAX_SHIFT + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+        }
+    }
+
+    /**
+     * Ghi value và bù hiện tượng "coordinated omission" kiểu HdrHistogram: nếu một yêu cầu chậm hơn
+     * khoảng gửi mong đợi thì các yêu cầu lẽ ra đã được gửi trong lúc chờ cũng bị tính là chậm tương ứng.
+     */
+    void recordCorrected(long value, long expectedInterval) {
+        record(value);
+        if (expectedInterval <= 0) return;
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            record(missing);
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        if (shift > MAX_SHIFT) return BUCKETS - 1;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    /** Giá trị lớn nhất rơi vào ô bucket. */
+    static long highestEquivalent(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int shift = bucket / SUB_COUNT - 1;
+        long sub = bucket % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    /** Ảnh chụp bất biến để tính phân vị (các ô được đọc lần lượt, không khóa). */
+    static final class Snapshot {
+        private final long[] counts;
+        final long count;
+        final long sum;
+        final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /** @param percentile 0..100 */
+        long percentile(double percentile) {
+            if (count == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highestEquivalent(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
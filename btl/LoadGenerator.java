@@ -0,0 +1,429 @@
+// File: LoadGenerator.java
+package btl;
+
+import java.io.IOException;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Công cụ tạo tải không giao diện: mô phỏng hàng chục nghìn client ảo gửi tới TimeServer qua loopback.
+ * - Client ảo là logic (không phải socket): chúng được chia đều trên vài TimeClient, mỗi TimeClient một socket
+ * - Hỗn hợp lệnh TIME_REQUEST / PING / ALARM_SET-CANCEL / CALC_REQUEST theo trọng số
+ * - open: gửi theo lịch cố định (rate yêu cầu/giây) bất kể phản hồi; độ trễ tính từ thời điểm lẽ ra phải gửi,
+ *   nên không bị "coordinated omission" khi server chậm
+ * - closed: mỗi client ảo chỉ có một yêu cầu đang bay, chờ phản hồi + think time rồi gửi tiếp;
+ *   độ trễ được bù theo khoảng gửi mong đợi (think time)
+ * Chạy: java btl.LoadGenerator [--host=127.0.0.1] [--port=9876] [--embedded] [--mode=open|closed]
+ *   [--rate=5000] [--clients=10000] [--think-ms=1000] [--duration=30] [--warmup=5] [--sockets=8]
+ *   [--timeout-ms=1000] [--mix=time:50,ping:30,alarm:10,calc:10]
+ */
+public class LoadGenerator {
+
+    enum Op { TIME_REQUEST, PING, ALARM_SET, ALARM_CANCEL, CALC_REQUEST }
+
+    private static final Op[] OPS = Op.values();
+    private static final String[] CALC_OPERATORS = {"+", "-", "*", "/"};
+
+    /** Kết quả của một giai đoạn đo (khởi động hoặc đo chính thức). */
+    static final class Stats {
+        final LongAdder sent = new LongAdder();
+        final LongAdder ok = new LongAdder();
+        final LongAdder errorReplies = new LongAdder();
+        final LongAdder lost = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LatencyHistogram[] service = new LatencyHistogram[OPS.length];  // từ lúc gửi thật
+        final LatencyHistogram[] response = new LatencyHistogram[OPS.length]; // đã bù coordinated omission
+        final LatencyHistogram allResponse = new LatencyHistogram();
+        final long startNanos = System.nanoTime();
+
+        Stats() {
+            for (int i = 0; i < OPS.length; i++) {
+                service[i] = new LatencyHistogram();
+                response[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final boolean closedLoop;
+    private final double rate;
+    private final int clientCount;
+    private final long thinkNanos;
+    private final int socketCount;
+    private final long timeoutMs;
+    private final int[] mixWeights = new int[4]; // time, ping, alarm, calc (cộng dồn)
+    private final String alarmPrefix;
+
+    private TimeClient[] sockets;
+    private boolean[] hasAlarm; // chỉ luồng phát yêu cầu đọc/ghi (luồng điều phối hoặc LoadGen-Think)
+    private volatile Stats stats;
+    private volatile boolean stopping;
+    private final LongAdder inFlight = new LongAdder();
+    private ScheduledThreadPoolExecutor thinkTimer;
+
+    LoadGenerator(String host, int port, boolean closedLoop, double rate, int clientCount, long thinkMs,
+                  int socketCount, long timeoutMs, String mix) {
+        this.host = host;
+        this.port = port;
+        this.closedLoop = closedLoop;
+        this.rate = rate;
+        this.clientCount = clientCount;
+        this.thinkNanos = TimeUnit.MILLISECONDS.toNanos(thinkMs);
+        this.socketCount = socketCount;
+        this.timeoutMs = timeoutMs;
+        this.alarmPrefix = "lg" + Long.toString(System.currentTimeMillis() % 1_000_000L, 36) + "-";
+        parseMix(mix);
+    }
+
+    private void parseMix(String mix) {
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            if (kv.length != 2) throw new IllegalArgumentException("Sai định dạng --mix: " + part);
+            int weight = Integer.parseInt(kv[1].trim());
+            switch (kv[0].trim().toLowerCase(Locale.ROOT)) {
+                case "time": mixWeights[0] = weight; break;
+                case "ping": mixWeights[1] = weight; break;
+                case "alarm": mixWeights[2] = weight; break;
+                case "calc": mixWeights[3] = weight; break;
+                default: throw new IllegalArgumentException("Lệnh không hỗ trợ trong --mix: " + kv[0]);
+            }
+        }
+        for (int i = 1; i < mixWeights.length; i++) {
+            mixWeights[i] += mixWeights[i - 1]; // cộng dồn để chọn nhanh
+        }
+        if (mixWeights[mixWeights.length - 1] <= 0) throw new IllegalArgumentException("--mix không có lệnh nào");
+    }
+
+    // ============================
+    // Chạy
+    // ============================
+
+    void run(int warmupSeconds, int durationSeconds) throws IOException, InterruptedException {
+        sockets = new TimeClient[socketCount];
+        TimeClient.Listener quiet = new TimeClient.Listener() {
+            @Override
+            public void onAlarm(String message) {
+            }
+
+            @Override
+            public void onLog(String message) {
+            }
+        };
+        for (int i = 0; i < socketCount; i++) {
+            sockets[i] = new TimeClient(quiet, timeoutMs);
+            sockets[i].setReceiveBufferSize(4 << 20);
+            sockets[i].setServer(host, port);
+        }
+        hasAlarm = new boolean[clientCount];
+
+        System.out.printf(Locale.ROOT, "Tạo tải %s tới %s:%d: %d client ảo trên %d socket, %s, khởi động %d s, đo %d s%n",
+                closedLoop ? "closed-loop" : "open-loop", host, port, clientCount, socketCount,
+                closedLoop ? "think time " + thinkNanos / 1_000_000 + " ms" : String.format(Locale.ROOT, "%.0f yêu cầu/s", rate),
+                warmupSeconds, durationSeconds);
+
+        stats = new Stats();
+        long runStart = System.nanoTime();
+        long measureStart = runStart + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        Thread progress = new Thread(() -> reportProgress(measureStart, end), "LoadGen-Progress");
+        progress.setDaemon(true);
+        progress.start();
+
+        if (closedLoop) {
+            runClosed(measureStart, end);
+        } else {
+            runOpen(measureStart, end);
+        }
+        Stats measured = stats;
+        long measuredNanos = Math.min(System.nanoTime(), end) - measured.startNanos;
+        stopping = true;
+        if (thinkTimer != null) {
+            thinkTimer.shutdownNow();
+            thinkTimer.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        awaitInFlight();
+        progress.interrupt();
+        report(measured, measuredNanos);
+        cleanupAlarms();
+        for (TimeClient c : sockets) c.close();
+    }
+
+    /** Open loop: một luồng điều phối phát yêu cầu đúng lịch; bị trễ thì phát bù ngay, không bỏ lượt. */
+    private void runOpen(long measureStart, long end) {
+        long intervalNanos = (long) (1e9 / rate);
+        long next = System.nanoTime();
+        long seq = 0;
+        boolean warm = measureStart > next;
+        while (next < end) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            if (warm && next >= measureStart) {
+                stats = new Stats();
+                warm = false;
+            }
+            issue((int) (seq++ % clientCount), next, 0L);
+            next += intervalNanos;
+        }
+    }
+
+    /** Closed loop: mỗi client ảo gửi lại sau khi nhận phản hồi + think time. */
+    private void runClosed(long measureStart, long end) throws InterruptedException {
+        thinkTimer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "LoadGen-Think");
+            t.setDaemon(true);
+            return t;
+        });
+        // Rải thời điểm bắt đầu để các client ảo không gửi dồn cùng lúc
+        long spread = Math.max(thinkNanos, 1_000_000L);
+        for (int c = 0; c < clientCount; c++) {
+            final int client = c;
+            thinkTimer.schedule(() -> issue(client, System.nanoTime(), thinkNanos),
+                    ThreadLocalRandom.current().nextLong(spread), TimeUnit.NANOSECONDS);
+        }
+        long now;
+        while ((now = System.nanoTime()) < measureStart) {
+            TimeUnit.NANOSECONDS.sleep(measureStart - now);
+        }
+        if (measureStart > stats.startNanos) stats = new Stats();
+        while ((now = System.nanoTime()) < end) {
+            TimeUnit.NANOSECONDS.sleep(end - now);
+        }
+    }
+
+    /**
+     * Gửi một yêu cầu cho client ảo.
+     * @param intendedNanos thời điểm lẽ ra phải gửi (open loop) - gốc để tính độ trễ đã bù
+     * @param expectedInterval khoảng gửi mong đợi để bù coordinated omission (closed loop), 0 nếu không bù
+     */
+    private void issue(int client, long intendedNanos, long expectedInterval) {
+        if (stopping) return;
+        Op op = pickOp(client);
+        String command = command(op, client);
+        Stats s = stats;
+        TimeClient socket = sockets[client % sockets.length];
+        s.sent.increment();
+        inFlight.increment();
+        long sentNanos = System.nanoTime();
+        CompletableFuture<String> reply = socket.request(command);
+        reply.whenComplete((body, ex) -> {
+            long now = System.nanoTime();
+            inFlight.decrement();
+            if (ex == null) {
+                s.ok.increment();
+                if (body.startsWith("Lỗi")) s.errorReplies.increment();
+                s.service[op.ordinal()].record(now - sentNanos);
+                if (expectedInterval > 0) {
+                    s.response[op.ordinal()].recordCorrected(now - sentNanos, expectedInterval);
+                    s.allResponse.recordCorrected(now - sentNanos, expectedInterval);
+                } else {
+                    s.response[op.ordinal()].record(now - intendedNanos);
+                    s.allResponse.record(now - intendedNanos);
+                }
+            } else if (TimeClient.unwrap(ex) instanceof TimeoutException) {
+                s.lost.increment();
+            } else {
+                s.failed.increment();
+            }
+            if (closedLoop && !stopping) {
+                // Mọi lần gửi của chế độ closed đều chạy trên LoadGen-Think (hasAlarm không cần đồng bộ)
+                if (thinkNanos > 0) {
+                    thinkTimer.schedule(() -> issue(client, System.nanoTime(), thinkNanos), thinkNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    thinkTimer.execute(() -> issue(client, System.nanoTime(), 0L));
+                }
+            }
+        });
+    }
+
+    private Op pickOp(int client) {
+        int r = ThreadLocalRandom.current().nextInt(mixWeights[mixWeights.length - 1]);
+        if (r < mixWeights[0]) return Op.TIME_REQUEST;
+        if (r < mixWeights[1]) return Op.PING;
+        if (r < mixWeights[2]) {
+            // Luân phiên cài / hủy để số báo thức trên server không tăng mãi
+            boolean set = !hasAlarm[client];
+            hasAlarm[client] = set;
+            return set ? Op.ALARM_SET : Op.ALARM_CANCEL;
+        }
+        return Op.CALC_REQUEST;
+    }
+
+    private String command(Op op, int client) {
+        switch (op) {
+            case TIME_REQUEST:
+                return "TIME_REQUEST";
+            case PING:
+                return "PING";
+            case ALARM_SET: {
+                // Đặt sau 12 giờ để báo thức không kêu trong lúc đo
+                LocalTime t = LocalTime.now().plusHours(12);
+                return "ALARM_SET:" + alarmPrefix + client + ":" + t.getHour() + ":" + t.getMinute();
+            }
+            case ALARM_CANCEL:
+                return "ALARM_CANCEL:" + alarmPrefix + client;
+            default: {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                return "CALC_REQUEST:" + rnd.nextInt(1000) + "," + CALC_OPERATORS[rnd.nextInt(CALC_OPERATORS.length)]
+                        + "," + (rnd.nextInt(999) + 1);
+            }
+        }
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs * 2);
+        while (inFlight.sum() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /** Hủy các báo thức còn lại do lần chạy này tạo (không tính vào kết quả). */
+    private void cleanupAlarms() throws InterruptedException {
+        int count = 0;
+        for (int c = 0; c < clientCount; c++) {
+            if (hasAlarm[c]) {
+                sockets[c % sockets.length].request("ALARM_CANCEL:" + alarmPrefix + c);
+                if (++count % 1000 == 0) Thread.sleep(5); // tránh tràn bộ đệm nhận của server
+            }
+        }
+        if (count > 0) {
+            Thread.sleep(Math.min(timeoutMs, 500));
+            System.out.println("Đã gửi lệnh hủy cho " + count + " báo thức còn lại");
+        }
+    }
+
+    // ============================
+    // Báo cáo
+    // ============================
+
+    private void reportProgress(long measureStart, long end) {
+        long lastSent = 0, lastOk = 0, lastLost = 0;
+        Stats last = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            Stats s = stats;
+            if (s != last) {
+                lastSent = lastOk = lastLost = 0;
+                last = s;
+            }
+            long sent = s.sent.sum(), ok = s.ok.sum(), lost = s.lost.sum();
+            long now = System.nanoTime();
+            System.out.printf(Locale.ROOT, "[%s %3ds] gửi %d/s, nhận %d/s, mất %d, đang chờ %d%n",
+                    now < measureStart ? "khởi động" : "đo", TimeUnit.NANOSECONDS.toSeconds(Math.abs(now - measureStart)),
+                    sent - lastSent, ok - lastOk, lost - lastLost, inFlight.sum());
+            lastSent = sent;
+            lastOk = ok;
+            lastLost = lost;
+            if (now >= end) return;
+        }
+    }
+
+    private void report(Stats s, long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        long sent = s.sent.sum(), ok = s.ok.sum(), lost = s.lost.sum(), failed = s.failed.sum();
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Thời gian đo: %.1f s%n", seconds);
+        System.out.printf(Locale.ROOT, "Đã gửi: %d (%.0f/s), nhận: %d (%.0f/s), mất: %d (%.3f%%), lỗi gửi: %d, phản hồi lỗi: %d%n",
+                sent, sent / seconds, ok, ok / seconds, lost, sent == 0 ? 0 : 100.0 * lost / sent, failed,
+                s.errorReplies.sum());
+        System.out.println(closedLoop
+                ? "Độ trễ (µs) - 'phục vụ': từ lúc gửi; 'đã bù': bù coordinated omission theo think time"
+                : "Độ trễ (µs) - 'phục vụ': từ lúc gửi thật; 'đã bù': từ thời điểm lẽ ra phải gửi theo lịch");
+        System.out.printf(Locale.ROOT, "%-14s %-8s %9s %9s %9s %9s %9s %9s%n",
+                "Lệnh", "", "số mẫu", "p50", "p90", "p99", "p99.9", "max");
+        for (Op op : OPS) {
+            LatencyHistogram.Snapshot service = s.service[op.ordinal()].snapshot();
+            if (service.count == 0) continue;
+            printRow(op.name(), "phục vụ", service);
+            printRow("", "đã bù", s.response[op.ordinal()].snapshot());
+        }
+        printRow("TẤT CẢ", "đã bù", s.allResponse.snapshot());
+    }
+
+    private static void printRow(String name, String kind, LatencyHistogram.Snapshot h) {
+        System.out.printf(Locale.ROOT, "%-14s %-8s %9d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, kind, h.count,
+                h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3,
+                h.max / 1e3);
+    }
+
+    // ============================
+    // Dòng lệnh
+    // ============================
+
+    public static void main(String[] args) throws Exception {
+        String host = "127.0.0.1";
+        int port = ServerGUI.PORT;
+        boolean embedded = false;
+        String mode = "open";
+        double rate = 5000;
+        int clients = 10_000;
+        long thinkMs = 1000;
+        int duration = 30;
+        int warmup = 5;
+        int socketCount = 8;
+        long timeoutMs = 1000;
+        String mix = "time:50,ping:30,alarm:10,calc:10";
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (key) {
+                case "--host": host = value; break;
+                case "--port": port = Integer.parseInt(value); break;
+                case "--embedded": embedded = true; break;
+                case "--mode": mode = value; break;
+                case "--rate": rate = Double.parseDouble(value); break;
+                case "--clients": clients = Integer.parseInt(value); break;
+                case "--think-ms": thinkMs = Long.parseLong(value); break;
+                case "--duration": duration = Integer.parseInt(value); break;
+                case "--warmup": warmup = Integer.parseInt(value); break;
+                case "--sockets": socketCount = Integer.parseInt(value); break;
+                case "--timeout-ms": timeoutMs = Long.parseLong(value); break;
+                case "--mix": mix = value; break;
+                default:
+                    System.err.println("Tham số không hợp lệ: " + arg);
+                    System.exit(2);
+            }
+        }
+        if (!mode.equals("open") && !mode.equals("closed")) {
+            System.err.println("--mode phải là open hoặc closed");
+            System.exit(2);
+        }
+
+        // --embedded: chạy TimeServer ngay trong tiến trình (cổng ngẫu nhiên, không ghi nhật ký / journal)
+        TimeServer server = null;
+        if (embedded) {
+            server = new TimeServer(0, Runtime.getRuntime().availableProcessors(), ZoneId.systemDefault());
+            server.start();
+            host = "127.0.0.1";
+            port = server.getLocalPort();
+        }
+        try {
+            new LoadGenerator(host, port, mode.equals("closed"), rate, clients, thinkMs, socketCount, timeoutMs, mix)
+                    .run(warmup, duration);
+            if (server != null) {
+                System.out.println();
+                System.out.println("Số liệu server:");
+                System.out.println(server.statsSummary());
+            }
+        } finally {
+            if (server != null) server.stop();
+        }
+    }
+}
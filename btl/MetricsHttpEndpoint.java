@@ -0,0 +1,57 @@
+// File: MetricsHttpEndpoint.java
+package btl;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Endpoint HTTP cục bộ (chỉ 127.0.0.1) trả số liệu dạng văn bản Prometheus tại /metrics.
+ */
+final class MetricsHttpEndpoint {
+
+    private final HttpServer http;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Metrics-HTTP");
+        t.setDaemon(true);
+        return t;
+    });
+
+    MetricsHttpEndpoint(int port, Supplier<String> body) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", exchange -> {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        http.setExecutor(executor);
+        http.start();
+    }
+
+    int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    void stop() {
+        http.stop(0);
+        executor.shutdownNow();
+    }
+}
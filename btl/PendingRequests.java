@@ -0,0 +1,67 @@
+// File: PendingRequests.java
+package btl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bảng yêu cầu đang chờ phản hồi: request id -> CompletableFuture.
+ * Mỗi yêu cầu có hạn chờ riêng; hết hạn thì future kết thúc bằng TimeoutException và bị gỡ khỏi bảng,
+ * nên phản hồi đến muộn không thể bị nhận nhầm cho yêu cầu khác.
+ */
+final class PendingRequests<T> {
+    private final ConcurrentHashMap<Integer, CompletableFuture<T>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ScheduledExecutorService timer;
+
+    PendingRequests(ScheduledExecutorService timer) {
+        this.timer = timer;
+    }
+
+    int nextId() {
+        return nextId.incrementAndGet();
+    }
+
+    /** Đăng ký id trước khi gửi yêu cầu. */
+    CompletableFuture<T> register(int id, long timeoutMs) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        pending.put(id, future);
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (pending.remove(id, future)) {
+                future.completeExceptionally(new TimeoutException("Hết thời gian chờ phản hồi (id " + id + ")"));
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((v, ex) -> timeout.cancel(false));
+        return future;
+    }
+
+    /** Hoàn tất yêu cầu có id; trả về false nếu không còn ai chờ (phản hồi muộn hoặc lặp). */
+    boolean complete(int id, T value) {
+        CompletableFuture<T> future = pending.remove(id);
+        return future != null && future.complete(value);
+    }
+
+    boolean fail(int id, Throwable cause) {
+        CompletableFuture<T> future = pending.remove(id);
+        return future != null && future.completeExceptionally(cause);
+    }
+
+    void failAll(Throwable cause) {
+        for (Integer id : pending.keySet()) {
+            fail(id, cause);
+        }
+    }
+
+    boolean isPending(int id) {
+        return pending.containsKey(id);
+    }
+
+    int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,97 @@
+// File: Protocol.java
+package btl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hằng số và hàm tiện ích của giao thức văn bản UDP.
+ * Các hàm so khớp làm việc trực tiếp trên ByteBuffer (vị trí tuyệt đối, không đổi position/limit)
+ * để đường xử lý gói tin không phải tạo String cho mỗi yêu cầu.
+ */
+final class Protocol {
+    static final byte[] TIME_REQUEST = ascii("TIME_REQUEST");
+    static final byte[] PING = ascii("PING");
+    static final byte[] PONG = ascii("PONG");
+    static final byte[] ALARM_SET = ascii("ALARM_SET:");
+    static final byte[] ALARM_CANCEL = ascii("ALARM_CANCEL:");
+    static final byte[] ALARM_CANCEL_ALL = ascii("ALARM_CANCEL_ALL");
+    static final byte[] CALC_REQUEST = ascii("CALC_REQUEST:");
+    static final byte[] CALC_EXPR = ascii("CALC_EXPR:");
+    static final byte[] STATS = ascii("STATS");
+    static final byte[] REPL = ascii("REPL_"); // nhân bản báo thức giữa các server (AlarmReplicator)
+
+    /** Phản hồi cho yêu cầu không xác định (client dùng để nhận ra server cũ khi thương lượng giao thức). */
+    static final String UNKNOWN_REPLY = "Yêu cầu không xác định.";
+
+    static final byte[] ALARM_RING = ascii("ALARM_RING:");
+    static final byte[] ALARM_TRIGGERED = ascii("ALARM_TRIGGERED:");
+    static final byte[] ALARM_TRIGGER = ascii("ALARM_TRIGGER:");
+
+    private Protocol() {
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Vị trí byte đầu tiên không phải khoảng trắng trong [from, to). */
+    static int trimStart(ByteBuffer buf, int from, int to) {
+        while (from < to && (buf.get(from) & 0xFF) <= ' ') from++;
+        return from;
+    }
+
+    /** Vị trí ngay sau byte cuối cùng không phải khoảng trắng trong [from, to). */
+    static int trimEnd(ByteBuffer buf, int from, int to) {
+        while (to > from && (buf.get(to - 1) & 0xFF) <= ' ') to--;
+        return to;
+    }
+
+    static boolean startsWith(ByteBuffer buf, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf.get(from + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /** So sánh không phân biệt hoa thường (chỉ cho ký tự ASCII). */
+    static boolean equalsIgnoreCase(ByteBuffer buf, int from, int to, byte[] word) {
+        if (to - from != word.length) return false;
+        for (int i = 0; i < word.length; i++) {
+            if (upper(buf.get(from + i)) != upper(word[i])) return false;
+        }
+        return true;
+    }
+
+    private static int upper(byte b) {
+        return (b >= 'a' && b <= 'z') ? b - 32 : b;
+    }
+
+    /** Vị trí byte c đầu tiên trong [from, to), hoặc -1. */
+    static int indexOf(ByteBuffer buf, int from, int to, byte c) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == c) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Số byte tối đa (không quá max) của chuỗi UTF-8 utf8 có thể giữ lại mà không cắt giữa một ký tự:
+     * lùi điểm cắt tới byte không phải byte nối 10xxxxxx.
+     */
+    static int utf8Prefix(byte[] utf8, int max) {
+        if (max >= utf8.length) return utf8.length;
+        int end = Math.max(0, max);
+        while (end > 0 && (utf8[end] & 0xC0) == 0x80) end--;
+        return end;
+    }
+
+    static String decode(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+// File: RequestExecutors.java
+package btl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor cho tác vụ I/O của client (phân giải tên máy, gửi yêu cầu, xử lý phản hồi), tách khỏi các nhịp
+ * định thời (đồng hồ, đếm ngược) để yêu cầu chờ hết hạn không làm đứng đồng hồ.
+ * - Java 21+: mỗi tác vụ một virtual thread (Executors.newThreadPerTaskExecutor), tra cứu bằng reflection
+ *   để mã vẫn biên dịch và chạy với Java 8
+ * - Bản cũ hơn: pool luồng daemon co giãn, luồng rảnh quá IDLE_SECONDS thì được thu hồi
+ */
+final class RequestExecutors {
+
+    private static final long IDLE_SECONDS = 30;
+
+    private RequestExecutors() {
+    }
+
+    /** @param namePrefix tiền tố tên luồng (kèm số thứ tự) để dễ đọc khi dump luồng */
+    static ExecutorService newPerTaskExecutor(String namePrefix) {
+        ThreadFactory virtual = virtualThreadFactory(namePrefix);
+        if (virtual != null) {
+            try {
+                Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) perTask.invoke(null, virtual);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // rơi xuống pool thường
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, IDLE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, namePrefix + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** JVM hiện tại có virtual thread không (để ghi nhật ký). */
+    static boolean virtualThreadsAvailable() {
+        return virtualThreadFactory("probe-") != null;
+    }
+
+    /** Thread.ofVirtual().name(prefix, 0).factory(), hoặc null nếu JVM chưa hỗ trợ. */
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
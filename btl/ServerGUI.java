@@ -2,52 +2,42 @@
 package btl;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.*;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * UDP Time Server - hiển thị đồng hồ số với giao diện đẹp hơn
+ * Việc xử lý gói tin nằm trong TimeServer (không phụ thuộc Swing), GUI chỉ quan sát nhật ký.
  */
-public class ServerGUI extends JFrame implements Runnable {
+public class ServerGUI extends JFrame {
     public static final int PORT = 9876;
 
-    private final DefaultTableModel tableModel = new DefaultTableModel(new String[]{"Thời gian", "Sự kiện"}, 0);
-    private volatile boolean running = false;
-    private DatagramSocket socket;
+    // Nhật ký giới hạn số dòng, cập nhật theo lô ~20 lần/giây thay vì mỗi gói tin một invokeLater
+    private final EventLogTableModel logModel = new EventLogTableModel(5000);
+    private final TimeServer server;
 
     // THAY ĐỔI: Khai báo JTable là một trường của lớp để có thể truy cập trong phương thức log
     private JTable table; 
     private JLabel lblDigitalClock;
     private ZoneId currentZone = ZoneId.systemDefault();
-    
-    // Báo thức
-    private final ScheduledExecutorService alarmScheduler = Executors.newSingleThreadScheduledExecutor();
-    private final ConcurrentHashMap<String, AlarmData> activeAlarms = new ConcurrentHashMap<>();
-    
-    private static class AlarmData {
-        LocalTime alarmTime;
-        String clientAddress;
-        int clientPort;
-        
-        public AlarmData(LocalTime time, String addr, int port) {
-            this.alarmTime = time;
-            this.clientAddress = addr;
-            this.clientPort = port;
-        }
-    }
 
     public ServerGUI() {
-        super("Time Server");
+        this(PORT);
+    }
+
+    /** @param port cổng UDP; chạy nhiều cửa sổ với các cổng khác nhau để thử chế độ cụm */
+    public ServerGUI(int port) {
+        this(port, null);
+    }
+
+    /** @param replicaGroup nhóm nhân bản báo thức (gồm cả server này), null = một server */
+    public ServerGUI(int port, List<InetSocketAddress> replicaGroup) {
+        super(port == PORT ? "Time Server" : "Time Server - cổng " + port);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(1100, 650); 
         setLocationRelativeTo(null);
@@ -82,7 +72,10 @@ public class ServerGUI extends JFrame implements Runnable {
         // 1. Phần Nhật ký (Log Panel)
         // =========================================================================
         // THAY ĐỔI: Khởi tạo table là trường của lớp
-        this.table = new JTable(tableModel);
+        this.table = new JTable();
+        JLabel lblLogStatus = new JLabel(" ");
+        lblLogStatus.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        logModel.attach(this.table, lblLogStatus);
         this.table.setFillsViewportHeight(true);
         this.table.getTableHeader().setReorderingAllowed(false);
         this.table.getTableHeader().setResizingAllowed(false);
@@ -94,6 +87,10 @@ public class ServerGUI extends JFrame implements Runnable {
                 BorderFactory.createLineBorder(primaryColor.darker(), 2),
                 "NHẬT KÝ HOẠT ĐỘNG (LOGS)", TitledBorder.LEFT, TitledBorder.TOP,
                 new Font("Segoe UI", Font.BOLD, 18), primaryColor.darker()));
+        JPanel logPanel = new JPanel(new BorderLayout());
+        logPanel.setOpaque(false);
+        logPanel.add(sp, BorderLayout.CENTER);
+        logPanel.add(lblLogStatus, BorderLayout.SOUTH);
         
         // =========================================================================
         // 2. Phần Đồng hồ và Múi giờ (Clock Panel)
@@ -118,10 +115,18 @@ public class ServerGUI extends JFrame implements Runnable {
             timeZonePicker.setSelectedItem("Asia/Ho_Chi_Minh");
         }
         
+        server = new TimeServer(port, currentZone);
+        server.setAlarmStorage(TimeServer.defaultAlarmDirectory(port)); // alarms.wal / alarms.snapshot
+        server.setReplicaGroup(replicaGroup);
+        server.setMetricsPort(port + 1); // http://127.0.0.1:9877/metrics với cổng mặc định
+        server.addListener(this::log);
+        server.addListener(msg -> FileUtils.append(TimeServer.LOG_FILE, msg));
+
         timeZonePicker.addActionListener(e -> {
             String selectedZone = (String) timeZonePicker.getSelectedItem();
             if (selectedZone != null) {
                 currentZone = ZoneId.of(selectedZone);
+                server.setZone(currentZone);
                 log("Đã đổi múi giờ của server sang: " + selectedZone);
                 updateClock();
             }
@@ -133,6 +138,14 @@ public class ServerGUI extends JFrame implements Runnable {
         clockHeader.add(lblZone);
         clockHeader.add(timeZonePicker);
 
+        // Phát giờ quảng bá: một gói mỗi giây cho mọi client đang nghe thay vì mỗi client hỏi một lần
+        JCheckBox chkBroadcast = new JCheckBox("Phát quảng bá");
+        chkBroadcast.setToolTipText("Phát giờ mỗi giây tới " + TimeBroadcaster.DEFAULT_GROUP.getAddress().getHostAddress()
+                + ":" + TimeBroadcaster.DEFAULT_GROUP.getPort() + " (client chọn \"Nghe quảng bá\")");
+        chkBroadcast.setOpaque(false);
+        chkBroadcast.addActionListener(e -> server.setBroadcast(chkBroadcast.isSelected() ? TimeBroadcaster.DEFAULT_GROUP : null));
+        clockHeader.add(chkBroadcast);
+
         // Digital Clock Display
         lblDigitalClock = new JLabel("00:00:00", SwingConstants.CENTER);
         lblDigitalClock.setFont(new Font("Monospaced", Font.BOLD, 100)); // Font to be large
@@ -153,7 +166,7 @@ public class ServerGUI extends JFrame implements Runnable {
         // =========================================================================
         // 3. Kết hợp các phần tử
         // =========================================================================
-        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, sp, clockPanel);
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, logPanel, clockPanel);
         split.setDividerLocation(550); // Cho Nhật ký nhiều không gian hơn
         split.setBorder(null);
 
@@ -168,20 +181,18 @@ public class ServerGUI extends JFrame implements Runnable {
             stopServer();
         }));
 
-        new Thread(this, "Server-Thread").start();
-        
-        startAlarmScheduler();
-        
+        try {
+            server.start();
+        } catch (Exception e) {
+            log("Lỗi socket: " + e.getMessage());
+        }
+
         // Cập nhật đồng hồ lần đầu
         updateClock();
     }
     
     private void stopServer() {
-        running = false;
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
-        }
-        alarmScheduler.shutdownNow();
+        server.stop();
     }
 
     private void updateClock() {
@@ -191,173 +202,28 @@ public class ServerGUI extends JFrame implements Runnable {
     }
 
     private void log(final String msg) {
-        final String time = DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy").format(LocalDateTime.now());
-        SwingUtilities.invokeLater(() -> {
-            tableModel.addRow(new Object[]{time, msg});
-            
-            // SỬA LỖI BIÊN DỊCH: Sử dụng trường JTable đã được khai báo
-            int lastRow = tableModel.getRowCount() - 1;
-            if (lastRow >= 0 && table != null) {
-                 // Cuộn xuống dòng cuối cùng
-                 table.scrollRectToVisible(table.getCellRect(lastRow, 0, true));
-            }
-        });
+        logModel.append(msg);
     }
 
-    private String calculate(double num1, String operator, double num2) {
-        try {
-            switch (operator) {
-                case "+": return String.valueOf(num1 + num2);
-                case "-": return String.valueOf(num1 - num2);
-                case "*": return String.valueOf(num1 * num2);
-                case "/": 
-                    if (num2 == 0) {
-                        return "Lỗi: Chia cho 0";
-                    }
-                    return String.valueOf(num1 / num2);
-                default: return "Lỗi: Phép toán không hợp lệ";
-            }
-        } catch (Exception e) {
-            return "Lỗi: " + e.getMessage();
-        }
-    }
-    
-    private void startAlarmScheduler() {
-        alarmScheduler.scheduleAtFixedRate(() -> {
-            LocalTime now = LocalTime.now(currentZone);
-            for (Map.Entry<String, AlarmData> entry : activeAlarms.entrySet()) {
-                String id = entry.getKey();
-                AlarmData alarm = entry.getValue();
-                // Chỉ kiểm tra Giờ và Phút
-                if (now.getHour() == alarm.alarmTime.getHour() && now.getMinute() == alarm.alarmTime.getMinute()) {
-                    log("BÁO THỨC KÊU TỪ CLIENT " + alarm.clientAddress + ":" + alarm.clientPort);
-
-                    try {
-                        String alertMsg = "ALARM_RING:" + alarm.alarmTime.format(DateTimeFormatter.ofPattern("HH:mm"));
-                        byte[] data = alertMsg.getBytes("UTF-8");
-                        DatagramPacket packet = new DatagramPacket(
-                            data, data.length,
-                            InetAddress.getByName(alarm.clientAddress),
-                            alarm.clientPort
-                        );
-                        if (socket != null && !socket.isClosed()) {
-                            socket.send(packet);
-                        }
-                        log("Đã gửi thông báo báo thức tới client " + alarm.clientAddress + ":" + alarm.clientPort);
-                    } catch (Exception ex) {
-                        log("Lỗi gửi thông báo báo thức: " + ex.getMessage());
-                    }
-
-                    // Sau khi báo thức kêu, tự động hủy bỏ nó
-                    activeAlarms.remove(id);
-                }
-
-            }
-        }, 0, 30, TimeUnit.SECONDS); // Kiểm tra mỗi 30 giây
-    }
-
-    @Override
-    public void run() {
-        running = true;
-        log("Server đang khởi động...");
-        try (DatagramSocket ds = new DatagramSocket(PORT)) {
-            this.socket = ds;
-            log("Server lắng nghe tại cổng " + PORT);
-            byte[] buf = new byte[4096];
-            while (running) {
+    /** java btl.ServerGUI [port] [--peers=host:port,host:port,...] */
+    public static void main(String[] args) {
+        int port = PORT;
+        List<InetSocketAddress> group = null;
+        for (String arg : args) {
+            if (arg.startsWith("--peers=")) {
                 try {
-                    DatagramPacket p = new DatagramPacket(buf, buf.length);
-                    ds.receive(p);
-                    String req = new String(p.getData(), 0, p.getLength(), "UTF-8").trim();
-                    InetAddress clientAddress = p.getAddress();
-                    int clientPort = p.getPort();
-                    String clientKey = clientAddress.getHostAddress() + ":" + clientPort;
-
-                    String response = "UNKNOWN";
-
-                    if (req.startsWith("TIME_REQUEST")) {
-                        response = ZonedDateTime.now(currentZone)
-                                .format(DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy")) + " (" + currentZone.getId() + ")";
-                        log("Nhận yêu cầu giờ từ client " + clientKey + ". Trả về: " + response);
-                    } else if (req.startsWith("ALARM_SET:")) {
-                        String[] parts = req.split(":");
-                        if (parts.length == 4) {
-                            try {
-                                String id = parts[1];
-                                int hour = Integer.parseInt(parts[2]);
-                                int minute = Integer.parseInt(parts[3]);
-                                
-                                activeAlarms.put(id, new AlarmData(LocalTime.of(hour, minute), clientAddress.getHostAddress(), clientPort));
-                                response = String.format("Đã cài báo thức lúc %02d:%02d thành công.", hour, minute);
-                                log("Nhận yêu cầu cài báo thức từ " + clientKey + ". ID: " + id + ". Trả về: " + response);
-                            } catch (NumberFormatException nfe) {
-                                response = "Lỗi: Định dạng giờ/phút không hợp lệ.";
-                                log("Lỗi xử lý yêu cầu báo thức từ " + clientKey);
-                            }
-                        } else {
-                            response = "Lỗi: Định dạng yêu cầu không hợp lệ.";
-                            log("Lỗi định dạng yêu cầu: " + req);
-                        }
-                    } else if (req.startsWith("ALARM_CANCEL:")) {
-                        String[] parts = req.split(":");
-                        if (parts.length == 2) {
-                            String id = parts[1];
-                            if (activeAlarms.remove(id) != null) {
-                                response = "Đã hủy báo thức thành công.";
-                                log("Nhận yêu cầu hủy báo thức từ " + clientKey + ". ID: " + id + ". Trả về: " + response);
-                            } else {
-                                response = "Không tìm thấy báo thức cần hủy.";
-                                log("Không tìm thấy báo thức với ID " + id + " từ " + clientKey);
-                            }
-                        } else {
-                            response = "Lỗi: Định dạng yêu cầu hủy không hợp lệ.";
-                        }
-                    } else if ("ALARM_CANCEL_ALL".equalsIgnoreCase(req)) {
-                        activeAlarms.clear();
-                        response = "Đã hủy tất cả báo thức thành công.";
-                        log("Nhận yêu cầu hủy tất cả báo thức từ " + clientKey + ". Trả về: " + response);
-                    } else if (req.startsWith("CALC_REQUEST:")) {
-                        String[] parts = req.split(":", 2)[1].split(",");
-                        if (parts.length == 3) {
-                            try {
-                                double num1 = Double.parseDouble(parts[0]);
-                                String operator = parts[1];
-                                double num2 = Double.parseDouble(parts[2]);
-                                response = calculate(num1, operator, num2);
-                                log("Nhận yêu cầu tính toán: " + req + ". Trả về: " + response);
-                            } catch (NumberFormatException nfe) {
-                                response = "Lỗi: Dữ liệu nhập không phải là số.";
-                                log("Lỗi xử lý yêu cầu tính toán: " + req);
-                            }
-                        } else {
-                            response = "Lỗi: Định dạng yêu cầu không hợp lệ.";
-                            log("Lỗi định dạng yêu cầu: " + req);
-                        }
-                    } else if ("PING".equalsIgnoreCase(req)) {
-                        response = "PONG";
-                        log("Nhận yêu cầu PING từ " + clientKey + ". Trả về PONG");
-                    } else {
-                        response = "Yêu cầu không xác định.";
-                        log("Nhận yêu cầu không xác định: " + req);
-                    }
-
-                    byte[] resp = response.getBytes("UTF-8");
-                    DatagramPacket rp = new DatagramPacket(resp, resp.length, clientAddress, clientPort);
-                    ds.send(rp);
-                } catch (Exception ex) {
-                    if (running) {
-                        log("Lỗi xử lý gói tin: " + ex.getMessage());
-                    }
+                    group = TimeServer.parsePeers(arg.substring("--peers=".length()));
+                } catch (IllegalArgumentException | UnknownHostException e) {
+                    System.err.println("--peers không hợp lệ: " + e.getMessage());
+                    System.exit(2);
                 }
+            } else {
+                port = Integer.parseInt(arg);
             }
-        } catch (Exception e) {
-            log("Lỗi socket: " + e.getMessage());
-        } finally {
-            log("Server đã dừng.");
         }
-    }
-
-    public static void main(String[] args) {
+        final int serverPort = port;
+        final List<InetSocketAddress> replicaGroup = group;
+        TimeServer.configureLogging();
         try {
             for (UIManager.LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
                 if ("Nimbus".equals(info.getName())) {
@@ -368,6 +234,6 @@ public class ServerGUI extends JFrame implements Runnable {
         } catch (Exception e) {
             // ignore
         }
-        SwingUtilities.invokeLater(() -> new ServerGUI().setVisible(true));
+        SwingUtilities.invokeLater(() -> new ServerGUI(serverPort, replicaGroup).setVisible(true));
     }
 }
\ No newline at end of file
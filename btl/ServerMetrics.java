@@ -0,0 +1,171 @@
+// File: ServerMetrics.java
+package btl;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Số liệu vận hành của TimeServer.
+ * - Bộ đếm LongAdder (phân dải theo luồng) và LatencyHistogram cho từng lệnh: ghi trên đường nóng không cấp phát
+ * - Độ trễ xử lý = từ lúc nhận gói tới lúc gửi xong phản hồi (nano giây)
+ * - Xuất ra dạng tóm tắt (lệnh STATS) hoặc định dạng văn bản Prometheus (endpoint /metrics)
+ */
+final class ServerMetrics {
+
+    enum Command {
+        SYNC, TIME_REQUEST, PING, ALARM_SET, ALARM_CANCEL, ALARM_CANCEL_ALL, CALC_REQUEST, CALC_EXPR, CALC_BATCH, STATS, REPLICATION
+    }
+
+    /** Lý do gói bị bỏ bởi AdmissionControl (không trả lời, không ghi nhật ký). */
+    enum Drop {
+        RATE_LIMITED, GLOBAL_LIMIT, BUSY
+    }
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final Drop[] DROPS = Drop.values();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final LongAdder[] requests = new LongAdder[COMMANDS.length];
+    private final LongAdder[] errors = new LongAdder[COMMANDS.length];
+    private final LatencyHistogram[] latency = new LatencyHistogram[COMMANDS.length];
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder noReply = new LongAdder();
+    private final LongAdder workerErrors = new LongAdder();
+    private final LongAdder[] dropped = new LongAdder[DROPS.length];
+    private final LongAdder alarmsFired = new LongAdder();
+    private final LongAdder alarmSendErrors = new LongAdder();
+    private final LatencyHistogram alarmLateness = new LatencyHistogram(); // mili giây
+    private final long startMillis = System.currentTimeMillis();
+
+    ServerMetrics() {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            requests[i] = new LongAdder();
+            errors[i] = new LongAdder();
+            latency[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < DROPS.length; i++) {
+            dropped[i] = new LongAdder();
+        }
+    }
+
+    void packetReceived() {
+        packetsReceived.increment();
+    }
+
+    /** Gói không được trả lời (không nhận diện được hoặc phiên bản không hỗ trợ). */
+    void noReply() {
+        noReply.increment();
+    }
+
+    void workerError() {
+        workerErrors.increment();
+    }
+
+    void packetDropped(Drop reason) {
+        dropped[reason.ordinal()].increment();
+    }
+
+    void requestServed(Command command, long nanos) {
+        requests[command.ordinal()].increment();
+        latency[command.ordinal()].record(nanos);
+    }
+
+    /** Yêu cầu được trả lời bằng thông báo lỗi (sai định dạng, chia cho 0...). */
+    void requestFailed(Command command) {
+        errors[command.ordinal()].increment();
+    }
+
+    void alarmFired(long latenessMillis, boolean sent) {
+        alarmsFired.increment();
+        alarmLateness.record(latenessMillis);
+        if (!sent) alarmSendErrors.increment();
+    }
+
+    /** Tóm tắt cho lệnh STATS (vài dòng, vừa một gói UDP). */
+    String summary(int activeAlarms, long logDropped) {
+        double uptime = Math.max(1, System.currentTimeMillis() - startMillis) / 1000.0;
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format(Locale.ROOT, "Thời gian chạy %.0f s, gói nhận %d, không trả lời %d, lỗi xử lý %d, nhật ký bỏ qua %d\n",
+                uptime, packetsReceived.sum(), noReply.sum(), workerErrors.sum(), logDropped));
+        sb.append(String.format(Locale.ROOT, "Bị chặn: giới hạn theo nguồn %d, giới hạn toàn cục %d, quá tải lệnh nặng %d\n",
+                dropped[Drop.RATE_LIMITED.ordinal()].sum(), dropped[Drop.GLOBAL_LIMIT.ordinal()].sum(),
+                dropped[Drop.BUSY.ordinal()].sum()));
+        for (Command c : COMMANDS) {
+            long n = requests[c.ordinal()].sum();
+            if (n == 0) continue;
+            LatencyHistogram.Snapshot s = latency[c.ordinal()].snapshot();
+            sb.append(String.format(Locale.ROOT, "%s: %d yêu cầu (%.1f/s), %d lỗi, p50 %s, p99 %s, max %s\n",
+                    c, n, n / uptime, errors[c.ordinal()].sum(),
+                    formatNanos(s.percentile(50)), formatNanos(s.percentile(99)), formatNanos(s.max)));
+        }
+        LatencyHistogram.Snapshot late = alarmLateness.snapshot();
+        sb.append(String.format(Locale.ROOT, "Báo thức: %d đang chờ, %d đã kêu (%d gửi lỗi), trễ p50 %d ms, p99 %d ms, max %d ms",
+                activeAlarms, alarmsFired.sum(), alarmSendErrors.sum(),
+                late.percentile(50), late.percentile(99), late.max));
+        return sb.toString();
+    }
+
+    /** Định dạng văn bản Prometheus (text exposition 0.0.4). */
+    String prometheus(int activeAlarms, long logDropped, long journalWriteErrors, long journalLost) {
+        StringBuilder sb = new StringBuilder(4096);
+        gauge(sb, "timeserver_uptime_seconds", (System.currentTimeMillis() - startMillis) / 1000.0);
+        counter(sb, "timeserver_packets_received_total", packetsReceived.sum());
+        counter(sb, "timeserver_packets_no_reply_total", noReply.sum());
+        counter(sb, "timeserver_worker_errors_total", workerErrors.sum());
+        counter(sb, "timeserver_log_dropped_total", logDropped);
+        sb.append("# TYPE timeserver_packets_dropped_total counter\n");
+        for (Drop d : DROPS) {
+            sb.append("timeserver_packets_dropped_total{reason=\"").append(d.name().toLowerCase(Locale.ROOT))
+                    .append("\"} ").append(dropped[d.ordinal()].sum()).append('\n');
+        }
+
+        sb.append("# TYPE timeserver_requests_total counter\n");
+        for (Command c : COMMANDS) {
+            sb.append("timeserver_requests_total{command=\"").append(c).append("\"} ")
+                    .append(requests[c.ordinal()].sum()).append('\n');
+        }
+        sb.append("# TYPE timeserver_request_errors_total counter\n");
+        for (Command c : COMMANDS) {
+            sb.append("timeserver_request_errors_total{command=\"").append(c).append("\"} ")
+                    .append(errors[c.ordinal()].sum()).append('\n');
+        }
+        sb.append("# TYPE timeserver_request_latency_seconds summary\n");
+        for (Command c : COMMANDS) {
+            summary(sb, "timeserver_request_latency_seconds", "command=\"" + c + "\",",
+                    latency[c.ordinal()].snapshot(), 1e-9);
+        }
+
+        gauge(sb, "timeserver_alarms_active", activeAlarms);
+        counter(sb, "timeserver_alarms_fired_total", alarmsFired.sum());
+        counter(sb, "timeserver_alarm_send_errors_total", alarmSendErrors.sum());
+        counter(sb, "timeserver_alarm_journal_write_errors_total", journalWriteErrors);
+        counter(sb, "timeserver_alarm_journal_lost_total", journalLost);
+        sb.append("# TYPE timeserver_alarm_lateness_seconds summary\n");
+        summary(sb, "timeserver_alarm_lateness_seconds", "", alarmLateness.snapshot(), 1e-3);
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, long value) {
+        sb.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, double value) {
+        sb.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder sb, String name, String labels, LatencyHistogram.Snapshot s, double scale) {
+        for (double q : QUANTILES) {
+            sb.append(name).append('{').append(labels).append("quantile=\"").append(q).append("\"} ")
+                    .append(s.percentile(q * 100) * scale).append('\n');
+        }
+        String braces = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        sb.append(name).append("_sum").append(braces).append(' ').append(s.sum * scale).append('\n');
+        sb.append(name).append("_count").append(braces).append(' ').append(s.count).append('\n');
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) return nanos + " ns";
+        if (nanos < 10_000_000) return String.format(Locale.ROOT, "%.1f µs", nanos / 1e3);
+        return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,643 @@
+// File: ServerPool.java
+package btl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Nhóm nhiều time server phía client (chế độ cụm).
+ * - Mỗi server một TimeClient (socket, luồng nhận, chế độ giao thức riêng) và một ClockFilter riêng
+ * - Mỗi vòng đồng bộ hỏi song song mọi server; tổng số gói của một vòng được chia đều cho các server
+ *   nên thêm server là chia tải chứ không nhân tải
+ * - Chọn nguồn theo kiểu NTP: mỗi server cho một khoảng [offset - khoảng cách, offset + khoảng cách]
+ *   (khoảng cách = trễ/2 + jitter + độ phân tán tăng theo tuổi mẫu). Thuật toán giao Marzullo tìm khoảng
+ *   chung của đa số; server có khoảng nằm ngoài bị loại (falseticker), offset của các server còn lại
+ *   được lấy trung bình có trọng số 1/khoảng cách
+ * - Lệnh văn bản (báo thức, PING...) gửi tới server chính; hết hạn chờ thì chuyển sang server kế tiếp
+ */
+public class ServerPool implements Closeable {
+
+    static final int MAX_SERVERS = 8;
+    /** Tốc độ tăng độ phân tán theo tuổi mẫu (15 ppm như NTP). */
+    private static final double PHI = 15e-6;
+    /** Phản hồi TIME_REQUEST chỉ có độ phân giải 1 giây: sai số tới nửa giây. */
+    private static final long TEXT_RESOLUTION_NANOS = 500_000_000L;
+    private static final long MIN_DISTANCE_NANOS = 1_000L;
+    /** Server không phản hồi 8 vòng liên tiếp chỉ được hỏi lại mỗi BACKOFF_ROUNDS vòng. */
+    private static final int BACKOFF_ROUNDS = 8;
+    private static final DateTimeFormatter SERVER_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy");
+
+    /** Một server trong nhóm. */
+    public static final class Member {
+        final InetSocketAddress address;
+        final String name;
+        final TimeClient client;
+        private final ClockFilter filter = new ClockFilter();
+
+        // Trạng thái đo, truy cập trong synchronized (this)
+        private int reach;          // 8 vòng gần nhất, bit 0 = vòng mới nhất có phản hồi
+        private int polls;
+        private boolean hasSample;
+        private boolean text;       // mẫu từ giao thức văn bản
+        private long offset;
+        private long delay;
+        private long jitter;
+        private long sampleMono;
+        private ZoneId zone;
+        private String serverTime;
+        private boolean selected;
+
+        Member(InetSocketAddress address, TimeClient client) {
+            this.address = address;
+            this.name = address.getHostString() + ":" + address.getPort();
+            this.client = client;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        synchronized boolean isReachable() {
+            return reach != 0 || polls == 0;
+        }
+
+        /** Khoảng cách gốc: nửa trễ + jitter + phân tán theo tuổi mẫu (+ độ phân giải nếu là mẫu văn bản). */
+        synchronized long distance(long nowMono) {
+            long age = Math.max(0, nowMono - sampleMono);
+            return Math.max(MIN_DISTANCE_NANOS, delay / 2 + jitter + (long) (PHI * age) + (text ? TEXT_RESOLUTION_NANOS : 0));
+        }
+
+        private synchronized boolean skip(int round) {
+            return reach == 0 && polls >= BACKOFF_ROUNDS && round % BACKOFF_ROUNDS != 0;
+        }
+
+        private synchronized void recordPoll(boolean replied) {
+            reach = ((reach << 1) | (replied ? 1 : 0)) & 0xFF;
+            polls++;
+        }
+
+        /** Đưa các mẫu (offset, trễ, mono) của một vòng vào bộ lọc của server. */
+        private synchronized void recordSamples(long[][] samples, boolean fromText, ZoneId zone, String serverTime) {
+            ClockFilter.Result result = null;
+            for (long[] s : samples) {
+                result = filter.addSample(s[0], s[1], s[2]);
+            }
+            long sumSquares = 0;
+            for (long[] s : samples) {
+                long d = s[0] - result.offsetNanos;
+                sumSquares += d * d;
+            }
+            long roundJitter = (long) Math.sqrt((double) sumSquares / samples.length);
+            jitter = hasSample ? (3 * jitter + roundJitter) / 4 : roundJitter;
+            offset = result.offsetNanos;
+            delay = result.delayNanos;
+            sampleMono = result.monoNanos;
+            text = fromText;
+            this.zone = zone;
+            this.serverTime = serverTime;
+            hasSample = true;
+        }
+
+        private synchronized String describe(long nowMono) {
+            if (!hasSample) {
+                return String.format(Locale.ROOT, "%s: chưa có mẫu, reach %o", name, reach);
+            }
+            return String.format(Locale.ROOT, "%s: lệch %.3f ms, trễ %.3f ms, jitter %.3f ms, khoảng cách %.3f ms, reach %o%s",
+                    name, offset / 1e6, delay / 1e6, jitter / 1e6, distance(nowMono) / 1e6, reach,
+                    (reach & 1) == 0 ? " - không phản hồi" : selected ? "" : " - bị loại");
+        }
+    }
+
+    /** Kết quả một vòng đồng bộ. */
+    public static final class Round {
+        /** false nếu không có đa số server thống nhất (không nên chỉnh đồng hồ). */
+        public final boolean ok;
+        public final long offsetNanos;
+        public final long delayNanos;
+        public final long monoNanos;
+        public final int candidates;
+        public final int survivors;
+        /** Server có khoảng cách nhỏ nhất trong số được chọn (nguồn múi giờ và giờ hiển thị). */
+        public final Member systemPeer;
+        public final ZoneId zone;
+        public final String serverTime;
+        public final List<String> report;
+
+        Round(boolean ok, long offsetNanos, long delayNanos, long monoNanos, int candidates, int survivors,
+              Member systemPeer, List<String> report) {
+            this.ok = ok;
+            this.offsetNanos = offsetNanos;
+            this.delayNanos = delayNanos;
+            this.monoNanos = monoNanos;
+            this.candidates = candidates;
+            this.survivors = survivors;
+            this.systemPeer = systemPeer;
+            this.zone = systemPeer == null ? null : systemPeer.zone;
+            this.serverTime = systemPeer == null ? null : systemPeer.serverTime;
+            this.report = report;
+        }
+    }
+
+    private final TimeClient.Listener listener;
+    private final long timeoutMs;
+    private volatile List<Member> members = Collections.emptyList();
+    private volatile Member primary;
+    private int rounds;
+
+    public ServerPool(TimeClient.Listener listener, long timeoutMs) {
+        this.listener = listener;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Đặt danh sách server, dạng "host[:port]" cách nhau bởi dấu phẩy / khoảng trắng / chấm phẩy
+     * (IPv6 viết trong ngoặc vuông: [::1]:9876). Server giữ nguyên thì giữ cả bộ lọc và socket.
+     * @return true nếu danh sách thay đổi
+     */
+    public synchronized boolean setServers(String spec, int defaultPort) throws IOException {
+        List<InetSocketAddress> addresses = parse(spec, defaultPort);
+        List<Member> current = members;
+        if (current.size() == addresses.size()) {
+            boolean same = true;
+            for (int i = 0; i < addresses.size() && same; i++) {
+                same = current.get(i).address.equals(addresses.get(i));
+            }
+            if (same) return false;
+        }
+        List<Member> next = new ArrayList<>(addresses.size());
+        for (InetSocketAddress address : addresses) {
+            Member kept = null;
+            for (Member m : current) {
+                if (m.address.equals(address)) kept = m;
+            }
+            next.add(kept != null ? kept : open(address));
+        }
+        for (Member m : current) {
+            if (!next.contains(m)) m.client.close();
+        }
+        members = Collections.unmodifiableList(next);
+        if (primary == null || !next.contains(primary)) {
+            primary = next.get(0);
+        }
+        return true;
+    }
+
+    private Member open(InetSocketAddress address) throws IOException {
+        final Member[] self = new Member[1];
+        TimeClient client = new TimeClient(new TimeClient.Listener() {
+            @Override
+            public void onAlarm(String message) {
+                listener.onAlarm(message);
+            }
+
+            @Override
+            public void onLog(String message) {
+                listener.onLog(members.size() > 1 ? "[" + self[0].name + "] " + message : message);
+            }
+        }, timeoutMs);
+        client.setServer(address.getHostString(), address.getPort());
+        self[0] = new Member(address, client);
+        listener.onLog("UDP socket tạo tại cổng " + client.getLocalPort() + " cho server " + self[0].name);
+        return self[0];
+    }
+
+    /** Tách "host[:port], host[:port]" thành địa chỉ đã phân giải (tối đa MAX_SERVERS). */
+    static List<InetSocketAddress> parse(String spec, int defaultPort) throws UnknownHostException {
+        return parse(spec, defaultPort, MAX_SERVERS);
+    }
+
+    /** Như parse(spec, defaultPort) với giới hạn số địa chỉ riêng (ví dụ nhóm nhân bản của server). */
+    static List<InetSocketAddress> parse(String spec, int defaultPort, int maxServers) throws UnknownHostException {
+        List<InetSocketAddress> result = new ArrayList<>();
+        for (String token : spec.trim().split("[,;\\s]+")) {
+            if (token.isEmpty()) continue;
+            String host = token;
+            int port = defaultPort;
+            int colon = token.lastIndexOf(':');
+            if (token.startsWith("[")) {
+                int close = token.indexOf(']');
+                if (close < 0) throw new IllegalArgumentException("Địa chỉ không hợp lệ: " + token);
+                host = token.substring(1, close);
+                if (close + 1 < token.length()) {
+                    if (token.charAt(close + 1) != ':') throw new IllegalArgumentException("Địa chỉ không hợp lệ: " + token);
+                    port = parsePort(token.substring(close + 2), token);
+                }
+            } else if (colon >= 0 && colon == token.indexOf(':')) {
+                host = token.substring(0, colon);
+                port = parsePort(token.substring(colon + 1), token);
+            }
+            InetSocketAddress address = new InetSocketAddress(host, port);
+            if (address.isUnresolved()) throw new UnknownHostException(host);
+            if (!result.contains(address)) result.add(address);
+        }
+        if (result.isEmpty()) throw new IllegalArgumentException("Chưa nhập máy chủ");
+        if (result.size() > maxServers) throw new IllegalArgumentException("Tối đa " + maxServers + " máy chủ");
+        return result;
+    }
+
+    private static int parsePort(String text, String token) {
+        try {
+            int port = Integer.parseInt(text);
+            if (port > 0 && port <= 65535) return port;
+        } catch (NumberFormatException e) {
+            // báo lỗi bên dưới
+        }
+        throw new IllegalArgumentException("Cổng không hợp lệ: " + token);
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    public Member getPrimary() {
+        return primary;
+    }
+
+    /** "host:port" hoặc "host:port (+2 server)" cho nhật ký. */
+    public String describe() {
+        List<Member> current = members;
+        if (current.isEmpty()) return "(chưa có server)";
+        Member p = primary;
+        return current.size() == 1 ? p.name : p.name + " (+" + (current.size() - 1) + " server)";
+    }
+
+    // ============================
+    // Đồng bộ
+    // ============================
+
+    /**
+     * Một vòng đồng bộ: hỏi song song mọi server (burst gói chia đều), rồi chọn và kết hợp.
+     * Future luôn hoàn tất bình thường sau tối đa khoảng timeoutMs; server không phản hồi chỉ bị đánh dấu.
+     */
+    public CompletableFuture<Round> sync(int burst) {
+        List<Member> snapshot = members;
+        if (snapshot.isEmpty()) {
+            CompletableFuture<Round> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Chưa có server"));
+            return failed;
+        }
+        int round;
+        synchronized (this) {
+            round = ++rounds;
+        }
+        int perServer = Math.max(1, (burst + snapshot.size() - 1) / snapshot.size());
+        List<CompletableFuture<Void>> polls = new ArrayList<>(snapshot.size());
+        for (Member m : snapshot) {
+            if (!m.skip(round)) polls.add(poll(m, perServer));
+        }
+        return CompletableFuture.allOf(polls.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> select(snapshot));
+    }
+
+    private CompletableFuture<Void> poll(Member m, int burst) {
+        if (m.client.isLegacyServer()) {
+            return pollText(m);
+        }
+        List<CompletableFuture<SyncPacket>> replies = new ArrayList<>(burst);
+        for (int i = 0; i < burst; i++) {
+            replies.add(m.client.sync());
+        }
+        return CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0]))
+                .handle((v, ex) -> {
+                    List<SyncPacket> packets = new ArrayList<>(burst);
+                    for (CompletableFuture<SyncPacket> f : replies) {
+                        if (!f.isCompletedExceptionally()) packets.add(f.join());
+                    }
+                    if (packets.isEmpty()) {
+                        if (m.client.isLegacyServer()) return pollText(m);
+                        m.recordPoll(false);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    long[][] samples = new long[packets.size()][];
+                    SyncPacket best = packets.get(0);
+                    for (int i = 0; i < samples.length; i++) {
+                        SyncPacket p = packets.get(i);
+                        samples[i] = new long[]{p.offsetNanos(), p.delayNanos(), p.receivedMono};
+                        if (p.delayNanos() < best.delayNanos()) best = p;
+                    }
+                    ZoneId zone = best.zone();
+                    String serverTime = SERVER_TIME_FORMAT.format(Instant.ofEpochSecond(0, best.transmit).atZone(zone))
+                            + " (" + zone.getId() + ")";
+                    m.recordPoll(true);
+                    m.recordSamples(samples, false, zone, serverTime);
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(f -> f);
+    }
+
+    /** Server cũ: một mẫu TIME_REQUEST "HH:mm:ss dd/MM/yyyy (zone)", độ phân giải 1 giây. */
+    private CompletableFuture<Void> pollText(Member m) {
+        final long t0 = System.currentTimeMillis();
+        final long[] t1 = new long[1];
+        return m.client.request("TIME_REQUEST")
+                .thenApply(resp -> {
+                    t1[0] = System.currentTimeMillis(); // nhận thời gian ngay trên luồng nhận
+                    return resp;
+                })
+                .handle((resp, ex) -> {
+                    if (ex != null) {
+                        m.recordPoll(false);
+                        return null;
+                    }
+                    try {
+                        String[] parts = resp.split("\\(");
+                        ZoneId zone = ZoneId.of(parts.length > 1 ? parts[1].replace(")", "").trim() : "UTC");
+                        long serverMillis = LocalDateTime.parse(parts[0].trim(), SERVER_TIME_FORMAT)
+                                .atZone(zone).toInstant().toEpochMilli();
+                        long rtt = t1[0] - t0;
+                        long offsetMillis = serverMillis - (t1[0] - rtt / 2);
+                        m.recordPoll(true);
+                        m.recordSamples(new long[][]{{offsetMillis * 1_000_000L, rtt * 1_000_000L, System.nanoTime()}},
+                                true, zone, resp);
+                    } catch (RuntimeException e) {
+                        m.recordPoll(false);
+                        listener.onLog("Phản hồi thời gian không hợp lệ từ " + m.name + ": " + resp);
+                    }
+                    return null;
+                });
+    }
+
+    private Round select(List<Member> snapshot) {
+        long now = System.nanoTime();
+        List<Member> candidates = new ArrayList<>(snapshot.size());
+        for (Member m : snapshot) {
+            synchronized (m) {
+                m.selected = false;
+                // Chỉ server trả lời ở lần hỏi gần nhất: mẫu cũ của server đã chết không được kéo lệch kết quả
+                if (m.hasSample && (m.reach & 1) != 0) candidates.add(m);
+            }
+        }
+        int n = candidates.size();
+        long[] offsets = new long[n];
+        long[] distances = new long[n];
+        for (int i = 0; i < n; i++) {
+            Member m = candidates.get(i);
+            synchronized (m) {
+                offsets[i] = m.offset;
+                distances[i] = m.distance(now);
+            }
+        }
+        boolean[] chosen = n == 0 ? null : intersect(offsets, distances);
+
+        boolean ok = chosen != null;
+        double sumWeights = 0, sumOffsets = 0;
+        Member peer = null;
+        long peerDistance = Long.MAX_VALUE;
+        int survivors = 0;
+        for (int i = 0; ok && i < n; i++) {
+            if (!chosen[i]) continue;
+            Member m = candidates.get(i);
+            synchronized (m) {
+                m.selected = true;
+            }
+            survivors++;
+            double w = 1.0 / distances[i];
+            sumWeights += w;
+            sumOffsets += w * offsets[i];
+            if (distances[i] < peerDistance) {
+                peerDistance = distances[i];
+                peer = m;
+            }
+        }
+        List<String> report = new ArrayList<>(snapshot.size());
+        for (Member m : snapshot) {
+            report.add(m.describe(now));
+        }
+        if (!ok) {
+            return new Round(false, 0, 0, now, n, 0, null, report);
+        }
+        long delay;
+        synchronized (peer) {
+            delay = peer.delay;
+        }
+        return new Round(true, Math.round(sumOffsets / sumWeights), delay, now, n, survivors, peer, report);
+    }
+
+    /**
+     * Thuật toán giao Marzullo (dạng chọn nguồn của ntpd): tìm f nhỏ nhất (f < n/2) sao cho có một khoảng
+     * [low, high] nằm trong ít nhất n - f khoảng [offset - distance, offset + distance].
+     * Server có khoảng không chạm [low, high] là falseticker.
+     * @return đánh dấu server được chọn, null nếu không có đa số thống nhất
+     */
+    static boolean[] intersect(long[] offsets, long[] distances) {
+        int n = offsets.length;
+        // Mỗi mút: {giá trị, loại}; loại -1 = mút dưới, +1 = mút trên.
+        // Cùng giá trị thì mút dưới trước mút trên: các khoảng chỉ chạm nhau vẫn tính là giao
+        long[][] edges = new long[2 * n][];
+        for (int i = 0; i < n; i++) {
+            edges[2 * i] = new long[]{offsets[i] - distances[i], -1};
+            edges[2 * i + 1] = new long[]{offsets[i] + distances[i], 1};
+        }
+        Arrays.sort(edges, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        for (int allow = 0; 2 * allow < n; allow++) {
+            int chime = 0;
+            long low = Long.MAX_VALUE;
+            for (long[] e : edges) {
+                chime -= (int) e[1];
+                if (chime >= n - allow) {
+                    low = e[0];
+                    break;
+                }
+            }
+            chime = 0;
+            long high = Long.MIN_VALUE;
+            for (int i = edges.length - 1; i >= 0; i--) {
+                chime += (int) edges[i][1];
+                if (chime >= n - allow) {
+                    high = edges[i][0];
+                    break;
+                }
+            }
+            if (low > high) continue;
+
+            boolean[] chosen = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                chosen[i] = offsets[i] - distances[i] <= high && offsets[i] + distances[i] >= low;
+            }
+            return chosen;
+        }
+        return null;
+    }
+
+    // ============================
+    // Lệnh văn bản
+    // ============================
+
+    /**
+     * Gửi lệnh văn bản tới server chính. Hết hạn chờ thì lần lượt thử các server còn lại
+     * (server trả lời trở thành server chính cho các lệnh sau).
+     */
+    public CompletableFuture<String> request(String command) {
+        Member p = primary;
+        if (p == null) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Chưa có server"));
+            return failed;
+        }
+        return request(p, command, members.size() - 1);
+    }
+
+    private CompletableFuture<String> request(Member m, String command, int retries) {
+        return m.client.request(command).handle((reply, ex) -> {
+            if (ex == null) return CompletableFuture.completedFuture(reply);
+            Throwable cause = TimeClient.unwrap(ex);
+            if (cause instanceof TimeoutException && retries > 0) {
+                Member next = failover(m);
+                if (next != m) {
+                    listener.onLog("Server " + m.name + " không phản hồi, chuyển sang " + next.name);
+                    return request(next, command, retries - 1);
+                }
+            }
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(cause);
+            return failed;
+        }).thenCompose(f -> f);
+    }
+
+    /** Chọn server chính mới sau m: ưu tiên server còn phản hồi, theo thứ tự cấu hình. */
+    private synchronized Member failover(Member failed) {
+        List<Member> current = members;
+        if (primary != failed || current.size() < 2) return primary;
+        int at = Math.max(0, current.indexOf(failed));
+        Member fallback = current.get((at + 1) % current.size());
+        for (int i = 1; i < current.size(); i++) {
+            Member m = current.get((at + i) % current.size());
+            if (m.isReachable()) {
+                fallback = m;
+                break;
+            }
+        }
+        primary = fallback;
+        return fallback;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Member m : members) {
+            m.client.close();
+        }
+        members = Collections.emptyList();
+        primary = null;
+    }
+
+    // ============================
+    // Thử nghiệm cụm trên loopback
+    // ============================
+
+    /**
+     * Chạy vài vòng đồng bộ không giao diện và in kết quả chọn nguồn, ví dụ:
+     * java btl.ServerPool --embedded=3 --falseticker-ms=1500 --kill-after=5
+     * (3 server loopback, server cuối lệch 1,5 s, server đầu bị dừng sau vòng 5 để thấy chuyển server)
+     */
+    public static void main(String[] args) throws Exception {
+        String servers = null;
+        int embedded = 0;
+        long falsetickerMs = 0;
+        int killAfter = -1;
+        int roundCount = 10;
+        long intervalMs = 1000;
+        int burst = 4;
+        long timeout = 1000;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (key) {
+                case "--servers": servers = value; break;
+                case "--embedded": embedded = Integer.parseInt(value); break;
+                case "--falseticker-ms": falsetickerMs = Long.parseLong(value); break;
+                case "--kill-after": killAfter = Integer.parseInt(value); break;
+                case "--rounds": roundCount = Integer.parseInt(value); break;
+                case "--interval-ms": intervalMs = Long.parseLong(value); break;
+                case "--burst": burst = Integer.parseInt(value); break;
+                case "--timeout-ms": timeout = Long.parseLong(value); break;
+                default:
+                    System.err.println("Tham số không hợp lệ: " + arg);
+                    System.err.println("Dùng: --servers=host:port,... | --embedded=N [--falseticker-ms=X] [--kill-after=R]"
+                            + " [--rounds=N] [--interval-ms=X] [--burst=N] [--timeout-ms=X]");
+                    System.exit(2);
+            }
+        }
+
+        List<TimeServer> started = new ArrayList<>();
+        if (embedded > 0) {
+            StringBuilder spec = new StringBuilder();
+            for (int i = 0; i < embedded; i++) {
+                TimeServer server = new TimeServer(0, 2, ZoneId.systemDefault());
+                if (i == embedded - 1 && falsetickerMs != 0) {
+                    server.setClockSkew(falsetickerMs * 1_000_000L);
+                }
+                server.start();
+                started.add(server);
+                spec.append(spec.length() == 0 ? "" : ",").append("127.0.0.1:").append(server.getLocalPort());
+            }
+            servers = spec.toString();
+        }
+        if (servers == null) {
+            System.err.println("Cần --servers=... hoặc --embedded=N");
+            System.exit(2);
+        }
+
+        try (ServerPool pool = new ServerPool(new TimeClient.Listener() {
+            @Override
+            public void onAlarm(String message) {
+            }
+
+            @Override
+            public void onLog(String message) {
+                System.out.println("  " + message);
+            }
+        }, timeout)) {
+            pool.setServers(servers, ServerGUI.PORT);
+            for (int r = 1; r <= roundCount; r++) {
+                if (r == killAfter + 1 && !started.isEmpty()) {
+                    started.get(0).stop();
+                    System.out.println("Đã dừng server " + pool.getMembers().get(0).name);
+                }
+                Round round;
+                try {
+                    round = pool.sync(burst).join();
+                } catch (CompletionException e) {
+                    System.out.println("Vòng " + r + ": lỗi " + TimeClient.unwrap(e).getMessage());
+                    continue;
+                }
+                if (round.ok) {
+                    System.out.printf(Locale.ROOT, "Vòng %d: lệch %.3f ms, chọn %d/%d server, nguồn chính %s%n",
+                            r, round.offsetNanos / 1e6, round.survivors, round.candidates, round.systemPeer.name);
+                } else {
+                    System.out.printf(Locale.ROOT, "Vòng %d: không có đa số server thống nhất (%d server có mẫu)%n",
+                            r, round.candidates);
+                }
+                for (String line : round.report) {
+                    System.out.println("  " + line);
+                }
+                try {
+                    String reply = pool.request("PING").join();
+                    System.out.println("  PING qua " + pool.getPrimary().name + ": " + reply);
+                } catch (CompletionException e) {
+                    System.out.println("  PING lỗi: " + TimeClient.unwrap(e).getMessage());
+                }
+                Thread.sleep(intervalMs);
+            }
+        } finally {
+            for (TimeServer server : started) {
+                server.stop();
+            }
+        }
+    }
+}
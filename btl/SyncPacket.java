@@ -0,0 +1,191 @@
+// File: SyncPacket.java
+package btl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Gói đồng bộ nhị phân (kiểu NTP, trao đổi 4 mốc thời gian), chạy song song với giao thức văn bản.
+ *
+ * Bố cục cố định 48 byte (big-endian):
+ * <pre>
+ *  0..1   magic 0xB7 0x5C  (byte đầu có bit cao nên không thể là lệnh văn bản)
+ *  2      version
+ *  3      mode: 1 = yêu cầu, 2 = phản hồi, 3 = quảng bá (server tự phát, chỉ có T3)
+ *  4..7   request id (server gửi lại nguyên giá trị; số thứ tự với gói quảng bá)
+ *  8..11  độ lệch múi giờ của server (giây)
+ *  12..13 flags (bit 0: có phần đuôi zone id)
+ *  14..15 dự phòng
+ *  16..23 originate   T1 - client gửi     (nano giây kể từ epoch)
+ *  24..31 receive     T2 - server nhận
+ *  32..39 transmit    T3 - server gửi
+ *  40..47 destination T4 - client nhận (chỉ điền phía client, trên đường truyền = 0)
+ * </pre>
+ * Phần đuôi tùy chọn (khi có FLAG_ZONE_ID): 1 byte độ dài + zone id UTF-8.
+ */
+final class SyncPacket {
+    static final int SIZE = 48;
+    static final byte MAGIC_0 = (byte) 0xB7;
+    static final byte MAGIC_1 = (byte) 0x5C;
+    static final byte VERSION = 1;
+    static final byte MODE_REQUEST = 1;
+    static final byte MODE_RESPONSE = 2;
+    static final byte MODE_BROADCAST = 3;
+    static final int FLAG_ZONE_ID = 1;
+
+    private static final int OFF_VERSION = 2;
+    private static final int OFF_MODE = 3;
+    private static final int OFF_ID = 4;
+    private static final int OFF_ZONE_OFFSET = 8;
+    private static final int OFF_FLAGS = 12;
+    private static final int OFF_ORIGINATE = 16;
+    private static final int OFF_RECEIVE = 24;
+    private static final int OFF_TRANSMIT = 32;
+    private static final int OFF_DESTINATION = 40;
+
+    int version;
+    int mode;
+    int requestId;
+    int zoneOffsetSeconds;
+    String zoneId;
+    long originate;
+    long receive;
+    long transmit;
+    long destination;
+    // Chỉ dùng phía client: System.nanoTime() lúc nhận (không truyền trên mạng)
+    long receivedMono;
+
+    /** Thời điểm hiện tại tính bằng nano giây kể từ epoch (độ phân giải thực tế tùy JVM/hệ điều hành). */
+    static long nowEpochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    /** Kiểm tra [from, to) có phải gói đồng bộ nhị phân không. */
+    static boolean matches(ByteBuffer buf, int from, int to) {
+        return to - from >= SIZE && buf.get(from) == MAGIC_0 && buf.get(from + 1) == MAGIC_1;
+    }
+
+    /** Ghi một yêu cầu vào out (từ vị trí hiện tại), T1 được đóng dấu ngay lúc ghi. */
+    static void writeRequest(ByteBuffer out, int requestId) {
+        int at = out.position();
+        for (int i = 0; i < SIZE; i++) out.put((byte) 0);
+        out.put(at, MAGIC_0);
+        out.put(at + 1, MAGIC_1);
+        out.put(at + OFF_VERSION, VERSION);
+        out.put(at + OFF_MODE, MODE_REQUEST);
+        out.putInt(at + OFF_ID, requestId);
+        out.putLong(at + OFF_ORIGINATE, nowEpochNanos());
+    }
+
+    /**
+     * Phía server: dựng phản hồi cho yêu cầu nằm tại req[from] vào out, không cấp phát.
+     * T3 chưa được điền: gọi stampTransmit() ngay trước khi gửi.
+     * @return false nếu gói không phải yêu cầu hợp lệ (không nên trả lời)
+     */
+    static boolean writeResponse(ByteBuffer req, int from, ByteBuffer out, long receiveNanos,
+                                 int zoneOffsetSeconds, byte[] zoneId) {
+        if (req.get(from + OFF_MODE) != MODE_REQUEST || req.get(from + OFF_VERSION) < 1) {
+            return false;
+        }
+        int at = out.position();
+        for (int i = 0; i < SIZE; i++) {
+            out.put(req.get(from + i));
+        }
+        // Trả lời bằng phiên bản thấp hơn giữa hai bên để client tự thích nghi
+        out.put(at + OFF_VERSION, (byte) Math.min(req.get(from + OFF_VERSION), VERSION));
+        out.put(at + OFF_MODE, MODE_RESPONSE);
+        out.putInt(at + OFF_ZONE_OFFSET, zoneOffsetSeconds);
+        out.putShort(at + OFF_FLAGS, (short) (zoneId != null ? FLAG_ZONE_ID : 0));
+        out.putLong(at + OFF_RECEIVE, receiveNanos);
+        out.putLong(at + OFF_DESTINATION, 0L);
+        if (zoneId != null) {
+            out.put((byte) zoneId.length);
+            out.put(zoneId);
+        }
+        return true;
+    }
+
+    /** Phía server: ghi gói quảng bá vào out (từ vị trí hiện tại); T3 điền bằng stampTransmit() lúc gửi. */
+    static void writeBroadcast(ByteBuffer out, int sequence, int zoneOffsetSeconds, byte[] zoneId) {
+        int at = out.position();
+        for (int i = 0; i < SIZE; i++) out.put((byte) 0);
+        out.put(at, MAGIC_0);
+        out.put(at + 1, MAGIC_1);
+        out.put(at + OFF_VERSION, VERSION);
+        out.put(at + OFF_MODE, MODE_BROADCAST);
+        out.putInt(at + OFF_ID, sequence);
+        out.putInt(at + OFF_ZONE_OFFSET, zoneOffsetSeconds);
+        out.putShort(at + OFF_FLAGS, (short) (zoneId != null ? FLAG_ZONE_ID : 0));
+        if (zoneId != null) {
+            out.put((byte) zoneId.length);
+            out.put(zoneId);
+        }
+    }
+
+    /** Đóng dấu T3 cho phản hồi nằm tại out[at] - gọi sát thời điểm gửi. */
+    static void stampTransmit(ByteBuffer out, int at) {
+        stampTransmit(out, at, 0);
+    }
+
+    /** Như stampTransmit(out, at) nhưng cộng thêm skewNanos (đồng hồ server giả lập lệch khi thử nghiệm). */
+    static void stampTransmit(ByteBuffer out, int at, long skewNanos) {
+        out.putLong(at + OFF_TRANSMIT, nowEpochNanos() + skewNanos);
+    }
+
+    /** Phía client: giải mã phản hồi nằm trong [from, to) và gắn T4. */
+    static SyncPacket decode(ByteBuffer buf, int from, int to, long destinationNanos) {
+        SyncPacket p = new SyncPacket();
+        p.version = buf.get(from + OFF_VERSION);
+        p.mode = buf.get(from + OFF_MODE);
+        p.requestId = buf.getInt(from + OFF_ID);
+        p.zoneOffsetSeconds = buf.getInt(from + OFF_ZONE_OFFSET);
+        int flags = buf.getShort(from + OFF_FLAGS);
+        p.originate = buf.getLong(from + OFF_ORIGINATE);
+        p.receive = buf.getLong(from + OFF_RECEIVE);
+        p.transmit = buf.getLong(from + OFF_TRANSMIT);
+        p.destination = destinationNanos;
+        if ((flags & FLAG_ZONE_ID) != 0 && to > from + SIZE) {
+            int len = buf.get(from + SIZE) & 0xFF;
+            if (from + SIZE + 1 + len <= to) {
+                p.zoneId = Protocol.decode(buf, from + SIZE + 1, from + SIZE + 1 + len);
+            }
+        }
+        return p;
+    }
+
+    /** Độ lệch đồng hồ server - client (nano giây): ((T2 - T1) + (T3 - T4)) / 2 */
+    long offsetNanos() {
+        return ((receive - originate) + (transmit - destination)) / 2;
+    }
+
+    /** Trễ khứ hồi trên mạng, đã trừ thời gian xử lý ở server: (T4 - T1) - (T3 - T2) */
+    long delayNanos() {
+        return (destination - originate) - (transmit - receive);
+    }
+
+    /**
+     * Múi giờ của server: zone id nếu client nhận ra (dữ liệu tzdb hai bên có thể khác, gói có thể hỏng),
+     * không thì độ lệch cố định đi kèm.
+     */
+    ZoneId zone() {
+        if (zoneId != null) {
+            try {
+                return ZoneId.of(zoneId);
+            } catch (DateTimeException e) {
+                // dùng độ lệch bên dưới
+            }
+        }
+        int max = ZoneOffset.MAX.getTotalSeconds();
+        return ZoneOffset.ofTotalSeconds(Math.max(-max, Math.min(max, zoneOffsetSeconds)));
+    }
+
+    static byte[] encodeZoneId(String zoneId) {
+        byte[] b = zoneId.getBytes(StandardCharsets.UTF_8);
+        return b.length <= 255 ? b : null;
+    }
+}
@@ -0,0 +1,98 @@
+// File: SyncedClock.java
+package btl;
+
+/**
+ * Giờ đã đồng bộ phía client, neo vào System.nanoTime() thay vì đồng hồ hệ thống.
+ * - Giờ = epochBase + nanoTime + độ lệch của ClockFilter; epochBase (đồng hồ hệ thống - nanoTime) được chụp
+ *   một lần ở mẫu đầu tiên, nên chỉnh giờ máy (NTP nhảy, chỉnh tay) giữa hai lần đồng bộ không làm sai giờ
+ * - Mẫu đo (offset so với đồng hồ hệ thống lúc nhận) được quy về mốc epochBase trước khi đưa vào ClockFilter
+ * - check() phát hiện đồng hồ hệ thống nhảy so với nanoTime và khoảng trống lớn giữa hai lần kiểm tra
+ *   (máy ngủ/treo); khi đó lịch sử mẫu bị bỏ ở mẫu kế tiếp, vì trên một số hệ điều hành nanoTime dừng lúc ngủ
+ * - Chưa có mẫu nào thì trả về giờ hệ thống
+ */
+final class SyncedClock {
+    /** Đồng hồ hệ thống lệch khỏi nanoTime quá ngưỡng này giữa hai lần check() thì coi là nhảy. */
+    static final long JUMP_THRESHOLD_NANOS = 50_000_000L;
+    /** Hai lần check() cách nhau quá khoảng này (nhịp 1 giây) thì coi là máy vừa ngủ/treo. */
+    static final long SUSPEND_GAP_NANOS = 5_000_000_000L;
+
+    enum Discontinuity { NONE, WALL_STEP, SUSPEND }
+
+    private final ClockFilter filter = new ClockFilter();
+    private boolean anchored;
+    private long epochBase;
+    private boolean discardHistory;
+
+    private boolean checked;
+    private long lastSkew;
+    private long lastCheckMono;
+    private long lastJumpNanos;
+
+    synchronized boolean isSynced() {
+        return anchored && filter.isInitialized();
+    }
+
+    synchronized double frequencyPpm() {
+        return filter.frequencyPpm();
+    }
+
+    /** Giờ đồng bộ hiện tại, nano giây kể từ epoch. */
+    synchronized long nowEpochNanos() {
+        long mono = System.nanoTime();
+        if (!anchored || !filter.isInitialized()) return SyncPacket.nowEpochNanos();
+        return epochBase + mono + filter.offsetNanos(mono);
+    }
+
+    /** Chênh lệch đang áp dụng so với đồng hồ hệ thống (để ghi nhật ký). */
+    long appliedOffsetNanos() {
+        return nowEpochNanos() - SyncPacket.nowEpochNanos();
+    }
+
+    /**
+     * Thêm một mẫu đo lúc monoNanos; offsetNanos = giờ server - giờ hệ thống lúc nhận (như ServerPool/TimeClient).
+     */
+    synchronized ClockFilter.Result addSample(long offsetNanos, long delayNanos, long monoNanos) {
+        long skew = SyncPacket.nowEpochNanos() - System.nanoTime();
+        if (!anchored) {
+            epochBase = skew;
+            anchored = true;
+        }
+        if (discardHistory) {
+            filter.reset();
+            discardHistory = false;
+        }
+        return filter.addSample(offsetNanos + skew - epochBase, delayNanos, monoNanos);
+    }
+
+    /** Bắt đầu lại bộ lọc từ mẫu kế tiếp (ví dụ khi đổi server); tới lúc đó vẫn giữ giờ hiện tại. */
+    synchronized void reset() {
+        discardHistory = anchored;
+    }
+
+    /** Gọi đều đặn (mỗi nhịp đồng hồ) để phát hiện đồng hồ hệ thống nhảy hoặc máy vừa ngủ. */
+    synchronized Discontinuity check() {
+        long mono = System.nanoTime();
+        long skew = SyncPacket.nowEpochNanos() - mono;
+        Discontinuity result = Discontinuity.NONE;
+        if (checked) {
+            if (mono - lastCheckMono > SUSPEND_GAP_NANOS) {
+                result = Discontinuity.SUSPEND;
+            } else if (Math.abs(skew - lastSkew) > JUMP_THRESHOLD_NANOS) {
+                result = Discontinuity.WALL_STEP;
+            }
+            if (result != Discontinuity.NONE) {
+                lastJumpNanos = skew - lastSkew;
+                discardHistory = anchored;
+            }
+        }
+        checked = true;
+        lastSkew = skew;
+        lastCheckMono = mono;
+        return result;
+    }
+
+    /** Đồng hồ hệ thống đã nhảy bao nhiêu (so với nanoTime) ở lần check() phát hiện gián đoạn gần nhất. */
+    synchronized long lastJumpNanos() {
+        return lastJumpNanos;
+    }
+}
@@ -0,0 +1,224 @@
+// File: TimeBroadcastListener.java
+package btl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nghe giờ quảng bá do TimeBroadcaster phát, thay cho hỏi server định kỳ.
+ * - Offset = (T3 - T4) + trễ một chiều; trễ một chiều được hiệu chỉnh bằng một loạt CALIBRATION_BURST gói
+ *   đồng bộ unicast tới chính server phát (lấy mẫu trễ nhỏ nhất), lúc đầu, sau WARMUP_MS (lần đầu thường đo
+ *   chậm do JIT / ARP) và sau đó mỗi RECALIBRATE_MS
+ * - Gói đến muộn có T3 - T4 nhỏ hơn: so với giá trị lớn nhất trong RAW_WINDOW gói gần nhất để báo trễ lớn hơn,
+ *   ClockFilter nhờ đó ưu tiên các gói đến nhanh
+ * - Chỉ theo một nguồn: nguồn khác chỉ được nhận khi nguồn hiện tại im lặng quá SOURCE_TIMEOUT_MS
+ * - Chưa hiệu chỉnh xong thì không đưa ra mẫu nào
+ */
+final class TimeBroadcastListener implements Closeable {
+
+    private static final int CALIBRATION_BURST = 4;
+    private static final long WARMUP_MS = 30_000;
+    private static final long RECALIBRATE_MS = 300_000;
+    private static final int RAW_WINDOW = 8;
+    private static final long RETRY_MS = 10_000;
+    private static final long SOURCE_TIMEOUT_MS = 5_000;
+    private static final DateTimeFormatter SERVER_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy");
+
+    /** Một mẫu đo từ gói quảng bá, dùng như kết quả một vòng đồng bộ. */
+    static final class Sample {
+        final InetSocketAddress server;
+        final long offsetNanos;
+        final long delayNanos; // trễ khứ hồi lúc hiệu chỉnh + phần gói này đến muộn hơn gói nhanh nhất
+        final long monoNanos;
+        final ZoneId zone;
+        final String serverTime;
+
+        Sample(InetSocketAddress server, long offsetNanos, long delayNanos, long monoNanos, ZoneId zone,
+               String serverTime) {
+            this.server = server;
+            this.offsetNanos = offsetNanos;
+            this.delayNanos = delayNanos;
+            this.monoNanos = monoNanos;
+            this.zone = zone;
+            this.serverTime = serverTime;
+        }
+    }
+
+    /** Được gọi trên luồng nghe (mẫu) hoặc luồng nhận của TimeClient (nhật ký hiệu chỉnh). */
+    interface Listener {
+        void onSample(Sample sample);
+
+        void onLog(String message);
+    }
+
+    private final InetSocketAddress group;
+    private final Listener listener;
+    private final MulticastSocket socket;
+    private final TimeClient client;
+    private final Thread thread;
+
+    // Trạng thái nguồn, truy cập trong synchronized (this)
+    private InetSocketAddress source;
+    private long lastHeardMono;
+    private final long[] raws = new long[RAW_WINDOW]; // T3 - T4 của các gói quảng bá gần nhất
+    private int rawCount;
+    private int calibrations;
+    private boolean calibrated;
+    private boolean calibrating;
+    private long oneWayNanos;
+    private long roundTripNanos;
+    private long nextCalibrationMono;
+
+    TimeBroadcastListener(InetSocketAddress group, Listener listener, long timeoutMs) throws IOException {
+        this.group = group;
+        this.listener = listener;
+        this.client = new TimeClient(new TimeClient.Listener() {
+            @Override
+            public void onAlarm(String message) {
+                // socket hiệu chỉnh không đăng ký báo thức
+            }
+
+            @Override
+            public void onLog(String message) {
+                listener.onLog(message);
+            }
+        }, timeoutMs);
+        try {
+            socket = new MulticastSocket(group.getPort());
+            if (group.getAddress().isMulticastAddress()) {
+                socket.joinGroup(group, null);
+            }
+        } catch (IOException e) {
+            client.close();
+            throw e;
+        }
+        thread = new Thread(this::receiveLoop, "Broadcast-Listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    InetSocketAddress getGroup() {
+        return group;
+    }
+
+    private void receiveLoop() {
+        byte[] data = new byte[SyncPacket.SIZE + 256];
+        DatagramPacket packet = new DatagramPacket(data, data.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(data.length);
+                socket.receive(packet);
+                long t4 = SyncPacket.nowEpochNanos();
+                long mono = System.nanoTime();
+                ByteBuffer buf = ByteBuffer.wrap(data, 0, packet.getLength());
+                if (!SyncPacket.matches(buf, 0, packet.getLength())) continue;
+                SyncPacket p = SyncPacket.decode(buf, 0, packet.getLength(), t4);
+                if (p.mode != SyncPacket.MODE_BROADCAST) continue;
+                Sample sample = onAnnouncement((InetSocketAddress) packet.getSocketAddress(), p, mono);
+                if (sample != null) listener.onSample(sample);
+            } catch (SocketException e) {
+                break; // close()
+            } catch (IOException | RuntimeException e) {
+                listener.onLog("Lỗi nhận gói quảng bá: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized Sample onAnnouncement(InetSocketAddress from, SyncPacket p, long mono) {
+        if (!from.equals(source)) {
+            if (source != null && mono - lastHeardMono < TimeUnit.MILLISECONDS.toNanos(SOURCE_TIMEOUT_MS)) {
+                return null;
+            }
+            listener.onLog("Nghe giờ quảng bá từ server " + from.getAddress().getHostAddress() + ":" + from.getPort());
+            source = from;
+            calibrated = false;
+            calibrations = 0;
+            rawCount = 0;
+            nextCalibrationMono = mono;
+        }
+        lastHeardMono = mono;
+        long raw = p.transmit - p.destination;
+        raws[rawCount++ % RAW_WINDOW] = raw;
+        if (!calibrating && mono - nextCalibrationMono >= 0) {
+            calibrate(from);
+        }
+        if (!calibrated) return null;
+
+        ZoneId zone = p.zone();
+        String serverTime = SERVER_TIME_FORMAT.format(Instant.ofEpochSecond(0, p.transmit).atZone(zone))
+                + " (" + zone.getId() + ")";
+        return new Sample(from, raw + oneWayNanos, roundTripNanos + 2 * (bestRaw() - raw), mono, zone, serverTime);
+    }
+
+    /** Trao đổi unicast với nguồn để đo trễ một chiều: offset chính xác - (T3 - T4) của gói quảng bá. */
+    private void calibrate(InetSocketAddress server) {
+        calibrating = true;
+        try {
+            client.setServer(server.getAddress().getHostAddress(), server.getPort());
+        } catch (IOException e) {
+            finishCalibration(server, null, e);
+            return;
+        }
+        List<CompletableFuture<SyncPacket>> replies = new ArrayList<>(CALIBRATION_BURST);
+        for (int i = 0; i < CALIBRATION_BURST; i++) {
+            replies.add(client.sync());
+        }
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, ex) -> {
+            SyncPacket best = null;
+            for (CompletableFuture<SyncPacket> reply : replies) {
+                if (reply.isCompletedExceptionally()) continue;
+                SyncPacket p = reply.getNow(null);
+                if (best == null || p.delayNanos() < best.delayNanos()) best = p;
+            }
+            finishCalibration(server, best, ex);
+        });
+    }
+
+    private synchronized void finishCalibration(InetSocketAddress server, SyncPacket best, Throwable ex) {
+        calibrating = false;
+        if (!server.equals(source)) return;
+        long now = System.nanoTime();
+        if (best == null) {
+            nextCalibrationMono = now + TimeUnit.MILLISECONDS.toNanos(RETRY_MS);
+            listener.onLog("Không hiệu chỉnh được trễ với server phát"
+                    + (ex != null ? ": " + TimeClient.unwrap(ex).getMessage() : "") + ", thử lại sau "
+                    + RETRY_MS / 1000 + " giây");
+            return;
+        }
+        // Trễ một chiều nằm trong [0, khứ hồi]; ngoài khoảng đó là do nhiễu đo
+        roundTripNanos = Math.max(0, best.delayNanos());
+        oneWayNanos = Math.max(0, Math.min(roundTripNanos, best.offsetNanos() - bestRaw()));
+        calibrated = true;
+        nextCalibrationMono = now + TimeUnit.MILLISECONDS.toNanos(++calibrations == 1 ? WARMUP_MS : RECALIBRATE_MS);
+        listener.onLog(String.format(Locale.ROOT, "Đã hiệu chỉnh trễ quảng bá: khứ hồi %.3f ms, một chiều %.3f ms",
+                roundTripNanos / 1e6, oneWayNanos / 1e6));
+    }
+
+    /** T3 - T4 lớn nhất trong cửa sổ: gói đến nhanh nhất. */
+    private long bestRaw() {
+        long best = Long.MIN_VALUE;
+        for (int i = 0; i < Math.min(rawCount, RAW_WINDOW); i++) {
+            best = Math.max(best, raws[i]);
+        }
+        return best;
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+        client.close();
+    }
+}
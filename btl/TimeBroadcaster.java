@@ -0,0 +1,99 @@
+// File: TimeBroadcaster.java
+package btl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Phát giờ quảng bá (kiểu NTP broadcast): mỗi chu kỳ một gói SyncPacket MODE_BROADCAST tới địa chỉ nhóm.
+ * - Chi phí server cố định theo chu kỳ, không phụ thuộc số client đang nghe (TimeBroadcastListener)
+ * - Gửi từ socket unicast của server: client lấy luôn địa chỉ nguồn để thỉnh thoảng hiệu chỉnh trễ
+ * - Gói được gửi ở đầu mỗi chu kỳ theo giờ hệ thống (đầu mỗi giây với chu kỳ 1 s)
+ * Địa chỉ multicast dùng TTL mặc định 1 (chỉ trong mạng LAN); địa chỉ broadcast thì bật SO_BROADCAST.
+ */
+final class TimeBroadcaster {
+
+    static final InetSocketAddress DEFAULT_GROUP = new InetSocketAddress("239.255.98.76", 9875);
+    static final long DEFAULT_INTERVAL_MS = 1000;
+
+    private final DatagramChannel channel;
+    private final InetSocketAddress group;
+    private final long intervalMs;
+    private final Supplier<TimeResponseCache.Entry> zone;
+    private final LongSupplier skewNanos;
+    private final Consumer<String> log;
+    private final LongAdder sent = new LongAdder();
+    private volatile Thread thread;
+
+    TimeBroadcaster(DatagramChannel channel, InetSocketAddress group, long intervalMs,
+                    Supplier<TimeResponseCache.Entry> zone, LongSupplier skewNanos, Consumer<String> log) {
+        this.channel = channel;
+        this.group = group;
+        this.intervalMs = Math.max(10, intervalMs);
+        this.zone = zone;
+        this.skewNanos = skewNanos;
+        this.log = log;
+    }
+
+    synchronized void start() throws IOException {
+        if (thread != null) return;
+        if (!group.getAddress().isMulticastAddress()) {
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        }
+        thread = new Thread(this::run, "Time-Broadcast");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+    }
+
+    InetSocketAddress getGroup() {
+        return group;
+    }
+
+    long sentCount() {
+        return sent.sum();
+    }
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        ByteBuffer out = ByteBuffer.allocateDirect(SyncPacket.SIZE + 256);
+        int sequence = 0;
+        boolean failing = false;
+        while (thread == self) {
+            try {
+                Thread.sleep(intervalMs - Math.floorMod(System.currentTimeMillis(), intervalMs));
+            } catch (InterruptedException e) {
+                break;
+            }
+            TimeResponseCache.Entry cached = zone.get();
+            out.clear();
+            SyncPacket.writeBroadcast(out, sequence++, cached.zoneOffsetSeconds, cached.zoneIdBytes);
+            out.flip();
+            SyncPacket.stampTransmit(out, 0, skewNanos.getAsLong());
+            try {
+                channel.send(out, group);
+                sent.increment();
+                failing = false;
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                // Chỉ ghi lần lỗi đầu tiên: mạng không có đường multicast thì lỗi lặp lại mỗi chu kỳ
+                if (!failing) log.accept("Không phát được giờ quảng bá tới " + group + ": " + e.getMessage());
+                failing = true;
+            }
+        }
+    }
+}
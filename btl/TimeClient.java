@@ -0,0 +1,455 @@
+// File: TimeClient.java
+package btl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lõi client UDP không phụ thuộc Swing.
+ * - Một luồng nhận duy nhất; mỗi phản hồi được chuyển đúng tới người gọi nhờ request id
+ *   (thẻ "#id|" với lệnh văn bản, trường id với gói nhị phân) và bảng PendingRequests
+ * - Nhiều yêu cầu có thể chạy song song; mỗi yêu cầu có hạn chờ riêng
+ * - Server cũ (không hiểu thẻ id / gói nhị phân) được phát hiện tự động: client chuyển sang chế độ
+ *   LEGACY, gửi lệnh không gắn thẻ và ghép phản hồi theo thứ tự FIFO như trước
+ */
+public class TimeClient implements Closeable {
+
+    /** Sự kiện từ client (được gọi trên luồng nhận). */
+    public interface Listener {
+        void onAlarm(String message);
+
+        void onLog(String message);
+    }
+
+    /** Server không hỗ trợ thẻ id / gói nhị phân. */
+    static final class LegacyServerException extends IOException {
+        LegacyServerException() {
+            super("Server không hỗ trợ giao thức mới (request id / đồng bộ nhị phân)");
+        }
+    }
+
+    private enum ServerMode { PROBING, MODERN, LEGACY }
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final DatagramChannel channel;
+    private final Listener listener;
+    private final long timeoutMs;
+    private final ScheduledThreadPoolExecutor timer;
+    private final PendingRequests<String> pendingText;
+    private final PendingRequests<SyncPacket> pendingSync;
+    private final PendingRequests<CalcBatch.Result> pendingBatch;
+    // Phản hồi tính toán theo lô đang ghép dở (chỉ luồng nhận truy cập)
+    private final Map<Integer, CalcBatch.Result> partialBatches = new HashMap<>();
+    // Chế độ LEGACY: phản hồi không có id, ghép theo thứ tự gửi
+    private final ConcurrentLinkedQueue<CompletableFuture<String>> legacyPending = new ConcurrentLinkedQueue<>();
+    // Số phản hồi "yêu cầu không xác định" còn phải bỏ qua sau khi chuyển sang LEGACY
+    private final AtomicInteger legacyDiscard = new AtomicInteger();
+    private final Thread listenerThread;
+
+    private volatile InetSocketAddress server;
+    private volatile ServerMode mode = ServerMode.PROBING;
+
+    // Bộ đệm gửi trực tiếp cho từng luồng gửi (dùng lại, không cấp phát mỗi yêu cầu)
+    private final ThreadLocal<ByteBuffer> sendBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(512));
+
+    public TimeClient(Listener listener, long timeoutMs) throws IOException {
+        this.listener = listener;
+        this.timeoutMs = timeoutMs;
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "Client-Timeouts");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.pendingText = new PendingRequests<>(timer);
+        this.pendingSync = new PendingRequests<>(timer);
+        this.pendingBatch = new PendingRequests<>(timer);
+
+        this.channel = DatagramChannel.open();
+        this.channel.bind(null);
+
+        listenerThread = new Thread(this::receiveLoop, "Client-Socket-Listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    /** Tăng bộ đệm nhận của socket khi có nhiều yêu cầu bay cùng lúc (ví dụ LoadGenerator). */
+    public void setReceiveBufferSize(int bytes) throws IOException {
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, bytes);
+    }
+
+    public int getLocalPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Đặt server đích. Địa chỉ chỉ được phân giải lại khi host/port thay đổi.
+     * @return true nếu server thay đổi (khi đó chế độ giao thức được thăm dò lại)
+     */
+    public boolean setServer(String host, int port) throws UnknownHostException {
+        InetSocketAddress current = server;
+        if (current != null && current.getPort() == port && current.getHostString().equals(host)) {
+            return false;
+        }
+        InetSocketAddress addr = new InetSocketAddress(host, port);
+        if (addr.isUnresolved()) {
+            throw new UnknownHostException(host);
+        }
+        server = addr;
+        mode = ServerMode.PROBING;
+        return true;
+    }
+
+    public boolean isLegacyServer() {
+        return mode == ServerMode.LEGACY;
+    }
+
+    /** Số yêu cầu đang chờ phản hồi. */
+    public int pendingCount() {
+        return pendingText.size() + pendingSync.size() + pendingBatch.size() + legacyPending.size();
+    }
+
+    // ============================
+    // Gửi yêu cầu
+    // ============================
+
+    /**
+     * Gửi một lệnh văn bản (PING, ALARM_SET:..., CALC_REQUEST:...) và nhận phản hồi tương ứng.
+     */
+    public CompletableFuture<String> request(String command) {
+        if (mode == ServerMode.LEGACY) {
+            return requestLegacy(command);
+        }
+        int id = pendingText.nextId();
+        CompletableFuture<String> future = pendingText.register(id, timeoutMs);
+        try {
+            send(("#" + id + "|" + command).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            pendingText.fail(id, e);
+        }
+        // Server cũ không hiểu thẻ id: gửi lại lệnh không gắn thẻ
+        return future.handle((reply, ex) -> {
+            if (ex == null) return CompletableFuture.completedFuture(reply);
+            if (unwrap(ex) instanceof LegacyServerException) return requestLegacy(command);
+            return TimeClient.<String>failed(unwrap(ex));
+        }).thenCompose(f -> f);
+    }
+
+    private CompletableFuture<String> requestLegacy(String command) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        legacyPending.add(future);
+        timer.schedule(() -> {
+            if (legacyPending.remove(future)) {
+                future.completeExceptionally(new TimeoutException("Hết thời gian chờ phản hồi"));
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            send(command.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            legacyPending.remove(future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Gửi một gói đồng bộ nhị phân. Kết thúc bằng LegacyServerException nếu server không hỗ trợ.
+     */
+    public CompletableFuture<SyncPacket> sync() {
+        if (mode == ServerMode.LEGACY) {
+            return failed(new LegacyServerException());
+        }
+        int id = pendingSync.nextId();
+        CompletableFuture<SyncPacket> future = pendingSync.register(id, timeoutMs);
+        try {
+            InetSocketAddress target = requireServer();
+            ByteBuffer buf = sendBuffers.get();
+            buf.clear();
+            SyncPacket.writeRequest(buf, id);
+            buf.flip();
+            channel.send(buf, target);
+        } catch (IOException e) {
+            pendingSync.fail(id, e);
+        }
+        return future;
+    }
+
+    /**
+     * Tính nhiều phép tính (a[i] ops[i] b[i], ops là '+', '-', '*', '/') bằng gói nhị phân CALC_BATCH.
+     * Lô lớn được chia thành nhiều yêu cầu, mỗi yêu cầu vừa một datagram; server cũ được phục vụ
+     * bằng từng lệnh CALC_REQUEST.
+     */
+    public CompletableFuture<CalcBatch.Result> calcBatch(double[] a, byte[] ops, double[] b) {
+        int n = a.length;
+        if (ops.length != n || b.length != n || n == 0) {
+            throw new IllegalArgumentException("Các mảng toán hạng / phép toán phải cùng độ dài và khác rỗng");
+        }
+        if (mode == ServerMode.LEGACY) {
+            return calcBatchLegacy(a, ops, b);
+        }
+        int chunks = (n + CalcBatch.MAX_ITEMS_PER_DATAGRAM - 1) / CalcBatch.MAX_ITEMS_PER_DATAGRAM;
+        List<CompletableFuture<CalcBatch.Result>> parts = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int offset = c * CalcBatch.MAX_ITEMS_PER_DATAGRAM;
+            int count = Math.min(CalcBatch.MAX_ITEMS_PER_DATAGRAM, n - offset);
+            int id = pendingBatch.nextId();
+            parts.add(pendingBatch.register(id, timeoutMs));
+            try {
+                InetSocketAddress target = requireServer();
+                ByteBuffer buf = sendBuffer(CalcBatch.MAX_DATAGRAM);
+                CalcBatch.writeRequest(buf, id, a, ops, b, offset, count);
+                buf.flip();
+                channel.send(buf, target);
+            } catch (IOException e) {
+                pendingBatch.fail(id, e);
+            }
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).handle((v, ex) -> {
+            if (ex == null) return CompletableFuture.completedFuture(merge(parts, n));
+            if (unwrap(ex) instanceof LegacyServerException) return calcBatchLegacy(a, ops, b);
+            return TimeClient.<CalcBatch.Result>failed(unwrap(ex));
+        }).thenCompose(f -> f);
+    }
+
+    private static CalcBatch.Result merge(List<CompletableFuture<CalcBatch.Result>> parts, int n) {
+        if (parts.size() == 1) return parts.get(0).join();
+        CalcBatch.Result all = new CalcBatch.Result(n);
+        int at = 0;
+        for (CompletableFuture<CalcBatch.Result> part : parts) {
+            CalcBatch.Result r = part.join();
+            System.arraycopy(r.values, 0, all.values, at, r.values.length);
+            System.arraycopy(r.status, 0, all.status, at, r.status.length);
+            at += r.values.length;
+        }
+        all.received = n;
+        return all;
+    }
+
+    /** Server cũ: gửi từng lệnh CALC_REQUEST song song rồi gom kết quả. */
+    private CompletableFuture<CalcBatch.Result> calcBatchLegacy(double[] a, byte[] ops, double[] b) {
+        int n = a.length;
+        CalcBatch.Result result = new CalcBatch.Result(n);
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[n];
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            replies[i] = request("CALC_REQUEST:" + a[i] + "," + (char) ops[i] + "," + b[i]).thenAccept(reply -> {
+                byte status = CalcBatch.OK;
+                double value = Double.NaN;
+                if (reply.startsWith("Lỗi: Chia cho 0")) {
+                    status = CalcBatch.DIV_ZERO;
+                } else {
+                    try {
+                        value = Double.parseDouble(reply);
+                    } catch (NumberFormatException e) {
+                        status = CalcBatch.BAD_OPERATOR;
+                    }
+                }
+                result.values[index] = value;
+                result.status[index] = status;
+            });
+        }
+        return CompletableFuture.allOf(replies).thenApply(v -> {
+            result.received = n;
+            return result;
+        });
+    }
+
+    private InetSocketAddress requireServer() throws IOException {
+        InetSocketAddress target = server;
+        if (target == null) {
+            throw new IOException("Chưa chọn server");
+        }
+        return target;
+    }
+
+    /** Gửi payload tới server qua bộ đệm trực tiếp của luồng hiện tại. */
+    private void send(byte[] payload) throws IOException {
+        InetSocketAddress target = requireServer();
+        ByteBuffer buf = sendBuffer(payload.length);
+        buf.put(payload);
+        buf.flip();
+        channel.send(buf, target);
+    }
+
+    /** Bộ đệm gửi của luồng hiện tại, đã clear(), dung lượng ít nhất size byte. */
+    private ByteBuffer sendBuffer(int size) {
+        ByteBuffer buf = sendBuffers.get();
+        if (buf.capacity() < size) {
+            buf = ByteBuffer.allocateDirect(size);
+            sendBuffers.set(buf);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    // ============================
+    // Luồng nhận
+    // ============================
+    private void receiveLoop() {
+        // Bộ đệm nhận trực tiếp dùng lại cho mọi gói tin
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (channel.isOpen() && !Thread.currentThread().isInterrupted()) {
+            try {
+                buf.clear();
+                channel.receive(buf);
+                long arrivalNanos = SyncPacket.nowEpochNanos();
+                long arrivalMono = System.nanoTime();
+                buf.flip();
+
+                if (CalcBatch.matches(buf, 0, buf.limit()) && CalcBatch.isResponse(buf, 0)) {
+                    mode = ServerMode.MODERN;
+                    onBatchFragment(buf);
+                    continue;
+                }
+                if (SyncPacket.matches(buf, 0, buf.limit())) {
+                    SyncPacket packet = SyncPacket.decode(buf, 0, buf.limit(), arrivalNanos);
+                    packet.receivedMono = arrivalMono;
+                    mode = ServerMode.MODERN;
+                    pendingSync.complete(packet.requestId, packet);
+                    continue;
+                }
+
+                int start = Protocol.trimStart(buf, 0, buf.limit());
+                int end = Protocol.trimEnd(buf, start, buf.limit());
+                if (start < end && buf.get(start) == '#') {
+                    dispatchTagged(buf, start, end);
+                } else if (isAlarmNotification(buf, start, end)) {
+                    // Nếu là alarm notification — xử lý ngay (nhận diện trên byte, chưa cần giải mã)
+                    listener.onAlarm(Protocol.decode(buf, start, end));
+                } else {
+                    dispatchUntagged(Protocol.decode(buf, start, end));
+                }
+            } catch (ClosedChannelException cce) {
+                break;
+            } catch (Exception ex) {
+                // Một gói hỏng (hoặc lỗi của listener) không được làm dừng luồng nhận duy nhất
+                if (!channel.isOpen()) break;
+                listener.onLog("Lỗi xử lý gói tin: " + ex);
+            }
+        }
+    }
+
+    /** Ghép các mảnh phản hồi của một yêu cầu tính toán theo lô. */
+    private void onBatchFragment(ByteBuffer buf) {
+        int id = CalcBatch.requestId(buf, 0);
+        CalcBatch.Result result = CalcBatch.readFragment(buf, 0, buf.limit(), partialBatches.remove(id));
+        if (result == null) return;
+        if (result.isComplete()) {
+            if (!pendingBatch.complete(id, result)) {
+                listener.onLog("Bỏ qua phản hồi tính toán đến muộn (id " + id + ")");
+            }
+            return;
+        }
+        if (partialBatches.size() >= 256) {
+            // Mảnh còn lại bị mất: bỏ các lô đã hết hạn chờ
+            partialBatches.keySet().removeIf(pendingId -> !pendingBatch.isPending(pendingId));
+        }
+        partialBatches.put(id, result);
+    }
+
+    /** Phản hồi dạng "#id|nội dung": id được đọc trực tiếp trên byte. */
+    private void dispatchTagged(ByteBuffer buf, int start, int end) {
+        int bar = Protocol.indexOf(buf, start + 1, end, (byte) '|');
+        if (bar < 0) return;
+        int id = 0;
+        for (int i = start + 1; i < bar; i++) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9) return;
+            id = id * 10 + d;
+        }
+        mode = ServerMode.MODERN;
+        String body = Protocol.decode(buf, Protocol.trimStart(buf, bar + 1, end), end);
+        if (!pendingText.complete(id, body)) {
+            listener.onLog("Bỏ qua phản hồi đến muộn (id " + id + "): " + body);
+        }
+    }
+
+    private void dispatchUntagged(String msg) {
+        if (Protocol.UNKNOWN_REPLY.equals(msg)) {
+            if (mode != ServerMode.LEGACY) {
+                markLegacy();
+                return;
+            }
+            if (legacyDiscard.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                return;
+            }
+        }
+        CompletableFuture<String> oldest = legacyPending.poll();
+        if (oldest != null) {
+            oldest.complete(msg);
+            return;
+        }
+        listener.onLog("Bỏ qua phản hồi không khớp yêu cầu nào: " + msg);
+    }
+
+    /** Server cũ đã trả lời "yêu cầu không xác định" cho gói có thẻ: chuyển sang LEGACY. */
+    private void markLegacy() {
+        mode = ServerMode.LEGACY;
+        int outstanding = pendingText.size() + pendingSync.size() + pendingBatch.size();
+        // Các yêu cầu có thẻ khác đang bay cũng sẽ nhận "yêu cầu không xác định" - bỏ qua chúng
+        legacyDiscard.set(Math.max(0, outstanding - 1));
+        LegacyServerException legacy = new LegacyServerException();
+        pendingText.failAll(legacy);
+        pendingSync.failAll(legacy);
+        pendingBatch.failAll(legacy);
+        listener.onLog("Server dùng giao thức cũ, chuyển sang lệnh văn bản không gắn id");
+    }
+
+    private static boolean isAlarmNotification(ByteBuffer buf, int from, int to) {
+        return Protocol.startsWith(buf, from, to, Protocol.ALARM_RING)
+                || Protocol.startsWith(buf, from, to, Protocol.ALARM_TRIGGERED)
+                || Protocol.startsWith(buf, from, to, Protocol.ALARM_TRIGGER);
+    }
+
+    static Throwable unwrap(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable ex) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        f.completeExceptionally(ex);
+        return f;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        listenerThread.interrupt();
+        IOException closed = new ClosedChannelException();
+        pendingText.failAll(closed);
+        pendingSync.failAll(closed);
+        pendingBatch.failAll(closed);
+        CompletableFuture<String> f;
+        while ((f = legacyPending.poll()) != null) {
+            f.completeExceptionally(closed);
+        }
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,63 @@
+// File: TimeResponseCache.java
+package btl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Bộ đệm phản hồi TIME_REQUEST (và thông tin múi giờ cho gói đồng bộ nhị phân).
+ * Giữ sẵn payload UTF-8 "HH:mm:ss dd/MM/yyyy (Zone)" của giây hiện tại cho múi giờ hiện tại,
+ * chỉ tính lại (lười) khi sang giây mới hoặc khi múi giờ thay đổi.
+ * An toàn đa luồng: mỗi Entry là bất biến và được công bố qua trường volatile.
+ */
+final class TimeResponseCache {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy");
+
+    static final class Entry {
+        final long epochSecond;
+        final ZoneId zone;
+        final String text;
+        final byte[] payload;
+        // Dùng cho phản hồi đồng bộ nhị phân (SyncPacket)
+        final int zoneOffsetSeconds;
+        final byte[] zoneIdBytes;
+
+        Entry(long epochSecond, ZoneId zone, String text, int zoneOffsetSeconds) {
+            this.epochSecond = epochSecond;
+            this.zone = zone;
+            this.text = text;
+            this.payload = text.getBytes(StandardCharsets.UTF_8);
+            this.zoneOffsetSeconds = zoneOffsetSeconds;
+            this.zoneIdBytes = SyncPacket.encodeZoneId(zone.getId());
+        }
+    }
+
+    private volatile Entry current;
+
+    /** Lấy phản hồi cho thời điểm hiện tại. */
+    Entry get(ZoneId zone) {
+        return get(zone, System.currentTimeMillis());
+    }
+
+    Entry get(ZoneId zone, long nowMillis) {
+        long second = Math.floorDiv(nowMillis, 1000L);
+        Entry e = current;
+        if (e != null && e.epochSecond == second && e.zone.equals(zone)) {
+            return e;
+        }
+        // Nhiều luồng có thể cùng tính lại một lần khi sang giây mới - kết quả giống nhau nên không cần khóa
+        ZonedDateTime zdt = Instant.ofEpochSecond(second).atZone(zone);
+        Entry fresh = new Entry(second, zone, FORMATTER.format(zdt) + " (" + zone.getId() + ")",
+                zdt.getOffset().getTotalSeconds());
+        current = fresh;
+        return fresh;
+    }
+
+    /** Bỏ bộ đệm, ví dụ khi đổi múi giờ server. */
+    void invalidate() {
+        current = null;
+    }
+}
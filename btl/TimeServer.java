@@ -0,0 +1,852 @@
+// File: TimeServer.java
+package btl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Lõi UDP Time Server không phụ thuộc Swing.
+ * - Nhiều luồng worker cùng nhận/xử lý/gửi gói tin song song
+ * - Nếu JVM hỗ trợ SO_REUSEPORT: mỗi worker một DatagramChannel riêng (kernel chia tải theo nguồn)
+ * - Ngược lại: các worker dùng chung một DatagramChannel
+ * GUI (ServerGUI) chỉ đăng ký Listener để quan sát nhật ký.
+ */
+public class TimeServer {
+
+    /** Nhận các sự kiện nhật ký từ server (được gọi trên luồng worker). */
+    public interface Listener {
+        void onLog(String message);
+    }
+
+    /** File nhật ký của server (ghi bất đồng bộ qua FileUtils). */
+    public static final String LOG_FILE = "logs/server_log.txt";
+    private static final long LOG_MAX_BYTES = 10L * 1024 * 1024;
+    private static final long LOG_ROTATE_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final int BUFFER_SIZE = 4096;
+    // Giới hạn mặc định theo nguồn: đủ cho vài client sau cùng một NAT đồng bộ và PING liên tục
+    static final double DEFAULT_CLIENT_RATE = 50;
+    static final int DEFAULT_CLIENT_BURST = 100;
+    private static final int TRACKED_CLIENTS = 65_536;
+    private static final int EXPRESSION_CACHE_SIZE = 1024;
+
+    private final int port;
+    private final int workerCount;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<DatagramChannel> channels = new CopyOnWriteArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean running = false;
+    private volatile ZoneId currentZone;
+    private volatile int localPort = -1;
+    private final TimeResponseCache timeCache = new TimeResponseCache();
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final AdmissionControl admission;
+    private final ExpressionCompiler expressions = new ExpressionCompiler(EXPRESSION_CACHE_SIZE);
+    private volatile int metricsPort = -1;
+    private volatile long clockSkewNanos; // chỉ để thử nghiệm chọn nguồn ở chế độ cụm
+    private MetricsHttpEndpoint metricsEndpoint;
+    private volatile InetSocketAddress broadcastGroup; // null = không phát quảng bá
+    private volatile TimeBroadcaster broadcaster; // chỉ thay khi giữ khóa this
+
+    // Báo thức: chỉ mục theo thời điểm kích hoạt, không quét định kỳ
+    private static final DateTimeFormatter ALARM_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+    private final AlarmScheduler<AlarmData> activeAlarms = new AlarmScheduler<>("Server-Alarm", this::fireAlarm);
+
+    private final Object alarmLock = new Object(); // giữ bộ lập lịch và nhật ký báo thức nhất quán
+    private volatile Path alarmDirectory;
+    private volatile AlarmJournal journal; // null nếu không lưu bền; chỉ thay khi giữ alarmLock
+    private volatile List<InetSocketAddress> replicaGroup; // null = một server
+    private volatile AlarmReplicator replicator;
+    private final AlarmReplicator.Store localAlarms = new AlarmReplicator.Store() {
+        @Override
+        public void put(AlarmData alarm) {
+            storeAlarm(alarm);
+        }
+
+        @Override
+        public void remove(String id) {
+            unstoreAlarm(id);
+        }
+    };
+
+    public TimeServer(int port, int workerCount, ZoneId zone) {
+        this.port = port;
+        this.workerCount = Math.max(1, workerCount);
+        this.currentZone = zone;
+        // Lệnh nặng dùng tối đa nửa số worker: phần còn lại luôn trả lời được giờ / PING / đồng bộ
+        this.admission = new AdmissionControl(TRACKED_CLIENTS, Math.max(1, this.workerCount / 2));
+        this.admission.setClientLimit(DEFAULT_CLIENT_RATE, DEFAULT_CLIENT_BURST);
+    }
+
+    public TimeServer(int port, ZoneId zone) {
+        this(port, Runtime.getRuntime().availableProcessors(), zone);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public ZoneId getZone() {
+        return currentZone;
+    }
+
+    public void setZone(ZoneId zone) {
+        this.currentZone = zone;
+        timeCache.invalidate();
+        // Giờ:phút của báo thức được hiểu theo múi giờ server, nên phải tính lại hạn kích hoạt
+        synchronized (alarmLock) {
+            ZonedDateTime now = ZonedDateTime.now(zone);
+            activeAlarms.forEach((id, alarm) -> activeAlarms.schedule(id, AlarmScheduler.nextFireMillis(alarm.alarmTime, now), alarm));
+        }
+    }
+
+    /**
+     * Thư mục lưu bền báo thức (alarms.wal + alarms.snapshot); null = chỉ giữ trong bộ nhớ.
+     * Có hiệu lực ở lần start() tiếp theo.
+     */
+    public void setAlarmStorage(Path directory) {
+        this.alarmDirectory = directory;
+    }
+
+    /**
+     * Nhật ký server (TimeServer, ServerGUI): xuống OS chậm nhất sau 200 ms, fsync khi xoay vòng,
+     * xoay theo 10 MB hoặc mỗi ngày, giữ 7 file cũ; thuộc tính btl.log.* vẫn được ưu tiên.
+     */
+    static void configureLogging() {
+        FileUtils.configure(200, AsyncFileLogger.FsyncPolicy.ON_ROTATE, LOG_MAX_BYTES, LOG_ROTATE_MILLIS, 7);
+    }
+
+    /** Danh sách --peers: tối đa AlarmReplicator.MAX_NODES server, không theo giới hạn nhóm server của client. */
+    static List<InetSocketAddress> parsePeers(String spec) throws UnknownHostException {
+        return ServerPool.parse(spec, ServerGUI.PORT, AlarmReplicator.MAX_NODES);
+    }
+
+    /**
+     * Thư mục báo thức mặc định cho một cổng: thư mục làm việc với cổng mặc định, "alarms-&lt;port&gt;" với cổng khác
+     * để nhiều server chạy cụm trên cùng một máy không ghi chung nhật ký; null (chỉ bộ nhớ) với cổng 0.
+     */
+    static Path defaultAlarmDirectory(int port) {
+        if (port == 0) return null;
+        return port == ServerGUI.PORT ? Paths.get(".") : Paths.get("alarms-" + port);
+    }
+
+    /**
+     * Nhóm server cùng chia nhau giữ báo thức (gồm cả server này, mọi node dùng cùng danh sách); null = một server.
+     * Mỗi báo thức được giữ trên AlarmReplicator.DEFAULT_REPLICAS node và chỉ một node kêu.
+     * Có hiệu lực ở lần start() tiếp theo.
+     */
+    public void setReplicaGroup(List<InetSocketAddress> group) {
+        this.replicaGroup = group;
+    }
+
+    /**
+     * Phát giờ quảng bá mỗi giây tới địa chỉ multicast/broadcast (xem TimeBroadcaster); null để tắt.
+     * Áp dụng ngay nếu server đang chạy.
+     */
+    public synchronized void setBroadcast(InetSocketAddress group) {
+        this.broadcastGroup = group;
+        if (running) startBroadcast();
+    }
+
+    /**
+     * Cổng TCP (chỉ 127.0.0.1) cho endpoint /metrics dạng văn bản Prometheus; -1 = tắt, 0 = cổng bất kỳ.
+     * Có hiệu lực ở lần start() tiếp theo.
+     */
+    public void setMetricsPort(int port) {
+        this.metricsPort = port;
+    }
+
+    /**
+     * Giới hạn số gói mỗi giây cho từng địa chỉ nguồn (token bucket); perSecond <= 0 để tắt.
+     * Gói vượt hạn mức bị bỏ không trả lời.
+     */
+    public void setRateLimit(double perSecond, int burst) {
+        admission.setClientLimit(perSecond, burst);
+    }
+
+    /** Giới hạn tổng số gói mỗi giây của server; perSecond <= 0 để tắt (mặc định). */
+    public void setGlobalRateLimit(double perSecond, int burst) {
+        admission.setGlobalLimit(perSecond, burst);
+    }
+
+    /** Số lệnh nặng (báo thức, tính toán, STATS) được xử lý đồng thời. */
+    public void setHeavyCommandLimit(int limit) {
+        admission.setHeavyLimit(limit);
+    }
+
+    /** Loopback mặc định không bị giới hạn theo nguồn (dùng cho LoadGenerator và công cụ cục bộ). */
+    public void setExemptLoopback(boolean exempt) {
+        admission.setExemptLoopback(exempt);
+    }
+
+    /**
+     * Làm đồng hồ của gói đồng bộ nhị phân lệch đi skewNanos, để thử chế độ cụm trên loopback
+     * (một server "nói sai giờ" phải bị client loại).
+     */
+    void setClockSkew(long skewNanos) {
+        clockSkewNanos = skewNanos;
+    }
+
+    /** Cổng thực tế của endpoint /metrics, -1 nếu không chạy. */
+    public int getMetricsPort() {
+        MetricsHttpEndpoint endpoint = metricsEndpoint;
+        return endpoint == null ? -1 : endpoint.getPort();
+    }
+
+    /** Tóm tắt số liệu (giống phản hồi lệnh STATS). */
+    public String statsSummary() {
+        AlarmReplicator r = replicator;
+        TimeBroadcaster b = broadcaster;
+        AlarmJournal j = journal;
+        return metrics.summary(activeAlarms.size(), FileUtils.droppedCount())
+                + "\nBộ đệm biểu thức: " + expressions.cacheStats()
+                + (j == null ? "" : "\nLưu báo thức: " + j.writeErrors() + " lần ghi lỗi, " + j.lostCount()
+                        + " thao tác bị mất")
+                + (r == null ? "" : "\nNhân bản báo thức: " + r.summary())
+                + (b == null ? "" : "\nQuảng bá: " + b.sentCount() + " gói tới " + b.getGroup());
+    }
+
+    /** Số liệu dạng văn bản Prometheus. */
+    public String metricsText() {
+        AlarmJournal j = journal;
+        return metrics.prometheus(activeAlarms.size(), FileUtils.droppedCount(),
+                j == null ? 0 : j.writeErrors(), j == null ? 0 : j.lostCount());
+    }
+
+    /** Cổng thực tế đang lắng nghe (hữu ích khi khởi tạo với cổng 0). */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) return;
+        log("Server đang khởi động...");
+        SocketOption<Boolean> reusePort = reusePortOption();
+        try {
+            DatagramChannel first = DatagramChannel.open();
+            channels.add(first);
+            boolean shareChannel = reusePort == null || !first.supportedOptions().contains(reusePort);
+            if (!shareChannel) {
+                first.setOption(reusePort, true);
+            }
+            first.bind(new InetSocketAddress(port));
+            localPort = ((InetSocketAddress) first.getLocalAddress()).getPort();
+
+            if (!shareChannel) {
+                for (int i = 1; i < workerCount; i++) {
+                    DatagramChannel ch = DatagramChannel.open();
+                    channels.add(ch);
+                    ch.setOption(reusePort, true);
+                    ch.bind(new InetSocketAddress(localPort));
+                }
+            }
+        } catch (IOException e) {
+            closeChannels();
+            throw e;
+        }
+
+        List<InetSocketAddress> group = replicaGroup;
+        try {
+            if (group != null) {
+                int self = AlarmReplicator.findSelf(group, localPort);
+                if (self < 0) {
+                    log("Danh sách nhóm không chứa server này (cổng " + localPort + "): chạy như một server");
+                } else {
+                    replicator = new AlarmReplicator(group, self, AlarmReplicator.DEFAULT_REPLICAS, localAlarms,
+                            this::sendToPeer, this::log);
+                }
+            }
+            restoreAlarms(); // trước khi worker chạy: không có thao tác báo thức nào chen vào
+            running = true;
+            for (int i = 0; i < workerCount; i++) {
+                final DatagramChannel ch = channels.get(i % channels.size());
+                Thread t = new Thread(() -> workerLoop(ch), "Server-Worker-" + i);
+                t.setDaemon(true);
+                workers.add(t);
+                t.start();
+            }
+            activeAlarms.start();
+            log("Server lắng nghe tại cổng " + localPort + " (" + workerCount + " luồng xử lý, "
+                    + channels.size() + " socket)");
+            if (replicator != null) {
+                replicator.start();
+                log("Nhân bản báo thức với nhóm " + group);
+            }
+            startBroadcast();
+        } catch (RuntimeException e) {
+            // Không để lại cổng đã bind, nhật ký đang mở hay worker chạy dở khi khởi động thất bại
+            running = false;
+            release();
+            throw e;
+        }
+        if (metricsPort >= 0) {
+            try {
+                metricsEndpoint = new MetricsHttpEndpoint(metricsPort, this::metricsText);
+                log("Số liệu: http://127.0.0.1:" + metricsEndpoint.getPort() + "/metrics");
+            } catch (IOException e) {
+                log("Không mở được endpoint số liệu trên cổng " + metricsPort + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        release();
+        log("Server đã dừng.");
+    }
+
+    /** Đóng mọi tài nguyên của lần start() (dùng cả khi start() thất bại giữa chừng). */
+    private void release() {
+        if (broadcaster != null) {
+            broadcaster.stop();
+            broadcaster = null;
+        }
+        closeChannels();
+        activeAlarms.stop();
+        if (replicator != null) {
+            replicator.stop();
+            replicator = null;
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+            metricsEndpoint = null;
+        }
+        synchronized (alarmLock) {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+        workers.clear();
+    }
+
+    private void startBroadcast() {
+        if (broadcaster != null) {
+            broadcaster.stop();
+            broadcaster = null;
+            log("Đã tắt phát giờ quảng bá");
+        }
+        InetSocketAddress group = broadcastGroup;
+        if (group == null) return;
+        TimeBroadcaster b = new TimeBroadcaster(channels.get(0), group, TimeBroadcaster.DEFAULT_INTERVAL_MS,
+                () -> timeCache.get(currentZone), () -> clockSkewNanos, this::log);
+        try {
+            b.start();
+            broadcaster = b;
+            log("Phát giờ quảng bá tới " + group + " mỗi " + TimeBroadcaster.DEFAULT_INTERVAL_MS + " ms");
+        } catch (IOException e) {
+            log("Không bật được phát giờ quảng bá tới " + group + ": " + e.getMessage());
+        }
+    }
+
+    private void closeChannels() {
+        for (DatagramChannel ch : channels) {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        channels.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        // StandardSocketOptions.SO_REUSEPORT chỉ có từ JDK 9
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void log(String msg) {
+        for (Listener l : listeners) {
+            try {
+                l.onLog(msg);
+            } catch (RuntimeException ex) {
+                // Listener lỗi không được làm dừng worker
+            }
+        }
+    }
+
+    // ============================
+    // Worker
+    // ============================
+    private void workerLoop(DatagramChannel ch) {
+        // Bộ đệm trực tiếp dùng lại cho mọi gói tin của worker: không cấp phát trên đường nóng
+        ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (running) {
+            try {
+                in.clear();
+                SocketAddress from = ch.receive(in);
+                if (from == null) continue;
+                long receiveNanos = SyncPacket.nowEpochNanos() + clockSkewNanos;
+                long startNanos = System.nanoTime();
+                metrics.packetReceived();
+                // Chặn nguồn vượt hạn mức trước mọi thao tác phân tích / định dạng / ghi nhật ký
+                // (trừ các node cùng nhóm: đồng bộ sau khi khởi động lại gửi dồn nhiều gói)
+                AlarmReplicator group = replicator;
+                ServerMetrics.Drop drop = group != null && group.isPeer((InetSocketAddress) from) ? null
+                        : admission.admit(((InetSocketAddress) from).getAddress(), startNanos);
+                if (drop != null) {
+                    metrics.packetDropped(drop);
+                    continue;
+                }
+                in.flip();
+
+                out.clear();
+                ServerMetrics.Command command = handle(in, (InetSocketAddress) from, out, receiveNanos);
+                if (command == null) {
+                    metrics.noReply();
+                    continue;
+                }
+                if (out.position() == 0) {
+                    // Lệnh đã xử lý nhưng không cần trả lời (nhịp tim nhân bản khớp digest...)
+                    metrics.requestServed(command, System.nanoTime() - startNanos);
+                    continue;
+                }
+                out.flip();
+                if (command == ServerMetrics.Command.CALC_BATCH) {
+                    sendFragments(ch, out, from);
+                } else {
+                    if (SyncPacket.matches(out, 0, out.limit())) {
+                        SyncPacket.stampTransmit(out, 0, clockSkewNanos);
+                    }
+                    ch.send(out, from);
+                }
+                metrics.requestServed(command, System.nanoTime() - startNanos);
+            } catch (ClosedChannelException cce) {
+                break;
+            } catch (Exception ex) {
+                metrics.workerError();
+                if (running) {
+                    log("Lỗi xử lý gói tin: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private boolean logging() {
+        return !listeners.isEmpty();
+    }
+
+    private static String clientKey(InetSocketAddress client) {
+        return client.getAddress().getHostAddress() + ":" + client.getPort();
+    }
+
+    /** Phản hồi tính toán theo lô: out chứa các mảnh liên tiếp, mỗi mảnh một datagram. */
+    private static void sendFragments(DatagramChannel ch, ByteBuffer out, SocketAddress to) throws IOException {
+        int end = out.limit();
+        int at = 0;
+        while (at < end) {
+            int length = CalcBatch.fragmentLength(out, at);
+            out.limit(at + length).position(at);
+            ch.send(out, to);
+            out.limit(end);
+            at += length;
+        }
+    }
+
+    /**
+     * Xử lý một yêu cầu nằm trong [position, limit) của req và ghi payload phản hồi vào out.
+     * Lệnh được nhận diện bằng so khớp byte; chỉ phần tham số của các lệnh ít dùng mới được giải mã thành String.
+     * @return lệnh đã xử lý (để ghi số liệu), null nếu không gửi phản hồi
+     */
+    ServerMetrics.Command handle(ByteBuffer req, InetSocketAddress client, ByteBuffer out, long receiveNanos) {
+        if (SyncPacket.matches(req, req.position(), req.limit())) {
+            // Đồng bộ nhị phân: trả 4 mốc thời gian độ phân giải nano giây
+            TimeResponseCache.Entry cached = timeCache.get(currentZone);
+            boolean ok = SyncPacket.writeResponse(req, req.position(), out, receiveNanos,
+                    cached.zoneOffsetSeconds, cached.zoneIdBytes);
+            if (ok && logging()) {
+                log("Nhận yêu cầu đồng bộ nhị phân từ client " + clientKey(client));
+            }
+            return ok ? ServerMetrics.Command.SYNC : null;
+        }
+        if (CalcBatch.matches(req, req.position(), req.limit())) {
+            if (!admission.enterHeavy()) {
+                metrics.packetDropped(ServerMetrics.Drop.BUSY);
+                return null;
+            }
+            try {
+                int items = CalcBatch.handle(req, req.position(), req.limit(), out);
+                if (items < 0) return null;
+                if (logging()) {
+                    log("Nhận yêu cầu tính toán theo lô (" + items + " phép tính) từ " + clientKey(client));
+                }
+                return ServerMetrics.Command.CALC_BATCH;
+            } finally {
+                admission.exitHeavy();
+            }
+        }
+
+        int start = Protocol.trimStart(req, req.position(), req.limit());
+        int end = Protocol.trimEnd(req, start, req.limit());
+        if (Protocol.startsWith(req, start, end, Protocol.REPL)) {
+            // Nhân bản báo thức: chỉ nhận từ các node đã cấu hình trong nhóm
+            AlarmReplicator group = replicator;
+            if (group == null || !group.isPeer(client)) return null;
+            String reply = group.onMessage(Protocol.decode(req, start, end), client);
+            if (reply != null) out.put(reply.getBytes(StandardCharsets.UTF_8));
+            return ServerMetrics.Command.REPLICATION;
+        }
+        if (start < end && req.get(start) == '#') {
+            int bar = Protocol.indexOf(req, start + 1, end, (byte) '|');
+            if (bar > 0) {
+                // Thẻ request id "#id|": gửi lại nguyên văn ở đầu phản hồi để client ghép đúng yêu cầu
+                for (int i = start; i <= bar; i++) {
+                    out.put(req.get(i));
+                }
+                start = Protocol.trimStart(req, bar + 1, end);
+            }
+        }
+
+        if (Protocol.startsWith(req, start, end, Protocol.TIME_REQUEST)) {
+            // Đường nóng: chỉ một lần chép mảng byte đã mã hóa sẵn
+            TimeResponseCache.Entry cached = timeCache.get(currentZone);
+            out.put(cached.payload);
+            if (logging()) {
+                log("Nhận yêu cầu giờ từ client " + clientKey(client) + ". Trả về: " + cached.text);
+            }
+            return ServerMetrics.Command.TIME_REQUEST;
+        }
+        if (Protocol.equalsIgnoreCase(req, start, end, Protocol.PING)) {
+            out.put(Protocol.PONG);
+            if (logging()) {
+                log("Nhận yêu cầu PING từ " + clientKey(client) + ". Trả về PONG");
+            }
+            return ServerMetrics.Command.PING;
+        }
+
+        if (!admission.enterHeavy()) {
+            metrics.packetDropped(ServerMetrics.Drop.BUSY);
+            return null;
+        }
+        try {
+            return handleCommand(req, start, end, client, out);
+        } finally {
+            admission.exitHeavy();
+        }
+    }
+
+    /** Các lệnh ít dùng, tốn hơn (báo thức, tính toán, STATS): số lệnh chạy đồng thời bị giới hạn. */
+    private ServerMetrics.Command handleCommand(ByteBuffer req, int start, int end, InetSocketAddress client,
+                                                ByteBuffer out) {
+        String clientHost = client.getAddress().getHostAddress();
+        int clientPort = client.getPort();
+        String clientKey = clientHost + ":" + clientPort;
+        String response;
+        ServerMetrics.Command command;
+
+        if (Protocol.startsWith(req, start, end, Protocol.ALARM_SET)) {
+            command = ServerMetrics.Command.ALARM_SET;
+            String[] parts = Protocol.decode(req, start + Protocol.ALARM_SET.length, end).split(":");
+            if (parts.length == 3) {
+                try {
+                    String id = parts[0];
+                    int hour = Integer.parseInt(parts[1]);
+                    int minute = Integer.parseInt(parts[2]);
+
+                    setAlarm(new AlarmData(id, LocalTime.of(hour, minute), clientHost, clientPort));
+                    response = String.format("Đã cài báo thức lúc %02d:%02d thành công.", hour, minute);
+                    log("Nhận yêu cầu cài báo thức từ " + clientKey + ". ID: " + id + ". Trả về: " + response);
+                } catch (NumberFormatException | DateTimeException e) {
+                    response = "Lỗi: Định dạng giờ/phút không hợp lệ.";
+                    log("Lỗi xử lý yêu cầu báo thức từ " + clientKey);
+                }
+            } else {
+                response = "Lỗi: Định dạng yêu cầu không hợp lệ.";
+                log("Lỗi định dạng yêu cầu: " + Protocol.decode(req, start, end));
+            }
+        } else if (Protocol.startsWith(req, start, end, Protocol.ALARM_CANCEL)) {
+            command = ServerMetrics.Command.ALARM_CANCEL;
+            String[] parts = Protocol.decode(req, start + Protocol.ALARM_CANCEL.length, end).split(":");
+            if (parts.length == 1 && !parts[0].isEmpty()) {
+                String id = parts[0];
+                if (cancelAlarm(id)) {
+                    response = "Đã hủy báo thức thành công.";
+                    log("Nhận yêu cầu hủy báo thức từ " + clientKey + ". ID: " + id + ". Trả về: " + response);
+                } else {
+                    response = "Không tìm thấy báo thức cần hủy.";
+                    log("Không tìm thấy báo thức với ID " + id + " từ " + clientKey);
+                }
+            } else {
+                response = "Lỗi: Định dạng yêu cầu hủy không hợp lệ.";
+            }
+        } else if (Protocol.equalsIgnoreCase(req, start, end, Protocol.ALARM_CANCEL_ALL)) {
+            command = ServerMetrics.Command.ALARM_CANCEL_ALL;
+            cancelAllAlarms();
+            response = "Đã hủy tất cả báo thức thành công.";
+            log("Nhận yêu cầu hủy tất cả báo thức từ " + clientKey + ". Trả về: " + response);
+        } else if (Protocol.startsWith(req, start, end, Protocol.CALC_REQUEST)) {
+            command = ServerMetrics.Command.CALC_REQUEST;
+            String[] parts = Protocol.decode(req, start + Protocol.CALC_REQUEST.length, end).split(",");
+            if (parts.length == 3) {
+                try {
+                    double num1 = Double.parseDouble(parts[0]);
+                    String operator = parts[1];
+                    double num2 = Double.parseDouble(parts[2]);
+                    response = calculate(num1, operator, num2);
+                    log("Nhận yêu cầu tính toán: " + Protocol.decode(req, start, end) + ". Trả về: " + response);
+                } catch (NumberFormatException nfe) {
+                    response = "Lỗi: Dữ liệu nhập không phải là số.";
+                    log("Lỗi xử lý yêu cầu tính toán: " + Protocol.decode(req, start, end));
+                }
+            } else {
+                response = "Lỗi: Định dạng yêu cầu không hợp lệ.";
+                log("Lỗi định dạng yêu cầu: " + Protocol.decode(req, start, end));
+            }
+        } else if (Protocol.startsWith(req, start, end, Protocol.CALC_EXPR)) {
+            command = ServerMetrics.Command.CALC_EXPR;
+            // Dạng CALC_EXPR:<biểu thức>[;x=1,y=2] - biểu thức được biên dịch một lần và giữ trong bộ đệm
+            String text = Protocol.decode(req, start + Protocol.CALC_EXPR.length, end);
+            try {
+                double value = expressions.evaluate(text);
+                response = Double.isNaN(value) || Double.isInfinite(value)
+                        ? "Lỗi: Kết quả không xác định (chia cho 0 hoặc ngoài miền hàm)"
+                        : String.valueOf(value);
+            } catch (ExpressionCompiler.ExpressionException e) {
+                response = "Lỗi: " + e.getMessage();
+            }
+            if (logging()) {
+                log("Nhận yêu cầu tính biểu thức từ " + clientKey + ": " + text + ". Trả về: " + response);
+            }
+        } else if (Protocol.equalsIgnoreCase(req, start, end, Protocol.STATS) && client.getAddress().isLoopbackAddress()) {
+            // Phản hồi STATS dài gấp trăm lần yêu cầu: chỉ trả lời máy cục bộ để không thành bộ khuếch đại
+            command = ServerMetrics.Command.STATS;
+            response = statsSummary();
+            log("Nhận yêu cầu STATS từ " + clientKey);
+        } else {
+            // Gói không hợp lệ: không trả lời (phản hồi lỗi dài hơn yêu cầu sẽ bị lợi dụng để phản xạ)
+            if (logging()) {
+                log("Bỏ qua yêu cầu không xác định từ " + clientKey + " (" + (end - start) + " byte)");
+            }
+            return null;
+        }
+        if (response.startsWith("Lỗi")) {
+            metrics.requestFailed(command);
+        }
+        byte[] payload = response.getBytes(StandardCharsets.UTF_8);
+        // Phản hồi dài (STATS) bị cắt vừa bộ đệm gửi, nhưng không cắt giữa một ký tự tiếng Việt nhiều byte
+        out.put(payload, 0, Protocol.utf8Prefix(payload, out.remaining()));
+        return command;
+    }
+
+    static String calculate(double num1, String operator, double num2) {
+        try {
+            switch (operator) {
+                case "+": return String.valueOf(num1 + num2);
+                case "-": return String.valueOf(num1 - num2);
+                case "*": return String.valueOf(num1 * num2);
+                case "/":
+                    if (num2 == 0) {
+                        return "Lỗi: Chia cho 0";
+                    }
+                    return String.valueOf(num1 / num2);
+                default: return "Lỗi: Phép toán không hợp lệ";
+            }
+        } catch (Exception e) {
+            return "Lỗi: " + e.getMessage();
+        }
+    }
+
+    // ============================
+    // Báo thức
+    // ============================
+    private void setAlarm(AlarmData alarm) {
+        AlarmReplicator group = replicator;
+        if (group != null) {
+            group.set(alarm);
+        } else {
+            storeAlarm(alarm);
+        }
+    }
+
+    private boolean cancelAlarm(String id) {
+        AlarmReplicator group = replicator;
+        return group != null ? group.cancel(id) : unstoreAlarm(id);
+    }
+
+    private void cancelAllAlarms() {
+        AlarmReplicator group = replicator;
+        if (group != null) {
+            group.cancelAll();
+        } else {
+            synchronized (alarmLock) {
+                activeAlarms.cancelAll();
+                if (journal != null) journal.clear();
+            }
+        }
+    }
+
+    /** Ghi báo thức vào bộ lập lịch và nhật ký của node này. */
+    private void storeAlarm(AlarmData alarm) {
+        synchronized (alarmLock) {
+            activeAlarms.schedule(alarm.id, AlarmScheduler.nextFireMillis(alarm.alarmTime, ZonedDateTime.now(currentZone)), alarm);
+            if (journal != null) journal.put(alarm);
+        }
+    }
+
+    private boolean unstoreAlarm(String id) {
+        synchronized (alarmLock) {
+            if (journal != null) journal.remove(id);
+            return activeAlarms.cancel(id) != null;
+        }
+    }
+
+    /** Mở nhật ký báo thức (nếu được cấu hình) và nạp lại các báo thức đã lưu. */
+    private void restoreAlarms() {
+        Path dir = alarmDirectory;
+        if (dir == null) return;
+        long t0 = System.nanoTime();
+        AlarmJournal j = new AlarmJournal(dir);
+        try {
+            Map<String, AlarmData> restored = j.open();
+            synchronized (alarmLock) {
+                // Chỉ có 1440 phút trong ngày: tính hạn một lần cho mỗi phút thay vì cho mỗi báo thức
+                ZonedDateTime now = ZonedDateTime.now(currentZone);
+                long[] byMinute = new long[24 * 60];
+                activeAlarms.scheduleAll(restored, alarm -> {
+                    int m = alarm.alarmTime.getHour() * 60 + alarm.alarmTime.getMinute();
+                    if (byMinute[m] == 0) byMinute[m] = AlarmScheduler.nextFireMillis(alarm.alarmTime, now);
+                    return byMinute[m];
+                });
+                journal = j;
+            }
+            log("Đã khôi phục " + restored.size() + " báo thức từ " + dir.toAbsolutePath().normalize()
+                    + " (" + (System.nanoTime() - t0) / 1_000_000 + " ms)");
+            // restored là khung nhìn trên bảng của nhật ký; load() chuyển giao báo thức không thuộc node này
+            // bằng cách xóa khỏi nhật ký, nên phải duyệt trên bản sao
+            if (replicator != null) replicator.load(new ArrayList<>(restored.values()));
+        } catch (IOException e) {
+            j.close();
+            log("Không đọc được dữ liệu báo thức, báo thức chỉ được giữ trong bộ nhớ: " + e.getMessage());
+        }
+    }
+
+    private void fireAlarm(String id, AlarmData alarm, long deadlineMillis) {
+        AlarmReplicator group = replicator;
+        if (group != null) {
+            AlarmReplicator.Due due = group.onDue(alarm);
+            if (due == AlarmReplicator.Due.DEFER) {
+                // Node chính còn sống sẽ kêu; kiểm tra lại sau để thay nó nếu nó chết giữa chừng
+                synchronized (alarmLock) {
+                    activeAlarms.schedule(id, System.currentTimeMillis() + AlarmReplicator.FAILOVER_DELAY_MS, alarm);
+                }
+                return;
+            }
+            if (due == AlarmReplicator.Due.DROP) return;
+        }
+        long lateness = System.currentTimeMillis() - deadlineMillis;
+        synchronized (alarmLock) {
+            if (journal != null) journal.remove(alarm);
+        }
+        log("BÁO THỨC KÊU TỪ CLIENT " + alarm.clientAddress + ":" + alarm.clientPort);
+        boolean sent = false;
+        try {
+            String alertMsg = "ALARM_RING:" + alarm.alarmTime.format(ALARM_FORMAT);
+            sendTo(alertMsg, new InetSocketAddress(alarm.clientAddress, alarm.clientPort));
+            sent = true;
+            log("Đã gửi thông báo báo thức tới client " + alarm.clientAddress + ":" + alarm.clientPort);
+        } catch (Exception ex) {
+            log("Lỗi gửi thông báo báo thức: " + ex.getMessage());
+        }
+        metrics.alarmFired(lateness, sent);
+        if (group != null) group.fired(alarm);
+        // Báo thức kêu một lần rồi tự hủy (AlarmScheduler và nhật ký đã gỡ nó khỏi danh sách)
+    }
+
+    private void sendTo(String msg, InetSocketAddress target) throws IOException {
+        if (!running || channels.isEmpty()) return;
+        channels.get(0).send(ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8)), target);
+    }
+
+    private void sendToPeer(String msg, InetSocketAddress peer) {
+        try {
+            sendTo(msg, peer);
+        } catch (IOException e) {
+            // UDP: gói mất được gửi lại / đồng bộ digest bù
+        }
+    }
+
+    /**
+     * Chạy server không giao diện: java btl.TimeServer [port] [workers] [metricsPort] [gói/giây mỗi nguồn] [burst]
+     *     [--peers=host:port,host:port,...] [--broadcast[=group:port]]
+     * (metricsPort mặc định = port + 1, -1 để tắt; giới hạn theo nguồn <= 0 để tắt;
+     * --peers: nhóm nhân bản báo thức, gồm cả server này; --broadcast: phát giờ quảng bá, mặc định 239.255.98.76:9875)
+     */
+    public static void main(String[] args) throws Exception {
+        List<InetSocketAddress> group = null;
+        InetSocketAddress broadcast = null;
+        List<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--peers=")) {
+                try {
+                    group = parsePeers(arg.substring("--peers=".length()));
+                } catch (IllegalArgumentException | UnknownHostException e) {
+                    System.err.println("--peers không hợp lệ: " + e.getMessage());
+                    System.exit(2);
+                }
+            } else if (arg.equals("--broadcast")) {
+                broadcast = TimeBroadcaster.DEFAULT_GROUP;
+            } else if (arg.startsWith("--broadcast=")) {
+                broadcast = ServerPool.parse(arg.substring("--broadcast=".length()),
+                        TimeBroadcaster.DEFAULT_GROUP.getPort()).get(0);
+            } else {
+                rest.add(arg);
+            }
+        }
+        args = rest.toArray(new String[0]);
+        configureLogging();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : ServerGUI.PORT;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        TimeServer server = new TimeServer(port, workers, ZoneId.systemDefault());
+        server.setAlarmStorage(defaultAlarmDirectory(port));
+        server.setReplicaGroup(group);
+        server.setBroadcast(broadcast);
+        server.setMetricsPort(args.length > 2 ? Integer.parseInt(args[2]) : (port == 0 ? 0 : port + 1));
+        if (args.length > 3) {
+            double rate = Double.parseDouble(args[3]);
+            server.setRateLimit(rate, args.length > 4 ? Integer.parseInt(args[4]) : (int) Math.max(1, rate * 2));
+        }
+        server.addListener(msg -> System.out.println("[" + Utils.formatNowFull() + "] " + msg));
+        server.addListener(msg -> FileUtils.append(LOG_FILE, msg));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start();
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,289 @@
+// File: TimerEngine.java
+package btl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bộ đếm ngược / bấm giờ theo hạn chót trên System.nanoTime(), thay cho giảm một đơn vị mỗi nhịp.
+ * - Thời gian đã chạy = phần tích lũy trước lần tạm dừng gần nhất + (nanoTime - lúc chạy tiếp), nên nhịp
+ *   bị trễ (scheduler bận) chỉ làm chậm lần hiển thị đó, không cộng dồn thành trôi; tạm dừng không mất thời gian
+ * - Mỗi bộ đếm hiển thị theo bước resolution (ví dụ 1 giây, 10 ms) và được đánh thức đúng ranh giới bước kế tiếp
+ * - Mọi bộ đếm chung một hàng đợi ưu tiên theo hạn đánh thức và chỉ một tác vụ hẹn giờ trên scheduler
+ * - Bộ đếm có tên; bắt đầu bộ đếm mới trùng tên thì bộ đếm cũ bị dừng
+ * Listener được gọi trên luồng của scheduler, ngoài khóa của engine, lần lượt theo thứ tự sự kiện.
+ */
+final class TimerEngine {
+
+    interface Listener {
+        /** Sang bước hiển thị mới: displayNanos là thời gian còn lại (đếm ngược) hoặc đã chạy (bấm giờ). */
+        void onTick(Timer timer, long displayNanos);
+
+        /** Đếm ngược về 0; không bao giờ gọi cho bộ bấm giờ. */
+        void onFinished(Timer timer);
+    }
+
+    /** Một bộ đếm ngược hoặc bấm giờ; mọi thao tác dùng khóa của engine. */
+    final class Timer {
+        private final String name;
+        private final boolean countdown;
+        private final long durationNanos;
+        private final long resolutionNanos;
+        private final long phaseNanos; // ranh giới bước: thời gian đã chạy ≡ phase (mod resolution)
+        private final Listener listener;
+        private final List<Long> laps = new ArrayList<>();
+
+        private boolean running;
+        private boolean done;
+        private long accumulatedNanos; // thời gian đã chạy trước lần chạy tiếp gần nhất
+        private long resumedMono;
+        private long lastLapNanos;
+        private long wakeMono;
+
+        private Timer(String name, boolean countdown, long durationNanos, long resolutionNanos, Listener listener) {
+            this.name = name;
+            this.countdown = countdown;
+            this.durationNanos = durationNanos;
+            this.resolutionNanos = resolutionNanos;
+            this.phaseNanos = countdown ? Math.floorMod(durationNanos, resolutionNanos) : 0;
+            this.listener = listener;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isCountdown() {
+            return countdown;
+        }
+
+        boolean isRunning() {
+            synchronized (TimerEngine.this) {
+                return running;
+            }
+        }
+
+        /** Đã kết thúc (đếm ngược về 0 hoặc bị dừng). */
+        boolean isDone() {
+            synchronized (TimerEngine.this) {
+                return done;
+            }
+        }
+
+        long elapsedNanos() {
+            synchronized (TimerEngine.this) {
+                return elapsedAt(System.nanoTime());
+            }
+        }
+
+        long remainingNanos() {
+            synchronized (TimerEngine.this) {
+                return Math.max(0, durationNanos - elapsedAt(System.nanoTime()));
+            }
+        }
+
+        /** Giá trị đang hiển thị (làm tròn theo bước), như giá trị truyền cho onTick. */
+        long displayNanos() {
+            synchronized (TimerEngine.this) {
+                return displayAt(elapsedAt(System.nanoTime()));
+            }
+        }
+
+        void pause() {
+            synchronized (TimerEngine.this) {
+                if (!running) return;
+                long now = System.nanoTime();
+                accumulatedNanos = elapsedAt(now);
+                running = false;
+                queue.remove(this);
+                arm(now);
+            }
+        }
+
+        void resume() {
+            synchronized (TimerEngine.this) {
+                if (running || done) return;
+                long now = System.nanoTime();
+                resumedMono = now;
+                running = true;
+                enqueue(accumulatedNanos);
+                arm(now);
+            }
+        }
+
+        void stop() {
+            synchronized (TimerEngine.this) {
+                if (done) return;
+                long now = System.nanoTime();
+                accumulatedNanos = elapsedAt(now);
+                finish();
+                arm(now);
+            }
+        }
+
+        /**
+         * Ghi một vòng (bấm giờ): thời gian từ vòng trước tới giờ, độ phân giải nano giây.
+         * @return thời gian của vòng vừa ghi
+         */
+        long lap() {
+            synchronized (TimerEngine.this) {
+                long elapsed = elapsedAt(System.nanoTime());
+                long split = elapsed - lastLapNanos;
+                lastLapNanos = elapsed;
+                laps.add(split);
+                return split;
+            }
+        }
+
+        List<Long> laps() {
+            synchronized (TimerEngine.this) {
+                return new ArrayList<>(laps);
+            }
+        }
+
+        private long elapsedAt(long mono) {
+            long elapsed = running ? accumulatedNanos + (mono - resumedMono) : accumulatedNanos;
+            return countdown ? Math.min(elapsed, durationNanos) : elapsed;
+        }
+
+        /** Bước hiển thị chứa thời điểm elapsed: còn lại làm tròn lên (đếm ngược), đã chạy làm tròn xuống. */
+        private long displayAt(long elapsed) {
+            long step = phaseNanos + Math.floorDiv(elapsed - phaseNanos, resolutionNanos) * resolutionNanos;
+            return countdown ? durationNanos - Math.max(0, step) : step;
+        }
+
+        /** Đưa vào hàng đợi với hạn đánh thức là ranh giới bước đầu tiên sau elapsed. */
+        private void enqueue(long elapsed) {
+            long next = phaseNanos + (Math.floorDiv(elapsed - phaseNanos, resolutionNanos) + 1) * resolutionNanos;
+            if (countdown) next = Math.min(next, durationNanos);
+            wakeMono = resumedMono + (next - accumulatedNanos);
+            queue.add(this);
+        }
+
+        private void finish() {
+            running = false;
+            done = true;
+            queue.remove(this);
+            timers.remove(name, this);
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final PriorityQueue<Timer> queue = new PriorityQueue<>((a, b) -> Long.compare(a.wakeMono - b.wakeMono, 0));
+    private final Map<String, Timer> timers = new HashMap<>();
+    private ScheduledFuture<?> wakeup;
+    private long wakeupMono;
+    private long generation; // tác vụ đánh thức cũ đã bắt đầu chạy trước khi bị hủy thì bỏ qua
+    // Lệnh gọi listener chờ thực hiện, theo đúng thứ tự tính trong khóa: scheduler có nhiều luồng nên
+    // chỉ một luồng gọi listener tại một thời điểm, nếu không các bước của một bộ đếm có thể đến lộn thứ tự
+    private final ArrayDeque<Runnable> calls = new ArrayDeque<>();
+    private boolean delivering;
+
+    TimerEngine(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /** Bắt đầu đếm ngược durationNanos, báo mỗi bước resolutionNanos. */
+    Timer startCountdown(String name, long durationNanos, long resolutionNanos, Listener listener) {
+        if (durationNanos <= 0) throw new IllegalArgumentException("Thời gian đếm ngược phải dương");
+        return start(new Timer(name, true, durationNanos, checkResolution(resolutionNanos), listener));
+    }
+
+    /** Bắt đầu bấm giờ, báo mỗi bước resolutionNanos. */
+    Timer startStopwatch(String name, long resolutionNanos, Listener listener) {
+        return start(new Timer(name, false, Long.MAX_VALUE, checkResolution(resolutionNanos), listener));
+    }
+
+    synchronized Timer get(String name) {
+        return timers.get(name);
+    }
+
+    synchronized int activeCount() {
+        return timers.size();
+    }
+
+    private static long checkResolution(long resolutionNanos) {
+        if (resolutionNanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("Bước hiển thị tối thiểu 1 ms");
+        }
+        return resolutionNanos;
+    }
+
+    private synchronized Timer start(Timer timer) {
+        Timer previous = timers.put(timer.name, timer);
+        if (previous != null) previous.finish();
+        long now = System.nanoTime();
+        timer.resumedMono = now;
+        timer.running = true;
+        timer.enqueue(0);
+        arm(now);
+        return timer;
+    }
+
+    /** Hẹn tác vụ đánh thức cho hạn sớm nhất trong hàng đợi (giữ tác vụ hiện có nếu vẫn đúng hạn đó). */
+    private void arm(long now) {
+        Timer head = queue.peek();
+        if (wakeup != null) {
+            if (head != null && head.wakeMono == wakeupMono) return;
+            wakeup.cancel(false);
+            wakeup = null;
+        }
+        if (head == null) return;
+        wakeupMono = head.wakeMono;
+        long armed = ++generation;
+        try {
+            wakeup = scheduler.schedule(() -> fire(armed), Math.max(0, wakeupMono - now), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // scheduler đã tắt
+        }
+    }
+
+    private void fire(long armed) {
+        synchronized (this) {
+            if (armed != generation) return;
+            wakeup = null;
+            long now = System.nanoTime();
+            Timer timer;
+            while ((timer = queue.peek()) != null && timer.wakeMono - now <= 0) {
+                queue.poll();
+                final Timer t = timer;
+                long elapsed = t.elapsedAt(now);
+                if (t.countdown && elapsed >= t.durationNanos) {
+                    t.accumulatedNanos = t.durationNanos;
+                    t.finish();
+                    calls.add(() -> t.listener.onFinished(t));
+                } else {
+                    final long display = t.displayAt(elapsed);
+                    t.enqueue(elapsed);
+                    calls.add(() -> t.listener.onTick(t, display));
+                }
+            }
+            arm(now);
+            if (delivering) return; // luồng đang gọi listener sẽ gọi luôn các lệnh vừa thêm
+            delivering = true;
+        }
+        while (true) {
+            Runnable call;
+            synchronized (this) {
+                call = calls.poll();
+                if (call == null) {
+                    delivering = false;
+                    return;
+                }
+            }
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                System.err.println("Lỗi listener bộ đếm: " + e.getMessage());
+            }
+        }
+    }
+}
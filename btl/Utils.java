@@ -1,31 +1,60 @@
 package btl;
 
-import java.text.SimpleDateFormat;
-import java.time.LocalDateTime;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Date;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Time formatting helpers. All methods are thread-safe and allocation-light:
+ * each pattern keeps the text of the most recent second, so repeated calls within
+ * a second return the same String, and a new second only rewrites the digits that changed.
+ */
 public class Utils {
-    private static final SimpleDateFormat FULL = new SimpleDateFormat("HH:mm:ss dd/MM/yyyy");
-    private static final SimpleDateFormat TIME_ONLY = new SimpleDateFormat("HH:mm:ss");
-    private static final DateTimeFormatter FULL_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy");
+    static final SecondFormat FULL = new SecondFormat("HH:mm:ss dd/MM/yyyy");
+    static final SecondFormat TIME_ONLY = new SecondFormat("HH:mm:ss");
+
+    private static final ConcurrentHashMap<String, ZoneId> ZONES = new ConcurrentHashMap<>();
 
     public static String formatNowFull() {
-        return FULL.format(new Date(System.currentTimeMillis()));
+        return FULL.format(System.currentTimeMillis());
     }
 
     public static String formatNowTimeOnly() {
-        return TIME_ONLY.format(new Date(System.currentTimeMillis()));
+        return TIME_ONLY.format(System.currentTimeMillis());
     }
 
     public static String formatFull(long millis) {
-        return FULL.format(new Date(millis));
+        return FULL.format(millis);
     }
 
     public static String formatTimeOnly(long millis) {
-        return TIME_ONLY.format(new Date(millis));
+        return TIME_ONLY.format(millis);
+    }
+
+    /** Append "HH:mm:ss dd/MM/yyyy" for millis without creating a String. */
+    public static StringBuilder appendFull(StringBuilder sb, long millis) {
+        return FULL.appendTo(sb, millis);
+    }
+
+    public static StringBuilder appendTimeOnly(StringBuilder sb, long millis) {
+        return TIME_ONLY.appendTo(sb, millis);
+    }
+
+    /**
+     * Write "HH:mm:ss dd/MM/yyyy" as ASCII into dst.
+     * @return the offset just past the written bytes
+     */
+    public static int writeFull(byte[] dst, int offset, long millis) {
+        return FULL.writeTo(dst, offset, millis);
+    }
+
+    public static int writeTimeOnly(byte[] dst, int offset, long millis) {
+        return TIME_ONLY.writeTo(dst, offset, millis);
     }
 
     /**
@@ -35,10 +64,189 @@ public class Utils {
      */
     public static String formatNowForTimeZone(String timeZoneId) {
         try {
-            ZonedDateTime zdt = ZonedDateTime.now(ZoneId.of(timeZoneId));
-            return zdt.format(FULL_FORMATTER);
+            ZoneId zone = ZONES.get(timeZoneId);
+            if (zone == null) {
+                zone = ZoneId.of(timeZoneId);
+                ZONES.putIfAbsent(timeZoneId, zone); // only valid ids get here, so the map stays small
+            }
+            return FULL.format(System.currentTimeMillis(), zone);
         } catch (Exception e) {
             return "Lỗi múi giờ";
         }
     }
+
+    /**
+     * A fixed-width pattern built from yyyy, MM, dd, HH, mm, ss and literal characters,
+     * formatted at one-second resolution.
+     * The cached Entry is immutable and published through a volatile field; threads racing on a
+     * new second compute identical results, so no lock is needed.
+     */
+    static final class SecondFormat {
+        private static final int YEAR = 0, MONTH = 1, DAY = 2, HOUR = 3, MINUTE = 4, SECOND = 5;
+
+        private final char[] template;
+        private final int[] positions = {-1, -1, -1, -1, -1, -1};
+        private volatile Entry current;
+
+        private static final class Entry {
+            final ZoneId zone;
+            final boolean systemDefault;
+            final long second;
+            // The zone offset stays the same for seconds in [validFrom, validUntil)
+            final int offset;
+            final long validFrom;
+            final long validUntil;
+            final long epochDay;
+            final char[] chars;
+            final String text;
+            final byte[] bytes;
+
+            Entry(ZoneId zone, boolean systemDefault, long second, int offset, long validFrom, long validUntil,
+                  long epochDay, char[] chars) {
+                this.zone = zone;
+                this.systemDefault = systemDefault;
+                this.second = second;
+                this.offset = offset;
+                this.validFrom = validFrom;
+                this.validUntil = validUntil;
+                this.epochDay = epochDay;
+                this.chars = chars;
+                this.text = new String(chars);
+                this.bytes = text.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        SecondFormat(String pattern) {
+            template = pattern.toCharArray();
+            for (int i = 0; i < template.length; ) {
+                char c = template[i];
+                if (!Character.isLetter(c)) {
+                    i++;
+                    continue;
+                }
+                int run = 1;
+                while (i + run < template.length && template[i + run] == c) run++;
+                int field = field(c, run, pattern);
+                if (positions[field] >= 0) {
+                    throw new IllegalArgumentException("Trường lặp lại trong mẫu: " + pattern);
+                }
+                positions[field] = i;
+                i += run;
+            }
+        }
+
+        private static int field(char c, int run, String pattern) {
+            if (c == 'y' && run == 4) return YEAR;
+            if (run == 2) {
+                switch (c) {
+                    case 'M': return MONTH;
+                    case 'd': return DAY;
+                    case 'H': return HOUR;
+                    case 'm': return MINUTE;
+                    case 's': return SECOND;
+                    default: break;
+                }
+            }
+            throw new IllegalArgumentException("Mẫu không hỗ trợ: " + pattern);
+        }
+
+        /** Pattern length in characters. */
+        int length() {
+            return template.length;
+        }
+
+        /** Format in the system default time zone. */
+        String format(long millis) {
+            return entry(millis, null).text;
+        }
+
+        String format(long millis, ZoneId zone) {
+            return entry(millis, zone).text;
+        }
+
+        StringBuilder appendTo(StringBuilder sb, long millis) {
+            return sb.append(entry(millis, null).chars);
+        }
+
+        int writeTo(byte[] dst, int offset, long millis) {
+            byte[] bytes = entry(millis, null).bytes;
+            System.arraycopy(bytes, 0, dst, offset, bytes.length);
+            return offset + bytes.length;
+        }
+
+        void writeTo(ByteBuffer dst, long millis) {
+            dst.put(entry(millis, null).bytes);
+        }
+
+        /** UTF-8 bytes for millis; the array is shared and must not be modified. */
+        byte[] bytes(long millis) {
+            return entry(millis, null).bytes;
+        }
+
+        /** @param zone null = system default, resolved only on a cache miss (ZoneId.systemDefault() allocates) */
+        private Entry entry(long millis, ZoneId zone) {
+            long second = Math.floorDiv(millis, 1000L);
+            Entry e = current;
+            if (e != null && e.second == second && (zone == null ? e.systemDefault : e.zone.equals(zone))) {
+                return e;
+            }
+            boolean systemDefault = zone == null;
+            Entry fresh = compute(second, systemDefault ? ZoneId.systemDefault() : zone, systemDefault, e);
+            // Keep the newest second cached: formatting an old timestamp (e.g. a log table row)
+            // must not evict the entry that "now" callers keep hitting
+            if (e == null || second >= e.second || !e.zone.equals(fresh.zone)) {
+                current = fresh;
+            }
+            return fresh;
+        }
+
+        private Entry compute(long second, ZoneId zone, boolean systemDefault, Entry previous) {
+            int offset;
+            long validFrom;
+            long validUntil;
+            long previousDay;
+            char[] chars;
+            if (previous != null && previous.zone.equals(zone)
+                    && second >= previous.validFrom && second < previous.validUntil) {
+                // Same offset window: start from the previous text and rewrite only what changed
+                offset = previous.offset;
+                validFrom = previous.validFrom;
+                validUntil = previous.validUntil;
+                previousDay = previous.epochDay;
+                chars = previous.chars.clone();
+            } else {
+                ZoneRules rules = zone.getRules();
+                Instant instant = Instant.ofEpochSecond(second);
+                offset = rules.getOffset(instant).getTotalSeconds();
+                ZoneOffsetTransition next = rules.nextTransition(instant);
+                ZoneOffsetTransition prev = rules.previousTransition(instant.plusSeconds(1));
+                validUntil = next == null ? Long.MAX_VALUE : next.getInstant().getEpochSecond();
+                validFrom = prev == null ? Long.MIN_VALUE : prev.getInstant().getEpochSecond();
+                previousDay = Long.MIN_VALUE;
+                chars = template.clone();
+            }
+
+            long local = second + offset;
+            long epochDay = Math.floorDiv(local, 86_400L);
+            int secondOfDay = (int) Math.floorMod(local, 86_400L);
+            if (epochDay != previousDay) {
+                LocalDate date = LocalDate.ofEpochDay(epochDay);
+                put(chars, positions[YEAR], date.getYear(), 4);
+                put(chars, positions[MONTH], date.getMonthValue(), 2);
+                put(chars, positions[DAY], date.getDayOfMonth(), 2);
+            }
+            put(chars, positions[HOUR], secondOfDay / 3600, 2);
+            put(chars, positions[MINUTE], secondOfDay / 60 % 60, 2);
+            put(chars, positions[SECOND], secondOfDay % 60, 2);
+            return new Entry(zone, systemDefault, second, offset, validFrom, validUntil, epochDay, chars);
+        }
+
+        private static void put(char[] chars, int at, int value, int width) {
+            if (at < 0) return;
+            for (int i = at + width - 1; i >= at; i--) {
+                chars[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+    }
 }
\ No newline at end of file